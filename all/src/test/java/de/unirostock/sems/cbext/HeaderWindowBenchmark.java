@@ -0,0 +1,180 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.io.HeaderWindow;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Compares memory-mapped reads through the {@link HeaderWindow} with
+ * stream-based reads.
+ *
+ * The benchmark scales up models from our <code>test/</code> corpus by
+ * repeating them until the file reaches the requested size, and then measures
+ * reading the header as well as scanning the whole file. It is not part of the
+ * test suite, run it manually:
+ *
+ * <pre>
+ * java -cp ... de.unirostock.sems.cbext.HeaderWindowBenchmark [size in MB] [rounds]
+ * </pre>
+ */
+public class HeaderWindowBenchmark {
+
+   /** the models to scale up. */
+   private static final String[] MODELS = {
+           "test/Stucki2005.xml",
+           "test/guess-biopax-paxtools-core-src-main-resources-org-biopax-paxtools-model-biopax-level3.owl",
+   };
+
+   /** bytes that are needed to sniff a file. */
+   private static final int HEADER = RecognitionSource.DEFAULT_HEADER_SIZE;
+
+   /** prevents the JIT from removing our reads. */
+   private static long sink;
+
+
+   /**
+    * Runs the benchmark.
+    *
+    * @param args optional size of the scaled files in MB and number of rounds
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   public static void main(String[] args) throws IOException {
+      int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+      int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+      for (String model : MODELS) {
+         File scaled = scale(new File(model), sizeMb * 1024L * 1024L);
+         try {
+            System.out.println(model + " scaled up to " + scaled.length() / 1024 / 1024 + " MB");
+            for (int warmup = 0; warmup < 3; warmup++) {
+               streamHeader(scaled);
+               mappedHeader(scaled);
+               streamScan(scaled);
+               mappedScan(scaled);
+            }
+            report("header via FileInputStream", rounds, scaled, HeaderWindowBenchmark::streamHeader);
+            report("header via HeaderWindow   ", rounds, scaled, HeaderWindowBenchmark::mappedHeader);
+            report("full scan via stream      ", rounds, scaled, HeaderWindowBenchmark::streamScan);
+            report("full scan via HeaderWindow", rounds, scaled, HeaderWindowBenchmark::mappedScan);
+         } finally {
+            scaled.delete();
+         }
+      }
+      System.out.println("(" + sink + ")");
+   }
+
+
+   private interface Reader {
+      long read(File file) throws IOException;
+   }
+
+
+   private static void report(String what, int rounds, File file, Reader reader) throws IOException {
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++)
+         sink += reader.read(file);
+      long nanos = (System.nanoTime() - start) / rounds;
+      System.out.printf("  %s: %12d ns/op%n", what, nanos);
+   }
+
+
+   private static File scale(File model, long size) throws IOException {
+      byte[] bytes = Files.readAllBytes(model.toPath());
+      File scaled = File.createTempFile("combineext-bench", ".xml");
+      scaled.deleteOnExit();
+      try (OutputStream out = Files.newOutputStream(scaled.toPath())) {
+         for (long written = 0; written < size; written += bytes.length)
+            out.write(bytes);
+      }
+      return scaled;
+   }
+
+
+   private static long streamHeader(File file) throws IOException {
+      byte[] header = new byte[HEADER];
+      try (InputStream in = new FileInputStream(file)) {
+         int read = 0, n;
+         while (read < HEADER && (n = in.read(header, read, HEADER - read)) > 0)
+            read += n;
+         return count(header, read);
+      }
+   }
+
+
+   private static long mappedHeader(File file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+         return count(new HeaderWindow(channel, HEADER).first());
+      }
+   }
+
+
+   private static long streamScan(File file) throws IOException {
+      long tags = 0;
+      byte[] buffer = new byte[64 * 1024];
+      try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+         int n;
+         while ((n = in.read(buffer)) > 0)
+            tags += count(buffer, n);
+      }
+      return tags;
+   }
+
+
+   private static long mappedScan(File file) throws IOException {
+      long tags = 0;
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+         HeaderWindow window = new HeaderWindow(channel, HeaderWindow.STREAM_CHUNK_SIZE);
+         for (long i = 0; i < window.getChunkCount(); i++)
+            tags += count(window.chunk(i));
+      }
+      return tags;
+   }
+
+
+   private static long count(byte[] bytes, int length) {
+      long tags = 0;
+      for (int i = 0; i < length; i++)
+         if (bytes[i] == '<')
+            tags++;
+      return tags;
+   }
+
+
+   private static long count(ByteBuffer buffer) {
+      long tags = 0;
+      while (buffer.hasRemaining())
+         if (buffer.get() == '<')
+            tags++;
+      return tags;
+   }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the adaptive ordering of recognizers.
+ */
+public class TestAdaptiveOrdering {
+
+   private CountingRecognizer miss;
+   private CountingRecognizer hit;
+   private CountingRecognizer important;
+
+
+   /**
+    * Register recognizers: one with high priority that never matches, and
+    * two of equal priority, of which the one registered first never matches.
+    */
+   @Before
+   public void setUp() {
+      important = new ImportantRecognizer();
+      miss = new CountingRecognizer(null);
+      hit = new HitRecognizer();
+      Formatizer.removeRecognizers();
+      Formatizer.addFormatRecognizer(important);
+      Formatizer.addFormatRecognizer(miss);
+      Formatizer.addFormatRecognizer(hit);
+      Formatizer.setAdaptiveOrdering(true);
+   }
+
+
+   /**
+    * Restore the defaults.
+    */
+   @After
+   public void tearDown() {
+      Formatizer.setAdaptiveOrdering(false);
+      Formatizer.removeRecognizers();
+      Formatizer.addDefaultRecognizers();
+   }
+
+
+   /**
+    * Test that the recognizer that matches moves to the front of its priority
+    * group, but not in front of a recognizer with higher priority.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testLearning() throws IOException {
+      for (int i = 0; i < 10; i++)
+         assertEquals("unexpected format", hit.format, TestRecognitionSource.guessXml(TestRecognitionSource.SBML_FILE));
+      assertEquals("expected the missing recognizer to be skipped after learning", 1, miss.calls);
+      assertEquals("expected the priority to be respected", 10, important.calls);
+
+      String bucket = "xml|application/xml";
+      RecognizerStatistics statistics = Formatizer.getStatistics();
+      assertEquals("unexpected hit rate", 1, statistics.getHitRate(bucket, hit), 0);
+      assertEquals("unexpected hit rate", 0, statistics.getHitRate(bucket, miss), 0);
+   }
+
+
+   /**
+    * Test that exported statistics warm up a new process.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testExport() throws IOException {
+      for (int i = 0; i < 5; i++)
+         TestRecognitionSource.guessXml(TestRecognitionSource.SBML_FILE);
+      Properties exported = Formatizer.getStatistics().toProperties();
+
+      RecognizerStatistics statistics = new RecognizerStatistics();
+      statistics.load(exported);
+      List<FormatRecognizer> ordered = statistics.order("xml|application/xml", Arrays.asList(important, miss, hit));
+      assertEquals("unexpected order", Arrays.asList(important, hit, miss), ordered);
+      assertEquals("unexpected order for unknown bucket", Arrays.asList(important, miss, hit),
+              statistics.order("txt|text/plain", Arrays.asList(important, miss, hit)));
+
+      // restarting with the exported statistics skips the missing recognizer right away
+      Formatizer.setAdaptiveOrdering(false);
+      Formatizer.setAdaptiveOrdering(true);
+      Formatizer.getStatistics().load(exported);
+      miss.calls = 0;
+      assertEquals("unexpected format", hit.format, TestRecognitionSource.guessXml(TestRecognitionSource.SBML_FILE));
+      assertEquals("expected the missing recognizer to be skipped", 0, miss.calls);
+   }
+
+
+   /**
+    * A recognizer that counts how often it is asked.
+    */
+   private static class CountingRecognizer extends FormatRecognizer {
+
+      final URI format;
+      volatile int calls;
+
+
+      CountingRecognizer(String format) {
+         this.format = format == null ? null : buildUri("https://example.org/spec/", format);
+      }
+
+
+      @Override
+      public int getPriority() {
+         return 500;
+      }
+
+
+      @Override
+      public URI getFormatByParsing(File file, String mimeType) {
+         calls++;
+         try {
+            // equal costs, so only the hit rate makes a difference
+            Thread.sleep(2);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         return format;
+      }
+
+
+      @Override
+      public URI getFormatFromMime(String mime) {
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromExtension(String extension) {
+         return null;
+      }
+   }
+
+
+   /**
+    * Always recognizes the file.
+    */
+   private static class HitRecognizer extends CountingRecognizer {
+      HitRecognizer() {
+         super("hit");
+      }
+   }
+
+
+   /**
+    * Never recognizes the file, but has a higher priority.
+    */
+   private static class ImportantRecognizer extends CountingRecognizer {
+      ImportantRecognizer() {
+         super(null);
+      }
+
+
+      @Override
+      public int getPriority() {
+         return 600;
+      }
+   }
+}
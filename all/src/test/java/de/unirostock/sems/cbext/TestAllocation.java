@@ -0,0 +1,224 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.io.BufferPool;
+import de.unirostock.sems.cbext.sniff.Extensions;
+import de.unirostock.sems.cbext.sniff.XmlRootScanner;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Makes sure the fast recognition path does not allocate per file.
+ *
+ * Allocations are counted using the per-thread allocation counter of the
+ * HotSpot VM; the tests are skipped on VMs that do not provide it.
+ */
+public class TestAllocation {
+
+   /** number of rounds to measure. */
+   private static final int ROUNDS = 100000;
+
+   /** bytes we tolerate for the measurement itself. */
+   private static final long TOLERANCE = 1024;
+
+   /** number of files to recognise end to end. */
+   private static final int FILE_ROUNDS = 2000;
+
+   /** bytes we allow per recognised file, well below the size of the header. */
+   private static final long FILE_BUDGET = 8 * 1024;
+
+   /** the VM's thread bean. */
+   private com.sun.management.ThreadMXBean threads;
+
+
+   /**
+    * Look up the allocation counter.
+    */
+   @Before
+   public void setUp() {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+      threads = (com.sun.management.ThreadMXBean) bean;
+      assumeTrue(threads.isThreadAllocatedMemorySupported());
+      threads.setThreadAllocatedMemoryEnabled(true);
+   }
+
+
+   /**
+    * Test that extensions are looked up without allocations.
+    */
+   @Test
+   public void testExtensionLookup() {
+      StringBuilder name = new StringBuilder("models/BIOMD0000000459.sbml");
+      URI expected = Formatizer.getFormatFromExtension("sbml");
+
+      // warm up, builds the index
+      for (int i = 0; i < ROUNDS; i++)
+         lookup(name);
+
+      long before = allocated();
+      URI found = null;
+      for (int i = 0; i < ROUNDS; i++)
+         found = lookup(name);
+      long bytes = allocated() - before;
+
+      assertEquals("unexpected format for " + name, expected, found);
+      assertTrue("extension lookup allocated " + bytes + " bytes", bytes < TOLERANCE);
+   }
+
+
+   /**
+    * Test that pooled buffers are recycled without allocations.
+    */
+   @Test
+   public void testBufferPool() {
+      BufferPool pool = new BufferPool(RecognitionSource.DEFAULT_HEADER_SIZE, 2);
+      for (int i = 0; i < ROUNDS; i++)
+         pool.release(pool.acquire());
+
+      long before = allocated();
+      for (int i = 0; i < ROUNDS; i++) {
+         ByteBuffer buffer = pool.acquire();
+         buffer.put((byte) i);
+         pool.release(buffer);
+      }
+      long bytes = allocated() - before;
+
+      assertTrue("buffer pool allocated " + bytes + " bytes", bytes < TOLERANCE);
+   }
+
+
+   /**
+    * Test that a reused scanner finds root elements without allocations.
+    */
+   @Test
+   public void testXmlRootScanner() {
+      ByteBuffer header = ByteBuffer.allocateDirect(256);
+      header.put("<?xml version=\"1.0\"?><!-- x --><sbml level=\"3\" version=\"2\">".getBytes());
+      header.flip();
+      XmlRootScanner scanner = new XmlRootScanner();
+      for (int i = 0; i < ROUNDS; i++)
+         scanner.scan(header);
+
+      long before = allocated();
+      int found = 0;
+      for (int i = 0; i < ROUNDS; i++) {
+         if (scanner.scan(header) == XmlRootScanner.Result.FOUND && scanner.isRoot("sbml")
+                 && scanner.hasAttribute("level", "3"))
+            found++;
+      }
+      long bytes = allocated() - before;
+
+      assertEquals("expected to find the root element every time", ROUNDS, found);
+      assertTrue("scanning allocated " + bytes + " bytes", bytes < TOLERANCE);
+   }
+
+
+   /**
+    * Test that streams of a source read single bytes without allocations.
+    *
+    * @throws IOException if the file cannot be read
+    */
+   @Test
+   public void testSingleByteReads() throws IOException {
+      try (RecognitionSource source = RecognitionSource.open(TestRecognitionSource.SBML_FILE)) {
+         InputStream warmUp = source.newInputStream();
+         while (warmUp.read() >= 0)
+            continue;
+         InputStream in = source.newInputStream();
+
+         long before = allocated();
+         long sum = 0;
+         for (int b = in.read(); b >= 0; b = in.read())
+            sum += b;
+         long bytes = allocated() - before;
+
+         assertTrue("expected to read the file", sum > 0);
+         assertTrue("reading " + source.getSize() + " single bytes allocated " + bytes + " bytes",
+                 bytes < TOLERANCE);
+      }
+   }
+
+
+   /**
+    * Test that recognising a file allocates a bounded amount of memory,
+    * independent of the file's size. The file has an extension the default
+    * policy only sniffs, so this measures the fast path from opening the
+    * file to the result.
+    *
+    * @throws IOException if the file cannot be read
+    */
+   @Test
+   public void testRecognize() throws IOException {
+      File file = File.createTempFile("combineext-allocation", ".model");
+      try {
+         Files.copy(TestRecognitionSource.SBML_FILE.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         RecognitionResult expected = recognize(file);
+         assertNotNull("expected a format", expected.getFormat());
+         for (int i = 0; i < FILE_ROUNDS; i++)
+            recognize(file);
+
+         long before = allocated();
+         for (int i = 0; i < FILE_ROUNDS; i++)
+            assertEquals("unexpected format", expected.getFormat(), recognize(file).getFormat());
+         long perFile = (allocated() - before) / FILE_ROUNDS;
+
+         assertTrue("recognising a file allocated " + perFile + " bytes", perFile < FILE_BUDGET);
+      } finally {
+         if (!file.delete())
+            file.deleteOnExit();
+      }
+   }
+
+
+   private static RecognitionResult recognize(File file) throws IOException {
+      try (RecognitionSource source = RecognitionSource.open(file)) {
+         source.setMimeType("application/xml");
+         return Formatizer.recognize(source);
+      }
+   }
+
+
+   private static URI lookup(CharSequence name) {
+      if (!Extensions.hasExtension(name, "sbml"))
+         return null;
+      return Formatizer.getFormatFromFileName(name);
+   }
+
+
+   private long allocated() {
+      return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+   }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the asynchronous recognition.
+ */
+public class TestAsyncRecognition {
+
+   /** an SBML file. */
+   private static final File SBML_FILE = new File("test/BIOMD0000000624.xml");
+
+   /** the pool doing the work. */
+   private ExecutorService pool;
+
+
+   /**
+    * Create the pool.
+    */
+   @Before
+   public void setUp() {
+      pool = Executors.newFixedThreadPool(2);
+   }
+
+
+   /**
+    * Remove the pool and restore the recognizers.
+    */
+   @After
+   public void tearDown() {
+      pool.shutdownNow();
+      Formatizer.removeRecognizers();
+      Formatizer.addDefaultRecognizers();
+   }
+
+
+   /**
+    * Test that files and streams get the same format as synchronously.
+    *
+    * @throws Exception if the recognition fails
+    */
+   @Test
+   public void testRecognize() throws Exception {
+      URI expected = Formatizer.guessFormat(SBML_FILE);
+      assertEquals(expected, Formatizer.guessFormatAsync(SBML_FILE, pool).get(10, TimeUnit.SECONDS));
+      RecognitionResult result = Formatizer.recognizeAsync(SBML_FILE, pool).get(10, TimeUnit.SECONDS);
+      assertEquals(expected, result.getFormat());
+      assertNotNull("expected the recognizer", result.getRecognizer());
+
+      try (InputStream in = new FileInputStream(SBML_FILE)) {
+         assertEquals(expected, Formatizer.guessFormatAsync(in, SBML_FILE.getName(), pool).get(10, TimeUnit.SECONDS));
+      }
+      assertNull("expected null for a missing file",
+              Formatizer.guessFormatAsync(new File("test/no-such-file"), pool).get(10, TimeUnit.SECONDS));
+   }
+
+
+   /**
+    * Test the shared pool and the executors of the multi-release jar.
+    *
+    * @throws Exception if the recognition fails
+    */
+   @Test
+   public void testSharedPool() throws Exception {
+      assertEquals(Formatizer.guessFormat(SBML_FILE), Formatizer.guessFormatAsync(SBML_FILE).get(10, TimeUnit.SECONDS));
+      assertNotNull(Formatizer.recognizeAsync(SBML_FILE).get(10, TimeUnit.SECONDS).getRecognizer());
+
+      ExecutorService executor = RecognitionExecutors.newExecutor(3, "combineext-test");
+      try {
+         String name = executor.submit(() -> Thread.currentThread().getName()).get(10, TimeUnit.SECONDS);
+         assertTrue(name, name.startsWith("combineext-test-"));
+      } finally {
+         executor.shutdown();
+      }
+      assertTrue(RecognitionExecutors.getDefaultConcurrency() >= Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Test that cancelling the future stops the running recognizer and skips
+    * the remaining ones.
+    *
+    * @throws Exception if the recognition fails
+    */
+   @Test
+   public void testCancel() throws Exception {
+      File file = File.createTempFile("combineext-async", ".xml");
+      try {
+         Files.write(file.toPath(), "<unknown/>".getBytes(StandardCharsets.UTF_8));
+         CountDownLatch reading = new CountDownLatch(1);
+         CountDownLatch stopped = new CountDownLatch(1);
+         AtomicReference<IOException> failure = new AtomicReference<IOException>();
+         Formatizer.removeRecognizers();
+         Formatizer.addFormatRecognizer(new EndlessRecognizer(200) {
+            @Override
+            public URI getFormatByParsing(RecognitionSource source) {
+               reading.countDown();
+               try {
+                  // read over and over, until cancelled
+                  while (true) {
+                     try (InputStream in = source.newInputStream()) {
+                        while (in.read() >= 0)
+                           ;
+                     }
+                  }
+               } catch (IOException e) {
+                  failure.set(e);
+                  stopped.countDown();
+                  return null;
+               }
+            }
+         });
+         EndlessRecognizer next = new EndlessRecognizer(100);
+         Formatizer.addFormatRecognizer(next);
+
+         CompletableFuture<URI> future = Formatizer.guessFormatAsync(file, pool);
+         assertTrue("recognizer did not start", reading.await(10, TimeUnit.SECONDS));
+         assertTrue(future.cancel(true));
+         assertTrue("recognizer was not stopped", stopped.await(10, TimeUnit.SECONDS));
+         assertTrue("expected an interrupted read, got " + failure.get(),
+                 failure.get() instanceof InterruptedIOException);
+         try {
+            future.get();
+            fail("expected the future to be cancelled");
+         } catch (CancellationException e) {
+            // expected
+         }
+
+         // wait for the task to finish, then make sure nobody else was asked
+         pool.shutdown();
+         assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+         assertEquals("expected no further recognizers", 0, next.calls);
+      } finally {
+         file.delete();
+      }
+   }
+
+
+   /**
+    * Test that a null executor is rejected.
+    */
+   @Test
+   public void testNoExecutor() {
+      try {
+         Formatizer.guessFormatAsync(SBML_FILE, null);
+         fail("expected an exception for a null executor");
+      } catch (IllegalArgumentException e) {
+         // expected
+      }
+   }
+
+
+   /**
+    * A recognizer that does not know any format.
+    */
+   private static class EndlessRecognizer extends FormatRecognizer {
+
+      private final int priority;
+      private volatile int calls;
+
+
+      EndlessRecognizer(int priority) {
+         this.priority = priority;
+      }
+
+
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      @Override
+      public URI getFormatByParsing(File file, String mimeType) {
+         calls++;
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromMime(String mime) {
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromExtension(String extension) {
+         return null;
+      }
+   }
+}
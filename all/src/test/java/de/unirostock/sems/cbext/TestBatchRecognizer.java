@@ -0,0 +1,390 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests recognizing batches in separate reading and recognizing stages.
+ */
+public class TestBatchRecognizer {
+
+   /**
+    * Lists the regular files below the test directory.
+    *
+    * @return the files
+    * @throws IOException if the directory cannot be walked
+    */
+   private static List<Path> testFiles() throws IOException {
+      try (Stream<Path> paths = Files.walk(Paths.get("test"))) {
+         return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+      }
+   }
+
+
+   /**
+    * Test that a batch gives the same formats as
+    * {@link Formatizer#guessFormat(File)}, whether files are loaded or only
+    * their headers are read.
+    *
+    * @throws Exception if the batch fails
+    */
+   @Test
+   public void testRecognize() throws Exception {
+      List<Path> files = testFiles();
+      for (long threshold : new long[] {BatchRecognizer.DEFAULT_LOAD_THRESHOLD, 0}) {
+         BatchRecognizer batch = new BatchRecognizer(2, 3, 4);
+         batch.setLoadThreshold(threshold);
+         Map<File, URI> formats = new ConcurrentHashMap<File, URI>();
+         batch.recognize(Paths.get("test"), result -> {
+            assertNull("recognized twice", formats.put(result.getFile(), result.getFormat()));
+         });
+         assertEquals(files.size(), formats.size());
+         for (Path path : files)
+            assertEquals(path.toString(), Formatizer.guessFormat(path.toFile()), formats.get(path.toFile()));
+
+         for (BatchRecognizer.Stage stage : Arrays.asList(batch.getReadStage(), batch.getRecognizeStage())) {
+            assertEquals(stage.toString(), files.size(), stage.getItems());
+            assertEquals(0, stage.getQueued());
+            assertTrue(stage.toString(), stage.getUtilization() >= 0 && stage.getUtilization() <= 1);
+         }
+         assertEquals(2, batch.getReadStage().getThreads());
+         assertEquals(3, batch.getRecognizeStage().getThreads());
+      }
+   }
+
+
+   /**
+    * Test that asynchronous reads give the same formats, whether files are
+    * read completely or just their headers.
+    *
+    * @throws Exception if the batch fails
+    */
+   @Test
+   public void testAsynchronousReads() throws Exception {
+      List<Path> files = testFiles();
+      files.add(Paths.get("test/does-not-exist"));
+      for (long threshold : new long[] {BatchRecognizer.DEFAULT_LOAD_THRESHOLD, 0}) {
+         BatchRecognizer batch = new BatchRecognizer(1, 2, 1);
+         batch.setAsynchronousReads(8);
+         batch.setLoadThreshold(threshold);
+         Map<File, URI> formats = new ConcurrentHashMap<File, URI>();
+         Set<File> recognized = ConcurrentHashMap.newKeySet();
+         batch.recognize(files.iterator(), result -> {
+            assertTrue("recognized twice", recognized.add(result.getFile()));
+            if (result.getFormat() != null)
+               formats.put(result.getFile(), result.getFormat());
+         });
+         assertEquals(files.size(), recognized.size());
+         assertNull(formats.get(new File("test/does-not-exist")));
+         for (Path path : files.subList(0, files.size() - 1))
+            assertEquals(path.toString(), Formatizer.guessFormat(path.toFile()), formats.get(path.toFile()));
+         assertEquals(8, batch.getReadStage().getThreads());
+         assertEquals(files.size() - 1, batch.getReadStage().getItems());
+         assertEquals(files.size() - 1, batch.getRecognizeStage().getItems());
+      }
+   }
+
+
+   /**
+    * Test that adaptive sizing keeps the number of threads within bounds
+    * and learns how long recognizers wait for the file system.
+    *
+    * @throws Exception if the batch fails
+    */
+   @Test
+   public void testAdaptiveSizing() throws Exception {
+      List<Path> files = new ArrayList<Path>();
+      for (int i = 0; i < 20; i++)
+         files.addAll(testFiles());
+      BatchRecognizer batch = new BatchRecognizer(1, 1, 4);
+      batch.setAdaptiveSizing(3, 4);
+      batch.setTuningInterval(5);
+      batch.setLoadThreshold(1024);
+      assertTrue(batch.isAdaptiveSizing());
+      for (boolean asynchronous : new boolean[] {false, true}) {
+         batch.setAsynchronousReads(asynchronous ? 2 : 0);
+         AtomicLong recognized = new AtomicLong();
+         AtomicLong outOfBounds = new AtomicLong();
+         batch.recognize(files.iterator(), result -> {
+            recognized.incrementAndGet();
+            int readers = batch.getReadStage().getThreads();
+            int recognizers = batch.getRecognizeStage().getThreads();
+            if (readers < 1 || readers > 3 || recognizers < 1 || recognizers > 4)
+               outOfBounds.incrementAndGet();
+         });
+         assertEquals(files.size(), recognized.get());
+         assertEquals(0, outOfBounds.get());
+      }
+
+      // files above the load threshold are read by the recognizers
+      assertTrue(batch.getBlockingRatio() >= 0);
+      assertFalse(batch.getBlockingRatios().isEmpty());
+      assertTrue(batch.getBlockingRatios().toString(), batch.getBlockingRatios().containsKey("SbmlRecognizer"));
+
+      batch.setFixedSizing();
+      assertFalse(batch.isAdaptiveSizing());
+   }
+
+
+   /**
+    * Test that files are scheduled by their estimated cost and that the
+    * remaining time is estimated while the batch runs.
+    *
+    * @throws Exception if the batch fails
+    */
+   @Test
+   public void testLargestFirst() throws Exception {
+      List<Path> files = testFiles();
+      BatchRecognizer batch = new BatchRecognizer(1, 1, 1);
+      assertEquals(-1, batch.getRemainingMillis());
+
+      // without timings, the cost is the size
+      List<File> order = new ArrayList<File>();
+      batch.recognizeLargestFirst(files, result -> order.add(result.getFile()));
+      assertEquals(files.size(), order.size());
+      File largest = Collections.max(order, Comparator.comparingLong(File::length));
+      assertEquals(largest, order.get(0));
+      assertTrue(order.get(order.size() - 1).length() <= order.get(0).length());
+      assertEquals(-1, batch.getRemainingMillis());
+
+      // now with the timings of the first batch
+      List<Long> estimates = new ArrayList<Long>();
+      order.clear();
+      batch.recognizeLargestFirst(files, result -> {
+         order.add(result.getFile());
+         estimates.add(batch.getRemainingMillis());
+      });
+      assertEquals(files.size(), order.size());
+      assertEquals(files.size(), new HashSet<File>(order).size());
+      assertEquals("nothing remains after the last file", 0, (long) estimates.get(estimates.size() - 1));
+      for (long estimate : estimates)
+         assertTrue("unexpected estimate " + estimate, estimate >= 0);
+   }
+
+
+   /**
+    * Test that slow consumers hold back the readers and that their failures
+    * end the batch.
+    *
+    * @throws Exception if the batch fails unexpectedly
+    */
+   @Test
+   public void testBackpressure() throws Exception {
+      List<Path> files = new ArrayList<Path>();
+      for (int i = 0; i < 10; i++)
+         files.addAll(testFiles());
+      BatchRecognizer batch = new BatchRecognizer(2, 1, 1);
+      AtomicLong ahead = new AtomicLong();
+      batch.recognize(files.iterator(), result -> {
+         ahead.accumulateAndGet(batch.getReadStage().getItems() - batch.getRecognizeStage().getItems(), Math::max);
+         try {
+            Thread.sleep(2);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      });
+      // one queued, one being recognized, and one held by each reader
+      assertTrue("readers ran ahead by " + ahead.get(), ahead.get() <= 4);
+      assertEquals(files.size(), batch.getRecognizeStage().getItems());
+
+      RuntimeException failure = new IllegalStateException("consumer failed");
+      AtomicLong delivered = new AtomicLong();
+      try {
+         batch.recognize(files.iterator(), result -> {
+            delivered.incrementAndGet();
+            throw failure;
+         });
+         fail("expected the consumer's failure");
+      } catch (IllegalStateException e) {
+         assertEquals(failure, e);
+      }
+      assertTrue("batch should stop early, got " + delivered.get(), delivered.get() < files.size());
+
+      Map<File, URI> formats = new HashMap<File, URI>();
+      batch.recognize(Collections.singletonList(Paths.get("test/does-not-exist")).iterator(),
+              result -> formats.put(result.getFile(), result.getFormat()));
+      assertTrue(formats.containsKey(new File("test/does-not-exist")));
+      assertNull(formats.get(new File("test/does-not-exist")));
+   }
+
+
+   /**
+    * Test that loaded sources behave like opened ones.
+    *
+    * @throws IOException if the file cannot be read
+    */
+   @Test
+   public void testLoad() throws IOException {
+      File file = new File("test/BIOMD0000000624.xml");
+      try (RecognitionSource opened = RecognitionSource.open(file);
+           RecognitionSource loaded = RecognitionSource.load(file)) {
+         assertTrue(loaded.isLoaded());
+         assertFalse(opened.isLoaded());
+         assertFalse(loaded.isMapped());
+         assertEquals(opened.getSize(), loaded.getSize());
+         assertEquals(opened.getHeader(), loaded.getHeader());
+         assertEquals(opened.getXmlRoot().getNamespaceUri(), loaded.getXmlRoot().getNamespaceUri());
+         assertArrayEquals(opened.getHash(), loaded.getHash());
+         try (InputStream a = opened.newInputStream(); InputStream b = loaded.newInputStream()) {
+            for (int c = a.read(); c >= 0; c = a.read())
+               assertEquals(c, b.read());
+            assertEquals(-1, b.read());
+         }
+         assertEquals(Formatizer.recognize(opened).getFormat(), Formatizer.recognize(loaded).getFormat());
+      }
+   }
+
+
+   /**
+    * Test that an error, not only a runtime exception, ends the batch with a
+    * failure instead of killing a stage and leaving the others waiting.
+    *
+    * @throws Exception if the test fails
+    */
+   @Test
+   public void testError() throws Exception {
+      List<Path> files = new ArrayList<Path>();
+      for (int i = 0; i < 5; i++)
+         files.addAll(testFiles());
+      for (boolean asynchronous : new boolean[] {false, true}) {
+         BatchRecognizer batch = new BatchRecognizer(1, 1, 1);
+         if (asynchronous)
+            batch.setAsynchronousReads(2);
+         try {
+            batch.recognize(files.iterator(), result -> {
+               throw new StackOverflowError("consumer");
+            });
+            fail("expected the error to end the batch");
+         } catch (IllegalStateException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof StackOverflowError);
+         }
+      }
+   }
+
+
+   /**
+    * Creates a model larger than {@link RecognitionSource#MAP_THRESHOLD}, by
+    * appending a comment.
+    *
+    * @return the file, to be deleted by the caller
+    * @throws IOException if the file cannot be written
+    */
+   private static File createLargeFile() throws IOException {
+      File file = File.createTempFile("combineext-mapped", ".xml");
+      try (OutputStream out = Files.newOutputStream(file.toPath())) {
+         out.write(Files.readAllBytes(Paths.get("test/BIOMD0000000624.xml")));
+         byte[] padding = new byte[(int) RecognitionSource.MAP_THRESHOLD];
+         Arrays.fill(padding, (byte) ' ');
+         out.write("<!--".getBytes(StandardCharsets.US_ASCII));
+         out.write(padding);
+         out.write("-->".getBytes(StandardCharsets.US_ASCII));
+      }
+      return file;
+   }
+
+
+   /**
+    * Test that large files, which are memory-mapped, are read
+    * asynchronously as well.
+    *
+    * @throws Exception if the test fails
+    */
+   @Test
+   public void testAsynchronousMappedReads() throws Exception {
+      File file = createLargeFile();
+      try {
+         BatchRecognizer batch = new BatchRecognizer(1, 1, 1);
+         batch.setAsynchronousReads(2);
+         List<RecognitionResult> results = Collections.synchronizedList(new ArrayList<RecognitionResult>());
+         batch.recognize(Collections.singletonList(file.toPath()).iterator(), results::add);
+         assertEquals(1, results.size());
+         assertEquals(Formatizer.guessFormat(file), results.get(0).getFormat());
+         assertEquals(1, batch.getReadStage().getItems());
+      } finally {
+         if (!file.delete())
+            file.deleteOnExit();
+      }
+   }
+
+
+   /**
+    * Test that the recognizing stage parses large files on its own threads,
+    * so its limit bounds the parsers, instead of fanning out onto the
+    * shared speculative pool.
+    *
+    * @throws Exception if the test fails
+    */
+   @Test
+   public void testSequentialParsing() throws Exception {
+      File file = createLargeFile();
+      ExecutorService previous = Formatizer.getExecutor();
+      AtomicBoolean used = new AtomicBoolean();
+      ExecutorService pool = Executors.newSingleThreadExecutor(runnable -> {
+         used.set(true);
+         return new Thread(runnable);
+      });
+      try {
+         URI expected = Formatizer.guessFormat(file);
+         Formatizer.setExecutor(pool);
+         BatchRecognizer batch = new BatchRecognizer(1, 1, 1);
+         List<RecognitionResult> results = Collections.synchronizedList(new ArrayList<RecognitionResult>());
+         batch.recognize(Collections.singletonList(file.toPath()).iterator(), results::add);
+         assertEquals(1, results.size());
+         assertEquals(expected, results.get(0).getFormat());
+         assertFalse("the batch used the speculative pool", used.get());
+      } finally {
+         Formatizer.setExecutor(previous);
+         pool.shutdownNow();
+         if (!file.delete())
+            file.deleteOnExit();
+      }
+   }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import org.junit.Test;
+
+import java.util.function.IntToDoubleFunction;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests finding the number of threads by hill climbing.
+ */
+public class TestHillClimber {
+
+   /**
+    * Lets a climber run against a throughput curve, like the tuner of the
+    * {@link BatchRecognizer} does: every step measures the throughput, credits
+    * it to the last move, and moves on.
+    *
+    * @param climber the climber
+    * @param throughput the throughput by number of threads
+    * @param steps the number of steps
+    * @return the smallest and the largest level seen in the last ten steps
+    */
+   private static int[] climb(HillClimber climber, IntToDoubleFunction throughput, int steps) {
+      int[] range = {Integer.MAX_VALUE, 0};
+      double last = -1;
+      for (int i = 0; i < steps; i++) {
+         double current = throughput.applyAsDouble(climber.getLevel());
+         if (last >= 0)
+            climber.credit(last, current);
+         last = current;
+         int level = climber.move();
+         if (i >= steps - 10) {
+            range[0] = Math.min(range[0], level);
+            range[1] = Math.max(range[1], level);
+         }
+      }
+      return range;
+   }
+
+
+   /**
+    * Test that the climber settles around the peak of the throughput.
+    */
+   @Test
+   public void testPeak() {
+      // I/O bound: throughput grows up to 12 threads, then contention sets in
+      IntToDoubleFunction io = threads -> threads <= 12 ? 100 * threads : 1200 - 80 * (threads - 12);
+      int[] range = climb(new HillClimber(1, 32, 2), io, 60);
+      assertTrue(range[0] + ".." + range[1], range[0] >= 10 && range[1] <= 14);
+
+      // CPU bound on four cores: more threads do not help
+      IntToDoubleFunction cpu = threads -> 100 * Math.min(threads, 4);
+      range = climb(new HillClimber(1, 32, 16), cpu, 60);
+      assertTrue(range[0] + ".." + range[1], range[0] >= 3 && range[1] <= 5);
+   }
+
+
+   /**
+    * Test that the climber stays within its bounds.
+    */
+   @Test
+   public void testBounds() {
+      int[] range = climb(new HillClimber(2, 6, 100), threads -> 100 * threads, 30);
+      assertTrue(range[0] + ".." + range[1], range[0] >= 5 && range[1] == 6);
+
+      range = climb(new HillClimber(2, 6, 0), threads -> 100, 30);
+      assertTrue(range[0] + ".." + range[1], range[0] == 2 && range[1] <= 3);
+
+      HillClimber fixed = new HillClimber(3, 3, 1);
+      assertEquals(3, fixed.getLevel());
+      assertEquals(3, fixed.move());
+      fixed.credit(1, 100);
+      assertEquals(3, fixed.move());
+      try {
+         new HillClimber(0, 3, 1);
+         fail("expected at least one thread");
+      } catch (IllegalArgumentException e) {
+         // expected
+      }
+   }
+
+
+   /**
+    * Test that climbers taking turns are judged by the throughput right
+    * before and after their own move only.
+    */
+   @Test
+   public void testCredit() {
+      HillClimber climber = new HillClimber(1, 8, 4);
+      assertEquals(5, climber.move());
+      // better: keep going
+      climber.credit(100, 120);
+      assertEquals(6, climber.move());
+      // worse: turn around
+      climber.credit(120, 80);
+      assertEquals(5, climber.move());
+      // worse again: turn around once more
+      climber.credit(80, 60);
+      assertEquals(6, climber.move());
+      // about the same: fewer threads are cheaper
+      climber.credit(60, 61);
+      assertEquals(5, climber.move());
+      assertEquals(5, climber.getLevel());
+   }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.recognizer.SbmlRecognizer;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for the {@link RecognizerDescriptor}s and the {@link LazyRecognizer}.
+ */
+public class TestLazyRecognizers {
+
+   /**
+    * Test that all built-in recognizers are registered as services.
+    */
+   @Test
+   public void testServices() {
+      List<String> names = new ArrayList<String>();
+      for (RecognizerDescriptor descriptor : ServiceLoader.load(RecognizerDescriptor.class))
+         names.add(descriptor.getName());
+      assertEquals("expected the seven built-in recognizers", 7, names.size());
+      assertTrue(names.contains(SbmlRecognizer.class.getName()));
+   }
+
+
+   /**
+    * Test that the recognizer is only created once a file needs it.
+    *
+    * @throws IOException if the test files cannot be read
+    */
+   @Test
+   public void testMaterialization() throws IOException {
+      final AtomicInteger created = new AtomicInteger();
+      LazyRecognizer recognizer = new LazyRecognizer(new SbmlRecognizer.Descriptor() {
+         @Override
+         public FormatRecognizer createRecognizer() {
+            created.incrementAndGet();
+            return super.createRecognizer();
+         }
+      });
+
+      assertEquals(SbmlRecognizer.class.getName(), recognizer.getName());
+      assertEquals(new SbmlRecognizer().getPriority(), recognizer.getPriority());
+      assertNull(recognizer.getFormatFromExtension("cellml"));
+      assertNull(recognizer.getFormatFromMime("application/xml"));
+      assertTrue(recognizer.getKnownExtensions().contains("sbml"));
+
+      try (RecognitionSource source = RecognitionSource.open(new File("test/aguda_b_1999.cellml"))) {
+         assertNull(recognizer.getFormatByParsing(source));
+         assertNull(recognizer.getFormatBySniffing(source));
+         assertTrue(recognizer.getConfidence(source) == 0);
+      }
+      try (RecognitionSource source = RecognitionSource.open(new File("test/plain.text"))) {
+         assertNull(recognizer.getFormatByParsing(source));
+      }
+      assertFalse("recognizer should not have been created", recognizer.isMaterialized());
+      assertEquals(0, created.get());
+
+      try (RecognitionSource source = RecognitionSource.open(new File("test/BIOMD0000000624.xml"))) {
+         URI format = recognizer.getFormatByParsing(source);
+         assertNotNull(format);
+         assertTrue(format.toString().contains("sbml"));
+      }
+      assertTrue(recognizer.isMaterialized());
+      assertNotNull(recognizer.getFormatFromExtension("sbml"));
+      assertEquals(1, created.get());
+   }
+
+
+   /**
+    * Test that the formatizer answers the same through lazy recognizers.
+    *
+    * @throws IOException if the test files cannot be read
+    */
+   @Test
+   public void testFormatizer() throws IOException {
+      assertTrue(Formatizer.getFormatFromExtension("cellml").toString().contains("cellml"));
+      URI format = Formatizer.guessFormat(new File("test/BIOMD0000000624.xml"));
+      assertTrue(format.toString().contains("sbml"));
+   }
+}
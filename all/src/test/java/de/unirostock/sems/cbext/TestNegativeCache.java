@@ -0,0 +1,181 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.cache.BloomFilter;
+import de.unirostock.sems.cbext.cache.NegativeResultCache;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for the {@link NegativeResultCache} and its {@link BloomFilter}s.
+ */
+public class TestNegativeCache {
+
+   /**
+    * Restore the defaults.
+    */
+   @After
+   public void tearDown() {
+      Formatizer.setNegativeCache(null);
+      Formatizer.removeRecognizers();
+      Formatizer.addDefaultRecognizers();
+   }
+
+
+   /**
+    * Test that the filter never forgets a key and rarely claims to know a
+    * key it has not seen.
+    */
+   @Test
+   public void testBloomFilter() {
+      Random random = new Random(42);
+      int n = 10000;
+      BloomFilter filter = new BloomFilter(n, 0.01);
+      long[] keys = new long[2 * n];
+      for (int i = 0; i < keys.length; i++)
+         keys[i] = random.nextLong();
+      for (int i = 0; i < n; i++)
+         filter.put(keys[2 * i], keys[2 * i + 1]);
+      for (int i = 0; i < n; i++)
+         assertTrue("filter forgot key " + i, filter.mightContain(keys[2 * i], keys[2 * i + 1]));
+
+      int falsePositives = 0;
+      for (int i = 0; i < n; i++)
+         if (filter.mightContain(random.nextLong(), random.nextLong()))
+            falsePositives++;
+      assertTrue("too many false positives: " + falsePositives, falsePositives < n * 0.02);
+      assertEquals("unexpected insertions", n, filter.getInsertions());
+   }
+
+
+   /**
+    * Test that a recognizer that failed on some content is not asked again
+    * for the same content, but still for other contents.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testSkipKnownFailures() throws IOException {
+      CountingRecognizer failing = new CountingRecognizer();
+      Formatizer.removeRecognizers();
+      Formatizer.addFormatRecognizer(failing);
+      Formatizer.setNegativeCache(new NegativeResultCache());
+
+      File copy = File.createTempFile("combineext-negative", ".xml");
+      File renamed = File.createTempFile("combineext-negative", ".sbml");
+      File other = new File("test/Stucki2005.xml");
+      try {
+         Files.copy(TestRecognitionSource.SBML_FILE.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         Files.copy(TestRecognitionSource.SBML_FILE.toPath(), renamed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+         URI expected = TestRecognitionSource.guessXml(TestRecognitionSource.SBML_FILE);
+         assertEquals("expected the recognizer to be asked", 1, failing.calls);
+         assertEquals("expected the same result from the cache", expected,
+                 TestRecognitionSource.guessXml(TestRecognitionSource.SBML_FILE));
+         assertEquals("expected the same content not to be parsed again", 1, failing.calls);
+         TestRecognitionSource.guessXml(copy);
+         assertEquals("expected a duplicate upload not to be parsed again", 1, failing.calls);
+
+         TestRecognitionSource.guessXml(renamed);
+         assertEquals("expected a different extension to be parsed", 2, failing.calls);
+         TestRecognitionSource.guessXml(other);
+         assertEquals("expected a different content to be parsed", 3, failing.calls);
+      } finally {
+         copy.delete();
+         renamed.delete();
+      }
+   }
+
+
+   /**
+    * Test that old failures are forgotten after two generations.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testRotation() throws IOException {
+      CountingRecognizer failing = new CountingRecognizer();
+      Formatizer.removeRecognizers();
+      Formatizer.addFormatRecognizer(failing);
+      Formatizer.setNegativeCache(new NegativeResultCache(1, 0.001));
+
+      File[] files = {
+              TestRecognitionSource.SBML_FILE,
+              new File("test/Stucki2005.xml"),
+              new File("test/00001-sbml-l2v1.xml"),
+      };
+      for (File file : files)
+         TestRecognitionSource.guessXml(file);
+      assertEquals("expected every file to be parsed", 3, failing.calls);
+
+      // the second file is in the previous generation, the first is forgotten
+      TestRecognitionSource.guessXml(files[1]);
+      assertEquals("expected the previous generation to be remembered", 3, failing.calls);
+      TestRecognitionSource.guessXml(files[0]);
+      assertEquals("expected the oldest generation to be forgotten", 4, failing.calls);
+   }
+
+
+   /**
+    * A recognizer that never recognizes anything and counts how often it is
+    * asked.
+    */
+   private static class CountingRecognizer extends FormatRecognizer {
+
+      private volatile int calls;
+
+
+      @Override
+      public int getPriority() {
+         return 100;
+      }
+
+
+      @Override
+      public URI getFormatByParsing(File file, String mimeType) {
+         calls++;
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromMime(String mime) {
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromExtension(String extension) {
+         return null;
+      }
+   }
+}
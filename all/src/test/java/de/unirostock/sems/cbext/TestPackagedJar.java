@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Tests the bundled jar with all dependencies. Maven runs this in the
+ * integration-test phase and passes the jar in the system property
+ * <code>combineext.jar</code>; without it the test is skipped.
+ */
+public class TestPackagedJar {
+
+   /** the recognizers of all modules. */
+   private static final Set<String> RECOGNIZERS = new HashSet<String>(Arrays.asList(
+           "de.unirostock.sems.cbext.recognizer.SbmlRecognizer$Descriptor",
+           "de.unirostock.sems.cbext.recognizer.DefaultRecognizer$Descriptor",
+           "de.unirostock.sems.cbext.recognizer.SedMlRecognizer$Descriptor",
+           "de.unirostock.sems.cbext.recognizer.BioPaxRecognizer$Descriptor",
+           "de.unirostock.sems.cbext.recognizer.CellMlRecognizer$Descriptor",
+           "de.unirostock.sems.cbext.recognizer.SbgnRecognizer$Descriptor",
+           "de.unirostock.sems.cbext.recognizer.SbolRecognizer$Descriptor"));
+
+
+   /**
+    * Test that the jar registers the recognizers of every module, that is
+    * the service descriptors of the modules were merged.
+    *
+    * @throws Exception if the jar cannot be loaded
+    */
+   @Test
+   public void testRecognizers() throws Exception {
+      String path = System.getProperty("combineext.jar");
+      assumeTrue(path != null);
+      File jar = new File(path);
+      assertTrue("missing " + jar, jar.isFile());
+
+      // only the jar, nothing from the test's class path
+      try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toURI().toURL()},
+              ClassLoader.getSystemClassLoader().getParent())) {
+         Class<?> descriptor = loader.loadClass(RecognizerDescriptor.class.getName());
+         Set<String> found = new HashSet<String>();
+         for (Object recognizer : ServiceLoader.load(descriptor, loader))
+            found.add(recognizer.getClass().getName());
+         assertEquals("unexpected recognizers in " + jar.getName(), RECOGNIZERS, found);
+      } catch (IOException e) {
+         fail("cannot read " + jar + ": " + e.getMessage());
+      }
+   }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.cache.NegativeResultCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the speculative parallel recognition of large files.
+ */
+public class TestParallelRecognition {
+
+   /** a file that none of the default recognizers understands. */
+   private File file;
+
+
+   /**
+    * Create the file and make sure it is parsed in parallel.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Before
+   public void setUp() throws IOException {
+      file = File.createTempFile("combineext-parallel", ".xml");
+      Files.write(file.toPath(), "<unknown/>".getBytes(StandardCharsets.UTF_8));
+      Formatizer.setParallelThreshold(0);
+   }
+
+
+   /**
+    * Restore the defaults.
+    */
+   @After
+   public void tearDown() {
+      Formatizer.setParallelThreshold(Formatizer.DEFAULT_PARALLEL_THRESHOLD);
+      Formatizer.setNegativeCache(null);
+      Formatizer.removeRecognizers();
+      Formatizer.addDefaultRecognizers();
+      file.delete();
+   }
+
+
+   /**
+    * Test that the recognizer with the highest priority wins, even if a
+    * recognizer with lower priority answers earlier.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testPriorityWins() throws IOException {
+      DelayedRecognizer slowHigh = new DelayedRecognizer(300, 300, "high");
+      DelayedRecognizer fastLow = new DelayedRecognizer(200, 0, "low");
+      Formatizer.addFormatRecognizer(fastLow);
+      Formatizer.addFormatRecognizer(slowHigh);
+
+      assertEquals("expected the format of the high priority recognizer", slowHigh.format,
+              TestRecognitionSource.guessXml(file));
+
+      // if the high priority recognizer does not know the file, the lower one decides
+      Formatizer.removeRecognizers();
+      Formatizer.addFormatRecognizer(fastLow);
+      Formatizer.addFormatRecognizer(new DelayedRecognizer(300, 100, null));
+      assertEquals("expected the format of the low priority recognizer", fastLow.format,
+              TestRecognitionSource.guessXml(file));
+   }
+
+
+   /**
+    * Test that recognizers run concurrently, so the latency is roughly the one
+    * of the slowest recognizer.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testConcurrency() throws IOException {
+      CountDownLatch started = new CountDownLatch(2);
+      DelayedRecognizer first = new DelayedRecognizer(300, 0, null) {
+         @Override
+         protected void work() throws InterruptedException {
+            started.countDown();
+            // only returns if the other recognizer runs at the same time
+            assertTrue("recognizers did not run concurrently", started.await(5, TimeUnit.SECONDS));
+         }
+      };
+      DelayedRecognizer second = new DelayedRecognizer(299, 0, "second") {
+         @Override
+         protected void work() throws InterruptedException {
+            started.countDown();
+            started.await(5, TimeUnit.SECONDS);
+         }
+      };
+      Formatizer.addFormatRecognizer(first);
+      Formatizer.addFormatRecognizer(second);
+
+      assertEquals("expected the format of the second recognizer", second.format, TestRecognitionSource.guessXml(file));
+   }
+
+
+   /**
+    * Test that lower priority recognizers are cancelled once a higher one
+    * matched.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testCancellation() throws IOException {
+      // a small pool, so the low priority recognizers are still queued
+      ExecutorService pool = Executors.newFixedThreadPool(2);
+      Formatizer.setExecutor(pool);
+      Formatizer.removeRecognizers();
+      DelayedRecognizer high = new DelayedRecognizer(1000, 0, "high");
+      Formatizer.addFormatRecognizer(high);
+      DelayedRecognizer[] low = new DelayedRecognizer[10];
+      for (int i = 0; i < low.length; i++) {
+         low[i] = new DelayedRecognizer(500 - i, 200, "low");
+         Formatizer.addFormatRecognizer(low[i]);
+      }
+
+      try {
+         assertEquals("expected the format of the high priority recognizer", high.format,
+                 TestRecognitionSource.guessXml(file));
+      } finally {
+         Formatizer.setExecutor(null);
+         pool.shutdown();
+      }
+
+      int skipped = 0;
+      for (DelayedRecognizer recognizer : low)
+         if (recognizer.calls == 0)
+            skipped++;
+      assertTrue("expected queued recognizers to be cancelled", skipped > 0);
+   }
+
+
+   /**
+    * Test that a running lower priority recognizer is abandoned once a higher
+    * one matched: its reads give up instead of running into the closed
+    * channel, and its failure is not cached.
+    *
+    * @throws Exception if the test fails
+    */
+   @Test
+   public void testAbandonment() throws Exception {
+      NegativeResultCache cache = new NegativeResultCache();
+      Formatizer.setNegativeCache(cache);
+      Formatizer.removeRecognizers();
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch finished = new CountDownLatch(1);
+      AtomicReference<IOException> failure = new AtomicReference<IOException>();
+      DelayedRecognizer high = new DelayedRecognizer(1000, 0, "high") {
+         @Override
+         protected void work() throws InterruptedException {
+            started.await(5, TimeUnit.SECONDS);
+         }
+      };
+      DelayedRecognizer low = new DelayedRecognizer(500, 0, null) {
+         @Override
+         public URI getFormatByParsing(RecognitionSource source) {
+            started.countDown();
+            try {
+               // keep reading until told to give up
+               for (long end = System.currentTimeMillis() + 5000; System.currentTimeMillis() < end; ) {
+                  try (InputStream in = source.newInputStream()) {
+                     while (in.read() >= 0)
+                        continue;
+                  }
+                  Thread.sleep(10);
+               }
+            } catch (IOException e) {
+               failure.set(e);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            } finally {
+               finished.countDown();
+            }
+            return null;
+         }
+      };
+      Formatizer.addFormatRecognizer(high);
+      Formatizer.addFormatRecognizer(low);
+
+      assertEquals("expected the format of the high priority recognizer", high.format,
+              TestRecognitionSource.guessXml(file));
+      assertTrue("the abandoned recognizer did not stop", finished.await(5, TimeUnit.SECONDS));
+      assertTrue("expected the abandoned recognizer to be told to give up, got " + failure.get(),
+              failure.get() instanceof InterruptedIOException);
+      try (RecognitionSource source = RecognitionSource.open(file)) {
+         assertFalse("the abandoned recognizer's failure was cached", cache.isKnownFailure(low, source));
+      }
+   }
+
+
+   /**
+    * A recognizer that takes its time to parse a file.
+    */
+   private static class DelayedRecognizer extends FormatRecognizer {
+
+      private final int priority;
+      private final long delay;
+      private final URI format;
+      private volatile int calls;
+
+
+      DelayedRecognizer(int priority, long delay, String format) {
+         this.priority = priority;
+         this.delay = delay;
+         this.format = format == null ? null : buildUri("https://example.org/spec/", format);
+      }
+
+
+      protected void work() throws InterruptedException {
+         Thread.sleep(delay);
+      }
+
+
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      @Override
+      public URI getFormatByParsing(File file, String mimeType) {
+         calls++;
+         try {
+            work();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+         }
+         return format;
+      }
+
+
+      @Override
+      public URI getFormatFromMime(String mime) {
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromExtension(String extension) {
+         return null;
+      }
+   }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.recognizer.BioPaxRecognizer;
+import de.unirostock.sems.cbext.recognizer.DefaultRecognizer;
+import de.unirostock.sems.cbext.recognizer.SbmlRecognizer;
+import de.unirostock.sems.cbext.recognizer.SbolRecognizer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the confidence-based ranking of formats.
+ */
+public class TestRanking {
+
+   /**
+    * Restore the default recognizers.
+    */
+   @After
+   public void tearDown() {
+      Formatizer.removeRecognizers();
+      Formatizer.addDefaultRecognizers();
+   }
+
+
+   /**
+    * Test that the namespaces of RDF documents tell BioPAX and SBOL apart.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testRdfConfidence() throws IOException {
+      FormatRecognizer biopax = new BioPaxRecognizer();
+      FormatRecognizer sbol = new SbolRecognizer();
+
+      try (RecognitionSource source = RecognitionSource.open(
+              new File("test/guess-biopax-paxtools-core-src-main-resources-org-biopax-paxtools-model-biopax-level3.owl"))) {
+         assertTrue("expected biopax to be more confident",
+                 biopax.getConfidence(source) > sbol.getConfidence(source));
+      }
+      try (RecognitionSource source = RecognitionSource.open(new File("test/guess-SBOLj-examples-data-BBa_I0462.xml"))) {
+         assertTrue("expected sbol to be more confident",
+                 sbol.getConfidence(source) > biopax.getConfidence(source));
+      }
+      try (RecognitionSource source = RecognitionSource.open(new File("test/some.rdf"))) {
+         assertEquals("expected equal confidence for plain rdf",
+                 biopax.getConfidence(source), sbol.getConfidence(source), 0);
+         assertTrue("expected some confidence for plain rdf", sbol.getConfidence(source) > 0);
+      }
+      try (RecognitionSource source = RecognitionSource.open(TestRecognitionSource.SBML_FILE)) {
+         assertEquals("expected full confidence for sbml", 1, new SbmlRecognizer().getConfidence(source), 0);
+         assertEquals("expected no confidence for sbml", 0, sbol.getConfidence(source), 0);
+         assertEquals("expected no confidence from the default recognizer", 0,
+                 new DefaultRecognizer().getConfidence(source), 0);
+      }
+   }
+
+
+   /**
+    * Test that the ranking agrees with guessing for a model.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testRankModel() throws IOException {
+      try (RecognitionSource source = RecognitionSource.open(TestRecognitionSource.SBML_FILE)) {
+         List<RecognitionResult> results = Formatizer.rankFormats(source);
+         assertFalse("expected a result", results.isEmpty());
+         assertEquals("unexpected format", Formatizer.guessFormatFromSource(source), results.get(0).getFormat());
+         assertTrue("unexpected recognizer", results.get(0).getRecognizer() instanceof SbmlRecognizer);
+      }
+   }
+
+
+   /**
+    * Test that confidence, not priority, decides and that only the top
+    * candidates parse the file.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testRanking() throws IOException {
+      ScoredRecognizer unsure = new ScoredRecognizer(1000, 0.3, "unsure");
+      ScoredRecognizer sure = new ScoredRecognizer(10, 0.9, "sure");
+      ScoredRecognizer ignorant = new ScoredRecognizer(500, 0.1, "ignorant");
+      ScoredRecognizer never = new ScoredRecognizer(2000, 0, "never");
+      Formatizer.removeRecognizers();
+      Formatizer.addFormatRecognizer(unsure);
+      Formatizer.addFormatRecognizer(sure);
+      Formatizer.addFormatRecognizer(ignorant);
+      Formatizer.addFormatRecognizer(never);
+
+      try (RecognitionSource source = RecognitionSource.open(TestRecognitionSource.SBML_FILE)) {
+         source.setMimeType("application/xml");
+         List<RecognitionResult> results = Formatizer.rankFormats(source, 2);
+         assertEquals("expected the two candidates", 2, results.size());
+         assertEquals("expected the confident recognizer first", sure.format, results.get(0).getFormat());
+         assertSame("unexpected recognizer", sure, results.get(0).getRecognizer());
+         assertEquals("unexpected confidence", 0.9, results.get(0).getConfidence(), 0);
+         assertEquals("expected the unsure recognizer second", unsure.format, results.get(1).getFormat());
+         assertEquals("expected the third candidate not to parse", 0, ignorant.parsed);
+         assertEquals("expected the recognizer without confidence not to parse", 0, never.parsed);
+
+         // nothing recognized, so we fall back to the mime type
+         results = Formatizer.rankFormats(source, 0);
+         assertEquals("expected the fallback", 1, results.size());
+         assertNull("expected no recognizer for the fallback", results.get(0).getRecognizer());
+         assertEquals("unexpected fallback", Formatizer.getFormatFromMime("application/xml"),
+                 results.get(0).getFormat());
+      }
+   }
+
+
+   /**
+    * A recognizer with a fixed confidence.
+    */
+   private static class ScoredRecognizer extends FormatRecognizer {
+
+      private final int priority;
+      private final double confidence;
+      private final URI format;
+      private volatile int parsed;
+
+
+      ScoredRecognizer(int priority, double confidence, String format) {
+         this.priority = priority;
+         this.confidence = confidence;
+         this.format = buildUri("https://example.org/spec/", format);
+      }
+
+
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      @Override
+      public double getConfidence(RecognitionSource source) {
+         return confidence;
+      }
+
+
+      @Override
+      public URI getFormatByParsing(File file, String mimeType) {
+         parsed++;
+         return format;
+      }
+
+
+      @Override
+      public URI getFormatFromMime(String mime) {
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromExtension(String extension) {
+         return null;
+      }
+   }
+}
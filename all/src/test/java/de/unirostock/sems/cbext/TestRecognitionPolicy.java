@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for the {@link RecognitionPolicy}.
+ */
+public class TestRecognitionPolicy {
+
+   /**
+    * Restore the default policy.
+    */
+   @After
+   public void tearDown() {
+      Formatizer.setPolicy(null);
+   }
+
+
+   /**
+    * Test the tiers chosen by the default policy.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testDefaultTiers() throws IOException {
+      RecognitionPolicy policy = new DefaultRecognitionPolicy();
+      try (RecognitionSource source = RecognitionSource.open(TestRecognitionSource.SBML_FILE)) {
+         assertEquals(RecognitionPolicy.Tier.STRICT_PARSE, policy.decide(source));
+      }
+      try (RecognitionSource source = RecognitionSource.open(new File("test/some.rdf"))) {
+         source.setMimeType("application/rdf+xml");
+         assertEquals(RecognitionPolicy.Tier.SNIFF, policy.decide(source));
+      }
+      try (RecognitionSource source = RecognitionSource.open(new File("test/plain.text"))) {
+         source.setMimeType("image/png");
+         assertEquals(RecognitionPolicy.Tier.SKIP, policy.decide(source));
+      }
+   }
+
+
+   /**
+    * Test that files without a well supported extension are sniffed.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testSniffing() throws IOException {
+      File sedml = File.createTempFile("combineext-policy", ".sedx");
+      try {
+         Files.copy(new File("test/sedml2.xml").toPath(), sedml.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         assertEquals("expected the format from the root element",
+                 URI.create(FormatRecognizer.IDENTIFIERS_BASE + "sed-ml.level-1.version-2"),
+                 TestRecognitionSource.guessXml(sedml));
+      } finally {
+         sedml.delete();
+      }
+   }
+
+
+   /**
+    * Test that the budget limits parsing, and that skipped files fall back to
+    * the MIME type.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testBudget() throws IOException {
+      RecognitionBudget budget = new RecognitionBudget(TestRecognitionSource.SBML_FILE.length(), Long.MAX_VALUE);
+      DefaultRecognitionPolicy policy = new DefaultRecognitionPolicy(Collections.singleton("xml"), Long.MAX_VALUE,
+              budget);
+      Formatizer.setPolicy(policy);
+
+      URI expected = URI.create(FormatRecognizer.IDENTIFIERS_BASE + "sbml.level-2.version-4");
+      try (RecognitionSource source = RecognitionSource.open(TestRecognitionSource.SBML_FILE)) {
+         assertEquals(RecognitionPolicy.Tier.STRICT_PARSE, policy.decide(source));
+         assertEquals("unexpected format", expected, TestRecognitionSource.guessXml(TestRecognitionSource.SBML_FILE));
+         assertEquals("expected the file to be charged", TestRecognitionSource.SBML_FILE.length(),
+                 budget.getBytesSpent());
+
+         // the budget is used up, but sniffing still tells
+         assertEquals(RecognitionPolicy.Tier.SNIFF, policy.decide(source));
+         assertEquals("unexpected format", expected, TestRecognitionSource.guessXml(TestRecognitionSource.SBML_FILE));
+      }
+
+      Formatizer.setPolicy(new RecognitionPolicy() {
+         @Override
+         public Tier decide(RecognitionSource source) {
+            return Tier.SKIP;
+         }
+      });
+      assertEquals("expected the format from the mime type", Formatizer.getFormatFromMime("application/xml"),
+              TestRecognitionSource.guessXml(TestRecognitionSource.SBML_FILE));
+   }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.recognizer.SbmlRecognizer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests recognizing files while they arrive.
+ */
+public class TestRecognitionSession {
+
+   /**
+    * Create the recognizers, sessions only ask those that exist.
+    */
+   @Before
+   public void setUp() {
+      Formatizer.warmUp(null).exceptionally(e -> null).join();
+   }
+
+
+   /**
+    * Restore the defaults.
+    */
+   @After
+   public void tearDown() {
+      Formatizer.setPolicy(null);
+      Formatizer.removeRecognizers();
+      Formatizer.addDefaultRecognizers();
+   }
+
+
+   /**
+    * Feeds a file to a session in chunks until it decides.
+    *
+    * @param session the session
+    * @param file the file
+    * @param chunkSize the size of the chunks
+    * @return the number of bytes fed when the session decided, or -1
+    * @throws IOException if the file cannot be read
+    */
+   private static long feed(RecognitionSession session, File file, int chunkSize) throws IOException {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      long decided = -1;
+      for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+         ByteBuffer chunk = ByteBuffer.wrap(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+         if (session.feed(chunk) != null && decided < 0)
+            decided = session.getBytesFed();
+         assertFalse("chunk should be consumed", chunk.hasRemaining());
+      }
+      assertEquals(bytes.length, session.getBytesFed());
+      return decided;
+   }
+
+
+   /**
+    * Test that documents are recognized by their root element, long before
+    * they are complete.
+    *
+    * @throws IOException if the files cannot be read
+    */
+   @Test
+   public void testEarlyDecision() throws IOException {
+      String[][] files = {
+              {"BIOMD0000000624.xml", "https://identifiers.org/combine.specifications/sbml.level-2.version-4"},
+              {"00001-sbml-l2v1.xml", "https://identifiers.org/combine.specifications/sbml.level-2.version-1"},
+              {"BIOMD0000000459-SEDML.xml", "https://identifiers.org/combine.specifications/sed-ml.level-1.version-1"}};
+      for (String[] expected : files) {
+         File file = new File("test", expected[0]);
+         for (int chunkSize : new int[] {1, 100, 1000}) {
+            RecognitionSession session = new RecognitionSession(file.getName(), "application/xml");
+            long decided = feed(session, file, chunkSize);
+            assertTrue(file + " decided after " + decided + " bytes", decided > 0 && decided < file.length());
+            RecognitionResult result = session.finish();
+            assertEquals(file.toString(), expected[1], result.getFormat().toString());
+            assertEquals(1, (int) result.getConfidence());
+            assertNotNull(result.getRecognizer());
+            assertEquals(file.getName(), result.getFile().getName());
+         }
+      }
+   }
+
+
+   /**
+    * Test that files which cannot be sniffed are decided at the end.
+    *
+    * @throws IOException if the files cannot be read
+    */
+   @Test
+   public void testFinish() throws IOException {
+      File file = new File("test/aguda_b_1999.cellml");
+      RecognitionSession session = new RecognitionSession(file.getName(), null);
+      assertEquals(-1, feed(session, file, 8192));
+      assertFalse(session.isDecided());
+      RecognitionResult result = session.finish();
+      assertEquals(0, (int) result.getConfidence());
+      assertEquals(Formatizer.getFormatFromFileName(file.getName()), result.getFormat());
+      assertSame(result, session.getResult());
+      try {
+         session.feed(ByteBuffer.allocate(1));
+         fail("a finished session should not take more bytes");
+      } catch (IllegalStateException e) {
+         // expected
+      }
+
+      // recognized as usual once stored
+      session = new RecognitionSession(file.getName(), null);
+      feed(session, file, 8192);
+      assertEquals(Formatizer.guessFormat(file), session.finish(file).getFormat());
+
+      session = new RecognitionSession("upload.bin", null);
+      assertNull(session.feed(ByteBuffer.wrap(new byte[] {0, 1, 2, 3})));
+      assertEquals(4, session.getBytesFed());
+   }
+
+
+   /**
+    * Test that the early decision is only a hint if the policy asks for more
+    * than sniffing.
+    *
+    * @throws IOException if the files cannot be read
+    */
+   @Test
+   public void testPolicy() throws IOException {
+      File file = new File("test/BIOMD0000000624.xml");
+      SniffingRecognizer recognizer = new SniffingRecognizer();
+      Formatizer.addFormatRecognizer(recognizer);
+
+      // the default policy parses XML files strictly
+      RecognitionSession session = new RecognitionSession(file.getName(), "application/xml");
+      feed(session, file, 100);
+      assertEquals(recognizer.sniffed, session.getResult().getFormat());
+      assertEquals(recognizer.parsed, session.finish(file).getFormat());
+
+      // a policy that only sniffs keeps the hint
+      Formatizer.setPolicy(new RecognitionPolicy() {
+         @Override
+         public Tier decide(RecognitionSource source) {
+            return Tier.SNIFF;
+         }
+      });
+      session = new RecognitionSession(file.getName(), "application/xml");
+      feed(session, file, 100);
+      RecognitionResult hint = session.getResult();
+      assertEquals(recognizer.sniffed, hint.getFormat());
+      assertSame(hint, session.finish(file));
+   }
+
+
+   /**
+    * Test that feeding does not create recognizers.
+    *
+    * @throws IOException if the files cannot be read
+    */
+   @Test
+   public void testLazyRecognizer() throws IOException {
+      AtomicInteger created = new AtomicInteger();
+      LazyRecognizer lazy = new LazyRecognizer(new SbmlRecognizer.Descriptor() {
+         @Override
+         public FormatRecognizer createRecognizer() {
+            created.incrementAndGet();
+            return super.createRecognizer();
+         }
+      });
+      Formatizer.removeRecognizers();
+      Formatizer.addFormatRecognizer(lazy);
+
+      File file = new File("test/BIOMD0000000624.xml");
+      RecognitionSession session = new RecognitionSession(file.getName(), "application/xml");
+      assertEquals("expected no decision without the recognizer", -1, feed(session, file, 100));
+      assertEquals("feeding created the recognizer", 0, created.get());
+
+      RecognitionResult result = session.finish(file);
+      assertEquals(1, created.get());
+      assertTrue(result.getFormat().toString(), result.getFormat().toString().contains("sbml"));
+   }
+
+
+   /**
+    * A recognizer that sniffs another format than it parses.
+    */
+   private static class SniffingRecognizer extends FormatRecognizer {
+
+      final URI sniffed = buildUri("https://example.org/spec/", "sniffed");
+      final URI parsed = buildUri("https://example.org/spec/", "parsed");
+
+
+      @Override
+      public int getPriority() {
+         return 1000;
+      }
+
+
+      @Override
+      public URI getFormatBySniffing(RecognitionSource source) {
+         return sniffed;
+      }
+
+
+      @Override
+      public URI getFormatByParsing(File file, String mimeType) {
+         return parsed;
+      }
+
+
+      @Override
+      public URI getFormatFromMime(String mime) {
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromExtension(String extension) {
+         return null;
+      }
+   }
+}
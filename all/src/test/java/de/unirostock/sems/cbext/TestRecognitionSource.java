@@ -0,0 +1,200 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.io.HeaderWindow;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for the {@link RecognitionSource}.
+ */
+public class TestRecognitionSource {
+
+   /** The Constant SBML_FILE. */
+   public static final File SBML_FILE = new File("test/BIOMD0000000459.xml");
+
+
+   /**
+    * Recognizes a file as XML, so the tests do not depend on the MIME type
+    * the platform detects.
+    *
+    * @param file the file
+    * @return the format, see {@link Formatizer#guessFormatFromSource (RecognitionSource)}
+    * @throws IOException if the file cannot be opened
+    */
+   public static URI guessXml(File file) throws IOException {
+      try (RecognitionSource source = RecognitionSource.open(file)) {
+         source.setMimeType("application/xml");
+         return Formatizer.guessFormatFromSource(source);
+      }
+   }
+
+
+   /**
+    * Test the properties of a source.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testProperties() throws IOException {
+      try (RecognitionSource source = RecognitionSource.open(SBML_FILE)) {
+         assertEquals("unexpected file", SBML_FILE, source.getFile());
+         assertEquals("unexpected name", "BIOMD0000000459.xml", source.getName());
+         assertEquals("unexpected extension", "xml", source.getExtension());
+         assertEquals("unexpected size", SBML_FILE.length(), source.getSize());
+
+         source.setMimeType("application/xml");
+         assertEquals("unexpected mime", "application/xml", source.getMimeType());
+      }
+   }
+
+
+   /**
+    * Test that header, streams and hash see the same bytes.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    * @throws NoSuchAlgorithmException if there is no SHA-256
+    */
+   @Test
+   public void testContents() throws IOException, NoSuchAlgorithmException {
+      byte[] expected = Files.readAllBytes(SBML_FILE.toPath());
+
+      try (RecognitionSource source = RecognitionSource.open(SBML_FILE)) {
+         ByteBuffer header = source.getHeader();
+         assertEquals("unexpected header size", RecognitionSource.DEFAULT_HEADER_SIZE, header.remaining());
+         for (int i = 0; header.hasRemaining(); i++)
+            assertEquals("unexpected header byte at " + i, expected[i], header.get());
+         assertEquals("header is supposed to be rewound", RecognitionSource.DEFAULT_HEADER_SIZE,
+                 source.getHeader().remaining());
+
+         // two interleaved streams must not interfere
+         InputStream first = source.newInputStream();
+         InputStream second = source.newInputStream();
+         assertEquals("unexpected first byte", expected[0], (byte) first.read());
+         assertArrayEquals(expected, readFully(second));
+         assertEquals("unexpected second byte", expected[1], (byte) first.read());
+
+         assertArrayEquals(MessageDigest.getInstance(RecognitionSource.HASH_ALGORITHM).digest(expected),
+                 source.getHash());
+      }
+   }
+
+
+   /**
+    * Test that large files are served through memory-mapped chunks.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testMappedSource() throws IOException {
+      // repeat a model until we exceed the mapping threshold
+      byte[] model = Files.readAllBytes(SBML_FILE.toPath());
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      while (out.size() < RecognitionSource.MAP_THRESHOLD + HeaderWindow.DEFAULT_CHUNK_SIZE / 2)
+         out.write(model);
+      byte[] expected = out.toByteArray();
+
+      File tmp = File.createTempFile("combineext-mapped", ".xml");
+      tmp.deleteOnExit();
+      Files.write(tmp.toPath(), expected);
+
+      try (RecognitionSource source = RecognitionSource.open(tmp)) {
+         assertTrue("expected the source to be mapped", source.isMapped());
+
+         ByteBuffer header = source.getHeader();
+         assertEquals("unexpected header size", RecognitionSource.DEFAULT_HEADER_SIZE, header.remaining());
+         for (int i = 0; header.hasRemaining(); i++)
+            assertEquals("unexpected header byte at " + i, expected[i], header.get());
+
+         HeaderWindow window = source.getHeaderWindow();
+         long chunks = window.getChunkCount();
+         int total = 0;
+         for (long i = 0; i < chunks; i++) {
+            ByteBuffer chunk = window.chunk(i);
+            while (chunk.hasRemaining())
+               assertEquals("unexpected byte in chunk " + i, expected[total++], chunk.get());
+         }
+         assertEquals("chunks do not cover the file", expected.length, total);
+         assertNull("expected no chunk beyond the end of the file", window.chunk(chunks));
+
+         assertArrayEquals(expected, readFully(source.newInputStream()));
+      } finally {
+         tmp.delete();
+      }
+   }
+
+
+   /**
+    * Test that guessing through a source gives the same result as guessing a file.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testGuessFormat() throws IOException {
+      try (RecognitionSource source = RecognitionSource.open(SBML_FILE)) {
+         assertEquals("got different formats for file and source",
+                 Formatizer.guessFormat(SBML_FILE), Formatizer.guessFormatFromSource(source));
+      }
+      assertNull("expected null for a null source", Formatizer.guessFormatFromSource(null));
+   }
+
+
+   /**
+    * Test that recognizing tells the recognizer and counts the bytes read.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testRecognize() throws IOException {
+      try (RecognitionSource source = RecognitionSource.open(SBML_FILE)) {
+         assertEquals("nothing read yet", 0, source.getBytesRead());
+         RecognitionResult result = Formatizer.recognize(source);
+         assertEquals(Formatizer.guessFormat(SBML_FILE), result.getFormat());
+         assertNotNull("expected a recognizer for SBML", result.getRecognizer());
+         assertFalse("expected the actual recognizer", result.getRecognizer() instanceof LazyRecognizer);
+         assertTrue("expected some bytes read", source.getBytesRead() > 0);
+      }
+      assertNull("expected null for a null source", Formatizer.recognize(null));
+   }
+
+
+   private static byte[] readFully(InputStream in) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+         out.write(buffer, 0, read);
+      return out.toByteArray();
+   }
+}
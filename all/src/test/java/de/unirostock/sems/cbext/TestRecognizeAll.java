@@ -0,0 +1,195 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.io.DirectorySpliterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests recognizing whole directory trees as streams.
+ */
+public class TestRecognizeAll {
+
+   /** a tree with a large flat directory and some nested ones. */
+   private Path tree;
+
+
+   /**
+    * Create the tree.
+    *
+    * @throws IOException if the tree cannot be created
+    */
+   @Before
+   public void setUp() throws IOException {
+      tree = Files.createTempDirectory("combineext-tree");
+      Path flat = Files.createDirectories(tree.resolve("flat"));
+      for (int i = 0; i < 2000; i++)
+         Files.write(flat.resolve("file" + i + ".txt"), ("file " + i).getBytes(StandardCharsets.UTF_8));
+      Path deep = tree;
+      for (int i = 0; i < 20; i++) {
+         deep = Files.createDirectories(deep.resolve("level" + i));
+         Files.write(deep.resolve("model.xml"), Files.readAllBytes(Paths.get("test/BIOMD0000000624.xml")));
+      }
+   }
+
+
+   /**
+    * Remove the tree.
+    *
+    * @throws IOException if the tree cannot be removed
+    */
+   @After
+   public void tearDown() throws IOException {
+      try (Stream<Path> paths = Files.walk(tree)) {
+         paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+   }
+
+
+   /**
+    * Lists the regular files below a directory.
+    *
+    * @param root the directory
+    * @return the files
+    * @throws IOException if the directory cannot be walked
+    */
+   private static Set<File> walk(Path root) throws IOException {
+      try (Stream<Path> paths = Files.walk(root)) {
+         return paths.filter(Files::isRegularFile).map(Path::toFile).collect(Collectors.toSet());
+      }
+   }
+
+
+   /**
+    * Test that every file of the test directory is recognized just like
+    * {@link Formatizer#guessFormat(File)} does.
+    *
+    * @throws IOException if the directory cannot be walked
+    */
+   @Test
+   public void testSequential() throws IOException {
+      Map<File, URI> formats = new HashMap<File, URI>();
+      try (Stream<RecognitionResult> results = Formatizer.recognizeAll(Paths.get("test"))) {
+         results.forEach(result -> assertNull("visited twice", formats.put(result.getFile(), result.getFormat())));
+      }
+      assertEquals(walk(Paths.get("test")), formats.keySet());
+      for (Map.Entry<File, URI> entry : formats.entrySet())
+         assertEquals(entry.getKey().toString(), Formatizer.guessFormat(entry.getKey()), entry.getValue());
+   }
+
+
+   /**
+    * Test that parallel streams visit every file exactly once.
+    *
+    * @throws IOException if the directory cannot be walked
+    */
+   @Test
+   public void testParallel() throws IOException {
+      Map<File, URI> formats;
+      try (Stream<RecognitionResult> results = Formatizer.recognizeAll(tree)) {
+         formats = results.parallel().collect(Collectors.toMap(RecognitionResult::getFile,
+                 RecognitionResult::getFormat));
+      }
+      assertEquals(walk(tree), formats.keySet());
+      URI sbml = Formatizer.guessFormat(new File("test/BIOMD0000000624.xml"));
+      assertEquals(20, formats.values().stream().filter(sbml::equals).count());
+
+      try (Stream<RecognitionResult> results = Formatizer.recognizeAll(tree)) {
+         assertEquals("a limited stream should stop early", 5, results.parallel().limit(5).count());
+      }
+   }
+
+
+   /**
+    * Test that flat directories and subtrees are split.
+    *
+    * @throws IOException if the directory cannot be walked
+    */
+   @Test
+   public void testSplit() throws IOException {
+      try (DirectorySpliterator files = new DirectorySpliterator(tree.resolve("flat"))) {
+         assertTrue(files.tryAdvance(file -> assertTrue(file.toString().endsWith(".txt"))));
+         Spliterator<Path> batch = files.trySplit();
+         assertNotNull("expected a batch of the flat directory", batch);
+         assertTrue(batch.estimateSize() > 0 && batch.estimateSize() < 2000);
+         long[] count = {1};
+         batch.forEachRemaining(file -> count[0]++);
+         files.forEachRemaining(file -> count[0]++);
+         assertEquals(2000, count[0]);
+      }
+
+      try (DirectorySpliterator files = new DirectorySpliterator(tree)) {
+         long[] count = {0};
+         assertTrue(files.tryAdvance(file -> count[0]++));
+         Spliterator<Path> subtrees = files.trySplit();
+         assertNotNull("expected pending subtrees", subtrees);
+         subtrees.forEachRemaining(file -> count[0]++);
+         files.forEachRemaining(file -> count[0]++);
+         assertEquals(2020, count[0]);
+      }
+      assertEquals("a single file is a tree of its own", 1,
+              Formatizer.recognizeAll(Paths.get("test/some.xml")).count());
+   }
+
+
+   /**
+    * Test that a spliterator splits before it was advanced, as parallel
+    * streams split first.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testSplitFresh() throws IOException {
+      for (Path root : new Path[] {tree, tree.resolve("flat")}) {
+         try (DirectorySpliterator files = new DirectorySpliterator(root)) {
+            Spliterator<Path> split = files.trySplit();
+            assertNotNull("expected a fresh spliterator of " + root + " to split", split);
+            long[] count = {0};
+            split.forEachRemaining(file -> count[0]++);
+            files.forEachRemaining(file -> count[0]++);
+            assertEquals(root == tree ? 2020 : 2000, count[0]);
+         }
+      }
+      try (DirectorySpliterator file = new DirectorySpliterator(Paths.get("test/some.xml"))) {
+         assertNull("a single file cannot be split", file.trySplit());
+      }
+   }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.tables.Ext2FormatTable;
+import de.unirostock.sems.cbext.tables.Format2IconTable;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the tables compiled by the {@link ResourcesGenerator}.
+ */
+public class TestResourcesGenerator {
+
+   /**
+    * Loads a mapping the way we used to at runtime.
+    *
+    * @param name the name of the resource
+    * @return the mapping
+    * @throws IOException if the resource cannot be read
+    */
+   private static Properties load(String name) throws IOException {
+      Properties properties = new Properties();
+      try (InputStream in = TestResourcesGenerator.class.getResourceAsStream(name)) {
+         properties.load(in);
+      }
+      return properties;
+   }
+
+
+   /**
+    * Test that the extension table maps exactly what the resource maps.
+    *
+    * @throws IOException if the resource cannot be read
+    */
+   @Test
+   public void testExt2Format() throws IOException {
+      Properties ext2Format = load("/ext2format.prop");
+      assertEquals(ext2Format.size(), Ext2FormatTable.keys().size());
+      for (String key : ext2Format.stringPropertyNames())
+         assertEquals("unexpected format for " + key, URI.create(ext2Format.getProperty(key)),
+                 Ext2FormatTable.get(key));
+
+      assertNull(Ext2FormatTable.get(null));
+      assertNull(Ext2FormatTable.get(""));
+      assertNull(Ext2FormatTable.get("no-such-extension"));
+      assertNull(Ext2FormatTable.get("SBML"));
+   }
+
+
+   /**
+    * Test that the icon table maps exactly what the resource maps.
+    *
+    * @throws IOException if the resource cannot be read
+    */
+   @Test
+   public void testFormat2Icon() throws IOException {
+      Properties format2Icon = load("/format2icon.prop");
+      assertEquals(format2Icon.size(), Format2IconTable.keys().size());
+      for (String key : format2Icon.stringPropertyNames())
+         assertEquals("unexpected icon for " + key, format2Icon.getProperty(key), Format2IconTable.get(key));
+      assertNull(Format2IconTable.get("https://binfalse.de"));
+   }
+
+
+   /**
+    * Test that the perfect hash places arbitrary keys without collisions.
+    */
+   @Test
+   public void testPerfectHash() {
+      List<String> keys = new ArrayList<String>();
+      for (int i = 0; i < 1000; i++)
+         keys.add("key-" + i);
+      int[][] hash = ResourcesGenerator.computeHash(keys, 1024, 256);
+      boolean[] placed = new boolean[keys.size()];
+      for (int index : hash[1]) {
+         if (index >= 0) {
+            assertFalse("key placed twice", placed[index]);
+            placed[index] = true;
+         }
+      }
+      for (int i = 0; i < keys.size(); i++) {
+         assertTrue("key not placed: " + keys.get(i), placed[i]);
+         int h = keys.get(i).hashCode();
+         int slot = ResourcesGenerator.mix(h, hash[0][ResourcesGenerator.mix(h, 0) & 255]) & 1023;
+         assertEquals(i, hash[1][slot]);
+      }
+   }
+}
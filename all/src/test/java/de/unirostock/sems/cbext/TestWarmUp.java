@@ -0,0 +1,164 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests warming up the recognizers in the background.
+ */
+public class TestWarmUp {
+
+   /**
+    * Restore the defaults.
+    */
+   @After
+   public void tearDown() {
+      Formatizer.removeRecognizers();
+      Formatizer.addDefaultRecognizers();
+   }
+
+
+   /**
+    * Test that every built-in recognizer ships a sample and all of them warm
+    * up.
+    *
+    * @throws Exception if the warm-up fails
+    */
+   @Test
+   public void testDefaultRecognizers() throws Exception {
+      for (RecognizerDescriptor descriptor : ServiceLoader.load(RecognizerDescriptor.class)) {
+         URL sample = descriptor.createRecognizer().getWarmUpSample();
+         if (!descriptor.getName().endsWith(".DefaultRecognizer"))
+            assertNotNull("no warm-up sample for " + descriptor, sample);
+      }
+
+      ExecutorService pool = Executors.newFixedThreadPool(2);
+      try {
+         Formatizer.warmUp(pool).get(1, TimeUnit.MINUTES);
+      } finally {
+         pool.shutdown();
+      }
+   }
+
+
+   /**
+    * Test that the future completes only after the recognizers parsed their
+    * samples, and fails if a recognizer fails.
+    *
+    * @throws Exception if the warm-up fails unexpectedly
+    */
+   @Test
+   public void testFuture() throws Exception {
+      Formatizer.removeRecognizers();
+      SampleRecognizer slow = new SampleRecognizer(new File("test/some.xml"), false);
+      Formatizer.addFormatRecognizer(slow);
+
+      CompletableFuture<Void> ready = Formatizer.warmUp(null);
+      try {
+         ready.get(50, TimeUnit.MILLISECONDS);
+         fail("warm-up should still be running");
+      } catch (TimeoutException e) {
+         // expected
+      }
+      ready.get(1, TimeUnit.MINUTES);
+      assertEquals(1, slow.calls);
+
+      Formatizer.addFormatRecognizer(new SampleRecognizer(new File("test/some.xml"), true));
+      try {
+         Formatizer.warmUp(null).get(1, TimeUnit.MINUTES);
+         fail("expected the failing recognizer to fail the warm-up");
+      } catch (ExecutionException e) {
+         assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+   }
+
+
+   /**
+    * A recognizer that takes its time to parse its sample.
+    */
+   private static class SampleRecognizer extends FormatRecognizer {
+
+      private final URL sample;
+      private final boolean fail;
+      private volatile int calls;
+
+
+      SampleRecognizer(File sample, boolean fail) throws MalformedURLException {
+         this.sample = sample.toURI().toURL();
+         this.fail = fail;
+      }
+
+
+      @Override
+      public int getPriority() {
+         return 100;
+      }
+
+
+      @Override
+      public URI getFormatByParsing(File file, String mimeType) {
+         if (fail)
+            throw new IllegalStateException("cannot parse " + file);
+         try {
+            Thread.sleep(200);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         calls++;
+         return buildUri("https://example.org/spec/", "sample");
+      }
+
+
+      @Override
+      public URI getFormatFromMime(String mime) {
+         return null;
+      }
+
+
+      @Override
+      public URI getFormatFromExtension(String extension) {
+         return null;
+      }
+
+
+      @Override
+      public URL getWarmUpSample() {
+         return sample;
+      }
+   }
+}
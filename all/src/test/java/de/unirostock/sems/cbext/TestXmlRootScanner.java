@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.sniff.XmlRoot;
+import de.unirostock.sems.cbext.sniff.XmlRootScanner;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for the {@link XmlRootScanner}.
+ */
+public class TestXmlRootScanner {
+
+   /**
+    * Test the root elements of the models in our corpus.
+    *
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   @Test
+   public void testCorpus() throws IOException {
+      XmlRoot root = rootOf(new File("test/BIOMD0000000459.xml"));
+      assertEquals("unexpected root", "sbml", root.getLocalName());
+      assertEquals("unexpected namespace", "http://www.sbml.org/sbml/level2/version4", root.getNamespaceUri());
+      assertEquals("unexpected level", "2", root.getLevel());
+      assertEquals("unexpected version", "4", root.getVersion());
+
+      root = rootOf(new File("test/v3-example1-repeated-steady-scan-oscli.xml"));
+      assertEquals("unexpected root", "sedML", root.getLocalName());
+      assertEquals("unexpected level", "1", root.getLevel());
+
+      root = rootOf(new File("test/guess-SBOLj-examples-data-BBa_I0462.xml"));
+      assertEquals("unexpected root", "RDF", root.getLocalName());
+      assertEquals("unexpected prefix", "rdf", root.getPrefix());
+      assertEquals("unexpected namespace", "http://www.w3.org/1999/02/22-rdf-syntax-ns#", root.getNamespaceUri());
+      assertEquals("unexpected default namespace", "http://sbols.org/v1#", root.getNamespaces().get(""));
+
+      root = rootOf(new File("test/guess-biopax-paxtools-core-src-main-resources-org-biopax-paxtools-model-biopax-level3.owl"));
+      assertTrue("expected a biopax namespace", root.declaresNamespace("http://www.biopax.org/release/biopax-level"));
+
+      assertEquals("unexpected root", "model", rootOf(new File("test/aguda_b_1999.cellml")).getLocalName());
+      assertEquals("unexpected root", "sbgn", rootOf(new File("test/guess-sbgn-PD-clone-marker.sbgn")).getLocalName());
+      assertEquals("unexpected root", "I", rootOf(new File("test/some.xml")).getLocalName());
+
+      try (RecognitionSource source = RecognitionSource.open(new File("test/plain.text"))) {
+         assertNull("did not expect a root in plain text", source.getXmlRoot());
+         assertEquals("expected plain text not to be xml", XmlRootScanner.Result.NOT_XML, source.getXmlRootResult());
+      }
+   }
+
+
+   /**
+    * Test that everything in front of the root element is skipped.
+    */
+   @Test
+   public void testProlog() {
+      XmlRootScanner scanner = new XmlRootScanner();
+      String xml = "<?xml version=\"1.0\"?>\n<?stylesheet href=\"a>b\"?>\n<!-- <notme/> -- --->\n"
+              + "<!DOCTYPE sbml SYSTEM \"x>y\" [\n  <!ENTITY e '>'>\n  <!-- ]> -->\n  <?pi ]>?>\n]>\n"
+              + "<s:sbml xmlns:s='urn:s' s:level = \"3\" version='a&amp;b&#x41;&unknown;'/>";
+      assertEquals(XmlRootScanner.Result.FOUND, scanner.scan(encode(xml, StandardCharsets.UTF_8)));
+      assertTrue("expected sbml root", scanner.isRoot("sbml"));
+      assertTrue("expected level 3", scanner.hasAttribute("level", "3"));
+
+      XmlRoot root = scanner.toRoot();
+      assertEquals("unexpected namespace", "urn:s", root.getNamespaceUri());
+      assertEquals("unexpected level", "3", root.getLevel());
+      assertEquals("unexpected version", "a&bA&unknown;", root.getVersion());
+      assertNull("did not expect a language", root.getLanguage());
+   }
+
+
+   /**
+    * Test byte order marks and UTF-16.
+    */
+   @Test
+   public void testEncodings() {
+      XmlRootScanner scanner = new XmlRootScanner();
+      String xml = "<?xml version=\"1.0\"?><sedML level=\"1\" name=\"\u00e4\u20ac\ud83d\ude00\">";
+
+      byte[] utf8 = xml.getBytes(StandardCharsets.UTF_8);
+      byte[] bom = new byte[utf8.length + 3];
+      bom[0] = (byte) 0xEF;
+      bom[1] = (byte) 0xBB;
+      bom[2] = (byte) 0xBF;
+      System.arraycopy(utf8, 0, bom, 3, utf8.length);
+
+      ByteBuffer[] inputs = {
+              ByteBuffer.wrap(utf8),
+              ByteBuffer.wrap(bom),
+              encode(xml, StandardCharsets.UTF_16),
+              encode(xml, StandardCharsets.UTF_16LE),
+              encode(xml, StandardCharsets.UTF_16BE),
+      };
+      for (ByteBuffer input : inputs) {
+         assertEquals(XmlRootScanner.Result.FOUND, scanner.scan(input));
+         XmlRoot root = scanner.toRoot();
+         assertEquals("unexpected root", "sedML", root.getLocalName());
+         assertEquals("unexpected name", "\u00e4\u20ac\ud83d\ude00", root.getAttribute("name"));
+      }
+
+      String latin = "<?xml version='1.0' encoding='ISO-8859-1'?><sbgn a='\u00e4'/>";
+      assertEquals(XmlRootScanner.Result.FOUND, scanner.scan(encode(latin, StandardCharsets.ISO_8859_1)));
+      assertEquals("unexpected attribute", "\u00e4", scanner.toRoot().getAttribute("a"));
+   }
+
+
+   /**
+    * Test that truncated documents and other files are told apart.
+    */
+   @Test
+   public void testResults() {
+      XmlRootScanner scanner = new XmlRootScanner();
+      assertEquals(XmlRootScanner.Result.INCOMPLETE, scanner.scan(encode("", StandardCharsets.UTF_8)));
+      assertEquals(XmlRootScanner.Result.INCOMPLETE, scanner.scan(encode("<?xml version=", StandardCharsets.UTF_8)));
+      assertEquals(XmlRootScanner.Result.INCOMPLETE, scanner.scan(encode("<!-- long", StandardCharsets.UTF_8)));
+      assertEquals(XmlRootScanner.Result.INCOMPLETE, scanner.scan(encode("<sbml level=\"2", StandardCharsets.UTF_8)));
+      assertNull("expected no root for an incomplete scan", scanner.toRoot());
+      assertFalse("expected no root for an incomplete scan", scanner.isRoot("sbml"));
+
+      assertEquals(XmlRootScanner.Result.NOT_XML, scanner.scan(encode("just some text", StandardCharsets.UTF_8)));
+      assertEquals(XmlRootScanner.Result.NOT_XML, scanner.scan(encode("<!oops>", StandardCharsets.UTF_8)));
+      assertEquals(XmlRootScanner.Result.NOT_XML, scanner.scan(encode("<a b>", StandardCharsets.UTF_8)));
+      assertEquals(XmlRootScanner.Result.NOT_XML, scanner.scan(encode("PK\u0003\u0004", StandardCharsets.ISO_8859_1)));
+
+      // the position of the buffer is not touched
+      ByteBuffer buffer = encode("  <a/>", StandardCharsets.UTF_8);
+      buffer.position(2);
+      assertEquals(XmlRootScanner.Result.FOUND, scanner.scan(buffer));
+      assertEquals("expected the position to stay", 2, buffer.position());
+   }
+
+
+   private static XmlRoot rootOf(File file) throws IOException {
+      try (RecognitionSource source = RecognitionSource.open(file)) {
+         XmlRoot root = source.getXmlRoot();
+         assertNotNull("expected a root element in " + file, root);
+         return root;
+      }
+   }
+
+
+   private static ByteBuffer encode(String text, Charset charset) {
+      return ByteBuffer.wrap(text.getBytes(charset));
+   }
+}
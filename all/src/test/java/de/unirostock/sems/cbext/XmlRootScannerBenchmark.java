@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.sniff.XmlRootScanner;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+
+/**
+ * Compares finding the root element using the {@link XmlRootScanner} with the
+ * cursor-based StAX reader, which is the cheapest parser the JDK offers.
+ *
+ * Both read the header of the models in our <code>test/</code> corpus from
+ * memory, so the benchmark measures the parsing only. It is not part of the
+ * test suite, run it manually:
+ *
+ * <pre>
+ * java -cp ... de.unirostock.sems.cbext.XmlRootScannerBenchmark [rounds]
+ * </pre>
+ */
+public class XmlRootScannerBenchmark {
+
+   /** the models to scan. */
+   private static final String[] MODELS = {
+           "test/BIOMD0000000624.xml",
+           "test/v3-example1-repeated-steady-scan-oscli.xml",
+           "test/aguda_b_1999.cellml",
+           "test/guess-sbgn-PD-clone-marker.sbgn",
+           "test/guess-SBOLj-examples-data-BBa_I0462.xml",
+           "test/guess-biopax-paxtools-core-src-main-resources-org-biopax-paxtools-model-biopax-level3.owl",
+   };
+
+   /** prevents the JIT from removing our work. */
+   private static long sink;
+
+
+   /**
+    * Runs the benchmark.
+    *
+    * @param args optional number of rounds per model
+    * @throws Exception if a model cannot be read or parsed
+    */
+   public static void main(String[] args) throws Exception {
+      int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      XmlRootScanner scanner = new XmlRootScanner();
+
+      for (String model : MODELS) {
+         byte[] bytes = Files.readAllBytes(Paths.get(model));
+         byte[] header = Arrays.copyOf(bytes, Math.min(bytes.length, RecognitionSource.DEFAULT_HEADER_SIZE));
+         System.out.println(model);
+
+         for (int warmup = 0; warmup < rounds / 10; warmup++) {
+            sink += scan(scanner, header);
+            sink += stax(factory, header);
+         }
+
+         long start = System.nanoTime();
+         for (int i = 0; i < rounds; i++)
+            sink += scan(scanner, header);
+         long scanNanos = (System.nanoTime() - start) / rounds;
+
+         start = System.nanoTime();
+         for (int i = 0; i < rounds; i++)
+            sink += stax(factory, header);
+         long staxNanos = (System.nanoTime() - start) / rounds;
+
+         System.out.printf("  XmlRootScanner: %8d ns/op%n", scanNanos);
+         System.out.printf("  StAX cursor   : %8d ns/op (%.1fx)%n", staxNanos,
+                 staxNanos / (double) Math.max(1, scanNanos));
+      }
+      System.out.println("(" + sink + ")");
+   }
+
+
+   private static int scan(XmlRootScanner scanner, byte[] header) {
+      if (scanner.scan(ByteBuffer.wrap(header)) != XmlRootScanner.Result.FOUND)
+         throw new IllegalStateException("no root found");
+      return scanner.isRoot("sbml") ? 1 : 0;
+   }
+
+
+   private static int stax(XMLInputFactory factory, byte[] header) throws XMLStreamException, IOException {
+      XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(header));
+      try {
+         while (reader.next() != XMLStreamReader.START_ELEMENT) {
+            // skip the prolog
+         }
+         return reader.getLocalName().equals("sbml") ? 1 : 0;
+      } finally {
+         reader.close();
+      }
+   }
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Peters <martin@freakybytes.net>
+ * - Martin Scharm <martin@binfalse.de>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.recognizer;
+
+import de.binfalse.bflog.LOGGER;
+import de.unirostock.sems.cbext.FormatRecognizer;
+import de.unirostock.sems.cbext.Formatizer;
+import de.unirostock.sems.cbext.RecognitionSource;
+import de.unirostock.sems.cbext.RecognizerDescriptor;
+import org.biopax.paxtools.io.BioPAXIOHandler;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.util.BioPaxIOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.nio.file.Files;
+
+
+/**
+ * The Class BioPaxFormatizer to recognize BioPax files.
+ */
+public class BioPaxRecognizer
+        extends FormatRecognizer {
+
+   /** priority for this format recognizer */
+   protected static int priority = 100;
+
+   /**
+    * Sets the priority of this format recognizer and triggers a resort of all
+    * format recognizers.
+    *
+    * The higher the priority, the earlier this recognizer gets called.
+    * The first recognizer, which is able to identify a file, determines it's
+    * format.
+    * Setting a negative priority will be ignored.
+    * Default recognizers have a priority of 100.
+    *
+    * @param newPriority the new priority of this recogniser
+    */
+   public static void setPriority(int newPriority) {
+
+      // no negative priorities!
+      if (priority < 0)
+         return;
+
+      priority = newPriority;
+      Formatizer.resortRecognizers();
+   }
+
+   /* (non-Javadoc)
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getPriority()
+    */
+   @Override
+   public int getPriority() {
+      return priority;
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatParser#checkFormat(java.io.File,
+    * java.lang.String)
+    */
+   @Override
+   public URI getFormatByParsing(File file, String mimeType) {
+      try (InputStream in = Files.newInputStream(file.toPath())) {
+         return getFormatByParsing(in, file);
+      } catch (IOException e) {
+         LOGGER.info(e, "file ", file, " seems not to be a valid BioPAX document.");
+      }
+
+      // no format could be guessed
+      return null;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatByParsing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatByParsing(RecognitionSource source) {
+      // documents are serialised as RDF/XML
+      if (!source.mayHaveRoot("RDF"))
+         return null;
+      return getFormatByParsing(source.newInputStream(), source);
+   }
+
+
+   /**
+    * Reads a BioPAX model from a stream to determine its level.
+    *
+    * @param in the stream providing the document
+    * @param origin where the stream comes from, just for logging
+    * @return the format URI or null
+    */
+   private URI getFormatByParsing(InputStream in, Object origin) {
+      try {
+         BioPAXIOHandler handler = new org.biopax.paxtools.io.SimpleIOHandler(); // auto-detects
+         // Level
+         Model model = handler.convertFromOWL(in);
+         BioPAXLevel bioPAXLevel = model.getLevel();
+         String level;
+         String d = bioPAXLevel.name().substring(1);
+         level = ".level-".concat(d);
+         return buildUri(IDENTIFIERS_BASE, "biopax" + level);
+      } catch (BioPaxIOException e) {
+         LOGGER.info(e, "file ", origin, " seems not to be a valid BioPAX document.");
+      }
+
+      // no format could be guessed
+      return null;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getConfidence(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public double getConfidence(RecognitionSource source) {
+      // the namespace tells BioPAX apart from other RDF, such as SBOL
+      return getRootConfidence(source, "RDF", "http://www.biopax.org/release/biopax-level");
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see
+    * de.unirostock.sems.cbext.FormatRecognizer#getFormatFromMime(java.lang.String
+    * )
+    */
+   @Override
+   public URI getFormatFromMime(String mime) {
+      // we cannot decide from just a mime type
+      return null;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see
+    * de.unirostock.sems.cbext.FormatRecognizer#getFormatFromExtension(java.lang
+    * .String)
+    */
+   @Override
+   public URI getFormatFromExtension(String extension) {
+      if (extension != null && extension.equals("biopax"))
+         return buildUri(IDENTIFIERS_BASE, "biopax");
+      return null;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getKnownExtensions()
+    */
+   @Override
+   public Collection<String> getKnownExtensions() {
+      return Collections.singletonList("biopax");
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getWarmUpSample()
+    */
+   @Override
+   public URL getWarmUpSample() {
+      return BioPaxRecognizer.class.getResource("/warmup/sample.owl");
+   }
+
+
+   /**
+    * Describes the {@link BioPaxRecognizer} without loading the BioPAX library.
+    */
+   public static class Descriptor
+      extends RecognizerDescriptor {
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getName()
+       */
+      @Override
+      public String getName() {
+         return BioPaxRecognizer.class.getName();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getPriority()
+       */
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownExtensions()
+       */
+      @Override
+      public Collection<String> getKnownExtensions() {
+         return Collections.singletonList("biopax");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownMimeTypes()
+       */
+      @Override
+      public Collection<String> getKnownMimeTypes() {
+         return Collections.emptyList();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getRootElements()
+       */
+      @Override
+      public Collection<String> getRootElements() {
+         return Collections.singletonList("RDF");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#createRecognizer()
+       */
+      @Override
+      public FormatRecognizer createRecognizer() {
+         return new BioPaxRecognizer();
+      }
+   }
+}
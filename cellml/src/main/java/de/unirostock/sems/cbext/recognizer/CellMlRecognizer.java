@@ -24,10 +24,15 @@ import de.binfalse.bflog.LOGGER;
 import de.unirostock.sems.bives.cellml.algorithm.CellMLValidator;
 import de.unirostock.sems.cbext.FormatRecognizer;
 import de.unirostock.sems.cbext.Formatizer;
+import de.unirostock.sems.cbext.RecognitionSource;
+import de.unirostock.sems.cbext.RecognizerDescriptor;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
 
 
 /**
@@ -92,6 +97,31 @@ public class CellMlRecognizer
    }
 
 
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatByParsing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatByParsing(RecognitionSource source) {
+      // skip the expensive validation if the root element does not match
+      if (!source.mayHaveRoot("model"))
+         return null;
+      return super.getFormatByParsing(source);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getConfidence(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public double getConfidence(RecognitionSource source) {
+      return getRootConfidence(source, "model", "http://www.cellml.org/cellml/");
+   }
+
+
    /*
     * (non-Javadoc)
     *
@@ -120,4 +150,98 @@ public class CellMlRecognizer
       return null;
    }
 
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getKnownExtensions()
+    */
+   @Override
+   public Collection<String> getKnownExtensions() {
+      return Collections.singletonList("cellml");
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getWarmUpSample()
+    */
+   @Override
+   public URL getWarmUpSample() {
+      return CellMlRecognizer.class.getResource("/warmup/sample.cellml");
+   }
+
+
+   /**
+    * Describes the {@link CellMlRecognizer} without loading the CellML library.
+    */
+   public static class Descriptor
+      extends RecognizerDescriptor {
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getName()
+       */
+      @Override
+      public String getName() {
+         return CellMlRecognizer.class.getName();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getPriority()
+       */
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownExtensions()
+       */
+      @Override
+      public Collection<String> getKnownExtensions() {
+         return Collections.singletonList("cellml");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownMimeTypes()
+       */
+      @Override
+      public Collection<String> getKnownMimeTypes() {
+         return Collections.emptyList();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getRootElements()
+       */
+      @Override
+      public Collection<String> getRootElements() {
+         return Collections.singletonList("model");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#createRecognizer()
+       */
+      @Override
+      public FormatRecognizer createRecognizer() {
+         return new CellMlRecognizer();
+      }
+   }
 }
@@ -0,0 +1,330 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.cli;
+
+import de.unirostock.sems.cbext.Formatizer;
+import de.unirostock.sems.cbext.Iconizer;
+import de.unirostock.sems.cbext.RecognitionExecutors;
+import de.unirostock.sems.cbext.RecognitionResult;
+import de.unirostock.sems.cbext.RecognitionSource;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Recognises all files below some directories, using several threads. While
+ * a few threads list the directories, each one a directory at a time, the
+ * workers recognise the files found so far (in virtual threads on Java 21,
+ * see {@link RecognitionExecutors}) and print one JSON object per file and
+ * line, in the order they finish:
+ * <pre>
+ * {"file":"test/some.xml","format":"...","icon":"...","recognizer":"...","size":123,"bytes":123,"micros":456}
+ * </pre>
+ * <code>recognizer</code> is <code>null</code> if the format was derived from
+ * the file name or MIME type, <code>bytes</code> counts what the recognizers
+ * asked for. Files that cannot be read are reported with an
+ * <code>error</code> instead of a format.
+ */
+public class DirectoryScanner {
+
+   /** the number of threads listing directories, enough to keep the workers busy. */
+   public static final int WALKERS = 4;
+
+   /** the stream to print the results to. */
+   private final PrintStream out;
+
+   /** the number of workers. */
+   private final int workers;
+
+   /** the number of files recognised. */
+   private final AtomicInteger files = new AtomicInteger();
+
+   /** the number of files that could not be read. */
+   private final AtomicInteger errors = new AtomicInteger();
+
+   /** the size of the files recognised. */
+   private final AtomicLong size = new AtomicLong();
+
+   /** the bytes the recognizers asked for. */
+   private final AtomicLong bytesRead = new AtomicLong();
+
+   /** the time it took to scan, in nanoseconds. */
+   private long elapsed;
+
+
+   /**
+    * Instantiates a new scanner.
+    *
+    * @param workers the number of files recognised concurrently
+    * @param out the stream to print the results to
+    */
+   public DirectoryScanner(int workers, PrintStream out) {
+      if (workers <= 0)
+         throw new IllegalArgumentException("need at least one worker");
+      this.workers = workers;
+      this.out = out;
+   }
+
+
+   /**
+    * Scans some directories, or files, and waits for all files to be
+    * recognised. Directories that cannot be listed are reported like files
+    * that cannot be read. Symbolic links are not followed.
+    *
+    * @param roots the directories to walk
+    * @throws IOException if interrupted while scanning
+    */
+   public void scan(List<Path> roots) throws IOException {
+      long start = System.nanoTime();
+      ExecutorService pool = RecognitionExecutors.newExecutor(workers, "combineext-scan");
+      ExecutorService walkers = RecognitionExecutors.newExecutor(WALKERS, "combineext-walk");
+      // the walkers are much faster than the workers, do not let them queue up the whole tree
+      Walk walk = new Walk(pool, walkers, new Semaphore(4 * workers));
+      try {
+         for (Path root : roots)
+            walk.visit(root);
+         walk.await();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         walkers.shutdownNow();
+         throw new IOException("interrupted while scanning " + roots);
+      } finally {
+         walkers.shutdown();
+         pool.shutdown();
+         try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         elapsed = System.nanoTime() - start;
+      }
+   }
+
+
+   /**
+    * Recognises a file and prints the result.
+    *
+    * @param file the file
+    */
+   private void recognize(Path file) {
+      long start = System.nanoTime();
+      RecognitionResult result;
+      long read;
+      long length;
+      try (RecognitionSource source = RecognitionSource.open(file.toFile())) {
+         result = Formatizer.recognize(source);
+         read = source.getBytesRead();
+         length = source.getSize();
+      } catch (IOException | RuntimeException e) {
+         report(file, e);
+         return;
+      }
+      long micros = (System.nanoTime() - start) / 1000;
+
+      URI format = result != null ? result.getFormat() : Formatizer.GENERIC_UNKNOWN;
+      String recognizer = result != null && result.getRecognizer() != null ? result.getRecognizer().getName() : null;
+      files.incrementAndGet();
+      size.addAndGet(length);
+      bytesRead.addAndGet(read);
+      String line = Json.object("file", file.toString(), "format", format, "icon", Iconizer.formatToIcon(format),
+              "recognizer", recognizer, "size", length, "bytes", read, "micros", micros);
+      synchronized (out) {
+         out.println(line);
+      }
+   }
+
+
+   /**
+    * Prints a file that could not be read.
+    *
+    * @param file the file
+    * @param e the reason
+    */
+   private void report(Path file, Exception e) {
+      errors.incrementAndGet();
+      String line = Json.object("file", file.toString(), "format", null, "error", e.toString());
+      synchronized (out) {
+         out.println(line);
+      }
+   }
+
+
+   /**
+    * A walk of directory trees: every directory is listed by a walker of its
+    * own, which hands the files to the workers and the subdirectories to the
+    * other walkers.
+    */
+   private class Walk {
+
+      /** the workers recognising the files. */
+      private final ExecutorService pool;
+
+      /** the threads listing the directories. */
+      private final ExecutorService walkers;
+
+      /** the files that may be queued for the workers. */
+      private final Semaphore queued;
+
+      /** the directories not listed yet, plus one while the roots are visited. */
+      private final AtomicInteger pending = new AtomicInteger(1);
+
+      /** opened once all directories are listed. */
+      private final CountDownLatch done = new CountDownLatch(1);
+
+
+      /**
+       * Instantiates a new walk.
+       *
+       * @param pool the workers recognising the files
+       * @param walkers the threads listing the directories
+       * @param queued the files that may be queued for the workers
+       */
+      Walk(ExecutorService pool, ExecutorService walkers, Semaphore queued) {
+         this.pool = pool;
+         this.walkers = walkers;
+         this.queued = queued;
+      }
+
+
+      /**
+       * Visits a path: a directory is passed to the walkers, a file to the
+       * workers.
+       *
+       * @param path the path
+       * @throws InterruptedException if interrupted while the workers are busy
+       */
+      void visit(Path path) throws InterruptedException {
+         BasicFileAttributes attributes;
+         try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+         } catch (IOException e) {
+            report(path, e);
+            return;
+         }
+         if (attributes.isDirectory()) {
+            pending.incrementAndGet();
+            walkers.execute(() -> list(path));
+         } else if (attributes.isRegularFile()) {
+            queued.acquire();
+            pool.execute(() -> {
+               try {
+                  recognize(path);
+               } finally {
+                  queued.release();
+               }
+            });
+         }
+      }
+
+
+      /**
+       * Lists a directory and visits its entries.
+       *
+       * @param directory the directory
+       */
+      private void list(Path directory) {
+         try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries)
+               visit(entry);
+         } catch (IOException e) {
+            report(directory, e);
+         } catch (DirectoryIteratorException e) {
+            report(directory, e.getCause());
+         } catch (InterruptedException e) {
+            // the scan was given up
+            Thread.currentThread().interrupt();
+         } finally {
+            leave();
+         }
+      }
+
+
+      /**
+       * Marks a directory, or the roots, as done.
+       */
+      private void leave() {
+         if (pending.decrementAndGet() == 0)
+            done.countDown();
+      }
+
+
+      /**
+       * Waits for all directories to be listed.
+       *
+       * @throws InterruptedException if interrupted
+       */
+      void await() throws InterruptedException {
+         leave();
+         done.await();
+      }
+   }
+
+
+   /**
+    * Gets the number of files recognised.
+    *
+    * @return the number of files
+    */
+   public int getFiles() {
+      return files.get();
+   }
+
+
+   /**
+    * Gets the number of files that could not be read.
+    *
+    * @return the number of files
+    */
+   public int getErrors() {
+      return errors.get();
+   }
+
+
+   /**
+    * Summarises the last scan: files, bytes and throughput.
+    *
+    * @return the summary
+    */
+   public String getSummary() {
+      double seconds = Math.max(elapsed, 1) / 1e9;
+      return String.format(Locale.ROOT,
+              "%d files (%.1f MB, %.1f MB read by the recognizers), %d unreadable, in %.2f s: %.1f files/s, %.1f MB/s"
+                      + " with %d workers",
+              files.get(), size.get() / 1e6, bytesRead.get() / 1e6, errors.get(), seconds, files.get() / seconds,
+              size.get() / 1e6 / seconds, workers);
+   }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.cli;
+
+/**
+ * Just enough JSON for our answers, so the CLI does not need a JSON library.
+ */
+final class Json {
+
+   private Json() {
+   }
+
+
+   /**
+    * Builds a JSON object from alternating keys and values. Numbers and
+    * booleans are written as they are, <code>null</code> as
+    * <code>null</code>, everything else as string.
+    *
+    * @param pairs key, value, key, value...
+    * @return the JSON object
+    */
+   static String object(Object... pairs) {
+      StringBuilder json = new StringBuilder("{");
+      for (int i = 0; i + 1 < pairs.length; i += 2) {
+         if (i > 0)
+            json.append(',');
+         quote(json, String.valueOf(pairs[i]));
+         json.append(':');
+         Object value = pairs[i + 1];
+         if (value == null || value instanceof Number || value instanceof Boolean)
+            json.append(value);
+         else
+            quote(json, value.toString());
+      }
+      return json.append('}').toString();
+   }
+
+
+   /**
+    * Appends a JSON string.
+    *
+    * @param json the JSON to append to
+    * @param value the string
+    */
+   static void quote(StringBuilder json, String value) {
+      json.append('"');
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         switch (c) {
+            case '"':
+               json.append("\\\"");
+               break;
+            case '\\':
+               json.append("\\\\");
+               break;
+            case '\n':
+               json.append("\\n");
+               break;
+            case '\r':
+               json.append("\\r");
+               break;
+            case '\t':
+               json.append("\\t");
+               break;
+            default:
+               if (c < 0x20)
+                  json.append(String.format("\\u%04x", (int) c));
+               else
+                  json.append(c);
+         }
+      }
+      json.append('"');
+   }
+}
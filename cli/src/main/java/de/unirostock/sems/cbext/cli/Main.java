@@ -0,0 +1,375 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.cli;
+
+import de.unirostock.sems.cbext.Formatizer;
+import de.unirostock.sems.cbext.Iconizer;
+import de.unirostock.sems.cbext.RecognitionExecutors;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A command line interface to the {@link Formatizer}, printing the format of
+ * every file given as argument, or read from standard input, as
+ * <code>FILE&lt;TAB&gt;FORMAT</code>.
+ * <p>
+ * The CLI is meant to be compiled into a native image, which only contains
+ * the core recognizers (see the <code>native</code> profile). Files the
+ * native image can only identify as generic XML or RDF may be handed to a
+ * full JVM installation: set the environment variable
+ * {@value #FALLBACK_ENV} to a command running this class with all
+ * recognizers, e.g.
+ * <code>java -jar CombineExt-cli-jar-with-dependencies.jar</code>.
+ * <p>
+ * Alternatively, <code>--daemon</code> starts a {@link RecognitionDaemon}
+ * with all recognizers warm, and <code>--connect</code> lets a short-lived
+ * CLI, native or not, ask that daemon. <code>--http</code> offers the same
+ * to other applications as {@link RecognitionServer}.
+ */
+public class Main {
+
+   /** the environment variable naming the JVM fallback command. */
+   public static final String FALLBACK_ENV = "COMBINEEXT_JVM";
+
+   /** formats that a recognizer missing from a native image may refine. */
+   private static final Set<String> UNDECIDED = new HashSet<String>(Arrays.asList(
+           Formatizer.PURL_ORG_PREFIX + "application/xml",
+           Formatizer.PURL_ORG_PREFIX + "text/xml",
+           Formatizer.PURL_ORG_PREFIX + "application/rdf+xml"));
+
+
+   /**
+    * Runs the CLI.
+    *
+    * @param args the arguments
+    */
+   public static void main(String[] args) {
+      System.exit(run(args, System.out, System.err, System.getenv(FALLBACK_ENV)));
+   }
+
+
+   /**
+    * Runs the CLI.
+    *
+    * @param args the arguments
+    * @param out the stream to print the formats to
+    * @param err the stream to print errors to
+    * @param fallback the JVM fallback command, or <code>null</code>
+    * @return the exit status
+    */
+   public static int run(String[] args, PrintStream out, PrintStream err, String fallback) {
+      boolean icons = false;
+      boolean daemon = false;
+      boolean connect = false;
+      boolean http = false;
+      boolean scan = false;
+      int workers = RecognitionExecutors.getDefaultConcurrency();
+      String bind = null;
+      int port = 0;
+      List<String> files = new ArrayList<String>();
+      for (int i = 0; i < args.length; i++) {
+         String arg = args[i];
+         if (arg.equals("-h") || arg.equals("--help")) {
+            usage(out);
+            return 0;
+         } else if (arg.equals("-i") || arg.equals("--icon"))
+            icons = true;
+         else if (arg.equals("--daemon"))
+            daemon = true;
+         else if (arg.equals("--connect"))
+            connect = true;
+         else if (arg.equals("--http"))
+            http = true;
+         else if (arg.equals("--scan"))
+            scan = true;
+         else if ((arg.equals("-j") || arg.equals("--workers")) && i + 1 < args.length) {
+            try {
+               workers = Integer.parseInt(args[++i]);
+            } catch (NumberFormatException e) {
+               workers = 0;
+            }
+            if (workers <= 0) {
+               err.println("invalid number of workers: " + args[i]);
+               return 2;
+            }
+         }
+         else if (arg.equals("--bind") && i + 1 < args.length)
+            bind = args[++i];
+         else if (arg.equals("--port") && i + 1 < args.length) {
+            try {
+               port = Integer.parseInt(args[++i]);
+            } catch (NumberFormatException e) {
+               err.println("invalid port: " + args[i]);
+               return 2;
+            }
+         } else if (arg.startsWith("-") && arg.length() > 1) {
+            err.println("unknown option: " + arg);
+            usage(err);
+            return 2;
+         } else
+            files.add(arg);
+      }
+
+      if (daemon)
+         return runDaemon(port, err);
+      if (http)
+         return runServer(bind, port != 0 ? port : RecognitionServer.DEFAULT_PORT, err);
+      if (scan)
+         return runScan(files.isEmpty() ? Arrays.asList(".") : files, workers, out, err);
+
+      if (files.isEmpty() || files.equals(Arrays.asList("-"))) {
+         files.clear();
+         try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            for (String line = in.readLine(); line != null; line = in.readLine())
+               if (!line.isEmpty())
+                  files.add(line);
+         } catch (IOException e) {
+            err.println("cannot read file names: " + e.getMessage());
+            return 1;
+         }
+      }
+
+      int status = 0;
+      List<String> names = new ArrayList<String>();
+      List<File> existing = new ArrayList<File>();
+      for (String name : files) {
+         File file = new File(name);
+         if (!file.isFile()) {
+            err.println("not a file: " + name);
+            status = 1;
+            continue;
+         }
+         names.add(name);
+         existing.add(file);
+      }
+
+      List<URI> recognized = null;
+      if (connect) {
+         try {
+            recognized = RecognitionClient.recognize(existing, RecognitionDaemon.DEFAULT_STATE_FILE);
+         } catch (IOException e) {
+            err.println("cannot use the daemon: " + e.getMessage());
+         }
+      }
+      if (recognized == null) {
+         recognized = new ArrayList<URI>(existing.size());
+         for (File file : existing)
+            recognized.add(Formatizer.guessFormat(file));
+      }
+
+      Map<String, URI> formats = new LinkedHashMap<String, URI>();
+      List<String> undecided = new ArrayList<String>();
+      for (int i = 0; i < names.size(); i++) {
+         URI format = recognized.get(i);
+         formats.put(names.get(i), format);
+         if (format == null || UNDECIDED.contains(format.toString()))
+            undecided.add(names.get(i));
+      }
+
+      if (fallback != null && !fallback.trim().isEmpty() && !undecided.isEmpty())
+         askFallback(fallback, undecided, formats, err);
+
+      for (Map.Entry<String, URI> entry : formats.entrySet()) {
+         URI format = entry.getValue() != null ? entry.getValue() : Formatizer.GENERIC_UNKNOWN;
+         out.println(entry.getKey() + "\t" + format + (icons ? "\t" + Iconizer.formatToIcon(format) : ""));
+      }
+      out.flush();
+      return status;
+   }
+
+
+   /**
+    * Runs a {@link RecognitionDaemon} until the process is stopped.
+    *
+    * @param port the port, or 0 to pick a free one
+    * @param err the stream to print errors to
+    * @return the exit status
+    */
+   private static int runDaemon(int port, PrintStream err) {
+      final RecognitionDaemon daemon;
+      try {
+         daemon = new RecognitionDaemon(port, RecognitionDaemon.DEFAULT_STATE_FILE,
+                 Math.max(2, Runtime.getRuntime().availableProcessors()));
+      } catch (IOException e) {
+         err.println("cannot start the daemon: " + e.getMessage());
+         return 1;
+      }
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+         try {
+            daemon.close();
+         } catch (IOException e) {
+            // we are going down anyway
+         }
+      }));
+      daemon.serve();
+      return 0;
+   }
+
+
+   /**
+    * Recognises everything below some directories, printing JSON lines and
+    * a summary.
+    *
+    * @param roots the directories to scan
+    * @param workers the number of workers
+    * @param out the stream to print the results to
+    * @param err the stream to print the summary and errors to
+    * @return the exit status
+    */
+   private static int runScan(List<String> roots, int workers, PrintStream out, PrintStream err) {
+      List<Path> paths = new ArrayList<Path>();
+      for (String root : roots)
+         paths.add(Paths.get(root));
+      DirectoryScanner scanner = new DirectoryScanner(workers, out);
+      try {
+         scanner.scan(paths);
+      } catch (IOException e) {
+         err.println("cannot scan: " + e.getMessage());
+         return 1;
+      } finally {
+         out.flush();
+      }
+      err.println(scanner.getSummary());
+      return scanner.getErrors() > 0 ? 1 : 0;
+   }
+
+
+   /**
+    * Runs a {@link RecognitionServer} until the process is stopped.
+    *
+    * @param bind the address to listen on, or <code>null</code> for the
+    *           loopback interface
+    * @param port the port
+    * @param err the stream to print errors to
+    * @return the exit status
+    */
+   private static int runServer(String bind, int port, PrintStream err) {
+      int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+      final RecognitionServer server;
+      try {
+         InetSocketAddress address = bind != null ? new InetSocketAddress(bind, port)
+                 : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+         server = new RecognitionServer(address, threads, 4 * threads, new File("."));
+      } catch (IOException | IllegalArgumentException e) {
+         err.println("cannot start the service: " + e.getMessage());
+         return 1;
+      }
+      Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+      server.start();
+      // the server threads keep running, this one has nothing left to do
+      try {
+         Thread.currentThread().join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      return 0;
+   }
+
+
+   /**
+    * Asks the JVM fallback for the formats of some files. If the fallback
+    * fails, we keep what we know.
+    *
+    * @param command the command running the CLI on a JVM
+    * @param files the files to recognise
+    * @param formats the formats known so far, updated with the fallback's
+    *           answers
+    * @param err the stream to print errors to
+    */
+   private static void askFallback(String command, List<String> files, Map<String, URI> formats, PrintStream err) {
+      List<String> call = new ArrayList<String>(Arrays.asList(command.trim().split("\\s+")));
+      call.addAll(files);
+      ProcessBuilder builder = new ProcessBuilder(call);
+      builder.environment().remove(FALLBACK_ENV);
+      builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+      try {
+         Process process = builder.start();
+         process.getOutputStream().close();
+         try (BufferedReader in = new BufferedReader(
+                 new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+               int tab = line.lastIndexOf('\t');
+               if (tab > 0 && formats.containsKey(line.substring(0, tab)))
+                  formats.put(line.substring(0, tab), URI.create(line.substring(tab + 1)));
+            }
+         }
+         if (process.waitFor() != 0)
+            err.println("JVM fallback exited with status " + process.exitValue());
+      } catch (IOException | IllegalArgumentException e) {
+         err.println("cannot run JVM fallback: " + e.getMessage());
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+
+   /**
+    * Prints the usage.
+    *
+    * @param out the stream to print to
+    */
+   private static void usage(PrintStream out) {
+      out.println("usage: combineext [-i|--icon] [--connect] [FILE...]");
+      out.println("       combineext --daemon [--port PORT]");
+      out.println("       combineext --scan [-j N] [DIRECTORY...]");
+      out.println("       combineext --http [--bind ADDRESS] [--port PORT]");
+      out.println();
+      out.println("Prints the format of every FILE as FILE<TAB>FORMAT. Without FILEs, or with");
+      out.println("FILE -, the file names are read from standard input, one per line.");
+      out.println();
+      out.println("  -i, --icon   also print the name of the format's icon");
+      out.println("  --connect    ask a running daemon, recognise locally if there is none");
+      out.println("  --daemon     keep the recognizers warm and answer clients on a loopback port,");
+      out.println("               announced in " + RecognitionDaemon.DEFAULT_STATE_FILE);
+      out.println("  --scan       recognise all files below the DIRECTORYs, the current one by");
+      out.println("               default, printing one JSON object per file and a summary");
+      out.println("  -j, --workers N");
+      out.println("               the number of files recognised at once, "
+              + RecognitionExecutors.getDefaultConcurrency() + " by default");
+      out.println("  --http       serve recognition and icons over HTTP, see the README");
+      out.println("  --bind ADDRESS");
+      out.println("               the address of the HTTP service, the loopback interface by default");
+      out.println("  --port PORT  the port of the daemon, a free one by default, or of the HTTP");
+      out.println("               service, " + RecognitionServer.DEFAULT_PORT + " by default");
+      out.println();
+      out.println("If " + FALLBACK_ENV + " is set, files recognised as generic XML are passed to");
+      out.println("that command, which should run this CLI on a JVM with all recognizers.");
+   }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * The client of a {@link RecognitionDaemon}.
+ */
+public class RecognitionClient {
+
+   /** how long we wait for the daemon to accept the connection. */
+   private static final int CONNECT_TIMEOUT = 1000;
+
+
+   /**
+    * Asks the daemon for the formats of some files.
+    *
+    * @param files the files
+    * @param stateFile the state file of the daemon
+    * @return the formats, in the order of the files, with <code>null</code>
+    *         for files the daemon could not read; or <code>null</code> if
+    *         there is no daemon to ask
+    * @throws IOException if the daemon fails while answering
+    */
+   public static List<URI> recognize(List<File> files, File stateFile) throws IOException {
+      Properties state = RecognitionDaemon.readState(stateFile);
+      if (state == null)
+         return null;
+
+      Socket socket = new Socket();
+      try {
+         socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                 Integer.parseInt(state.getProperty("port"))), CONNECT_TIMEOUT);
+      } catch (IOException | NumberFormatException e) {
+         // stale state file
+         socket.close();
+         return null;
+      }
+
+      try (Socket s = socket;
+           BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),
+                   StandardCharsets.UTF_8))) {
+         // send in the background, the daemon answers while we are still sending
+         Thread sender = new Thread(() -> send(s, state.getProperty("token"), files), "combineext-client");
+         sender.setDaemon(true);
+         sender.start();
+
+         List<URI> formats = new ArrayList<URI>(files.size());
+         for (String line = in.readLine(); line != null; line = in.readLine()) {
+            if (line.equals(RecognitionDaemon.UNAUTHORIZED))
+               throw new IOException("daemon rejected our token, is " + stateFile + " outdated?");
+            int tab = line.lastIndexOf('\t');
+            String format = tab < 0 ? RecognitionDaemon.NO_FILE : line.substring(tab + 1);
+            formats.add(format.equals(RecognitionDaemon.NO_FILE) ? null : URI.create(format));
+         }
+         if (formats.size() != files.size())
+            throw new IOException("daemon answered " + formats.size() + " of " + files.size() + " files");
+         return formats;
+      }
+   }
+
+
+   /**
+    * Sends token and paths to the daemon.
+    *
+    * @param socket the connection
+    * @param token the token
+    * @param files the files
+    */
+   private static void send(Socket socket, String token, List<File> files) {
+      try {
+         Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+         out.write(token + "\n");
+         for (File file : files)
+            out.write(file.getAbsolutePath() + "\n");
+         out.flush();
+         socket.shutdownOutput();
+      } catch (IOException e) {
+         // the reader notices
+      }
+   }
+}
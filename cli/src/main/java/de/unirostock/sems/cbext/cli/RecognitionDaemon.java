@@ -0,0 +1,284 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.cli;
+
+import de.unirostock.sems.cbext.Formatizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A long-running process that keeps a warm {@link Formatizer} in memory and
+ * answers recognition requests of local clients, so shell scripts do not pay
+ * for starting a JVM per file.
+ * <p>
+ * The daemon only listens on the loopback interface. On start it writes its
+ * port and a random token to a state file that only the current user can
+ * read (by default {@link #DEFAULT_STATE_FILE}); clients have to present the
+ * token. The protocol is line based and UTF-8 encoded:
+ * <ol>
+ * <li>the client sends the token,</li>
+ * <li>then absolute file paths, one per line, and closes its output,</li>
+ * <li>the daemon answers <code>PATH&lt;TAB&gt;FORMAT</code> for every path, in
+ * order, or <code>PATH&lt;TAB&gt;-</code> if the path is not a file.</li>
+ * </ol>
+ * A client that presents a wrong token gets {@value #UNAUTHORIZED}; one that
+ * does not send a token in time, see {@link #setTokenTimeout (int)}, is
+ * dropped.
+ *
+ * @see RecognitionClient
+ */
+public class RecognitionDaemon implements Closeable {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(RecognitionDaemon.class);
+
+   /** the default state file, in the user's home directory. */
+   public static final File DEFAULT_STATE_FILE = new File(System.getProperty("user.home"),
+           ".combineext" + File.separator + "daemon.properties");
+
+   /** the answer to clients with a wrong token. */
+   public static final String UNAUTHORIZED = "ERR unauthorized";
+
+   /** the answer for paths that are not files. */
+   public static final String NO_FILE = "-";
+
+   /** the default time a client has to present the token, in milliseconds. */
+   public static final int DEFAULT_TOKEN_TIMEOUT = 10000;
+
+   /** the state file. */
+   private final File stateFile;
+
+   /** the socket. */
+   private final ServerSocket server;
+
+   /** the token clients have to present. */
+   private final String token;
+
+   /** the threads serving the clients. */
+   private final ExecutorService workers;
+
+   /** the time a client has to present the token, in milliseconds. */
+   private volatile int tokenTimeout = DEFAULT_TOKEN_TIMEOUT;
+
+
+   /**
+    * Starts a daemon: binds the socket, writes the state file and warms up
+    * the recognizers in the background. Call {@link #serve()} to accept
+    * clients.
+    *
+    * @param port the port, or 0 to pick a free one
+    * @param stateFile the state file to write
+    * @param threads the number of clients served concurrently
+    * @throws IOException if the socket cannot be bound or the state file
+    *            cannot be written
+    */
+   public RecognitionDaemon(int port, File stateFile, int threads) throws IOException {
+      this.stateFile = stateFile;
+      byte[] secret = new byte[16];
+      new SecureRandom().nextBytes(secret);
+      StringBuilder hex = new StringBuilder();
+      for (byte b : secret)
+         hex.append(String.format("%02x", b & 0xff));
+      token = hex.toString();
+
+      server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+      try {
+         writeState();
+      } catch (IOException e) {
+         server.close();
+         throw e;
+      }
+
+      AtomicInteger count = new AtomicInteger();
+      workers = Executors.newFixedThreadPool(threads, runnable -> {
+         Thread thread = new Thread(runnable, "combineext-daemon-" + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      });
+      Formatizer.warmUp(workers).exceptionally(e -> {
+         LOGGER.warn("warming up the recognizers failed: {}", e.getMessage());
+         return null;
+      });
+   }
+
+
+   /**
+    * Writes port and token to the state file, readable by the owner only.
+    *
+    * @throws IOException if the file cannot be written
+    */
+   private void writeState() throws IOException {
+      File dir = stateFile.getAbsoluteFile().getParentFile();
+      if (!dir.isDirectory() && !dir.mkdirs())
+         throw new IOException("cannot create " + dir);
+      Properties state = new Properties();
+      state.setProperty("port", Integer.toString(getPort()));
+      state.setProperty("token", token);
+      if (stateFile.exists() && !stateFile.delete())
+         throw new IOException("cannot replace " + stateFile);
+      if (!stateFile.createNewFile())
+         throw new IOException("cannot create " + stateFile);
+      // restrict the permissions before the token is written
+      stateFile.setReadable(false, false);
+      stateFile.setWritable(false, false);
+      stateFile.setReadable(true, true);
+      stateFile.setWritable(true, true);
+      try (OutputStream out = new FileOutputStream(stateFile)) {
+         state.store(out, "CombineExt recognition daemon");
+      }
+   }
+
+
+   /**
+    * Reads the state file of a running daemon.
+    *
+    * @param stateFile the state file
+    * @return the state with <code>port</code> and <code>token</code>, or
+    *         <code>null</code> if there is no state file
+    */
+   static Properties readState(File stateFile) {
+      if (!stateFile.isFile())
+         return null;
+      Properties state = new Properties();
+      try (InputStream in = new FileInputStream(stateFile)) {
+         state.load(in);
+      } catch (IOException e) {
+         return null;
+      }
+      return state.getProperty("port") != null && state.getProperty("token") != null ? state : null;
+   }
+
+
+   /**
+    * Gets the port the daemon listens on.
+    *
+    * @return the port
+    */
+   public int getPort() {
+      return server.getLocalPort();
+   }
+
+
+   /**
+    * Sets the time a client has to present the token. Clients that are
+    * silent for longer are dropped, so they cannot hold the threads serving
+    * the clients.
+    *
+    * @param millis the time in milliseconds
+    */
+   public void setTokenTimeout(int millis) {
+      if (millis <= 0)
+         throw new IllegalArgumentException("The timeout must be positive.");
+      tokenTimeout = millis;
+   }
+
+
+   /**
+    * Accepts clients until the daemon is closed.
+    */
+   public void serve() {
+      LOGGER.info("recognition daemon listening on {}:{}", server.getInetAddress().getHostAddress(), getPort());
+      while (!server.isClosed()) {
+         try {
+            Socket client = server.accept();
+            client.setSoTimeout(tokenTimeout);
+            workers.execute(() -> handle(client));
+         } catch (SocketException e) {
+            // closed
+         } catch (IOException e) {
+            LOGGER.warn("cannot accept client: {}", e.getMessage());
+         }
+      }
+   }
+
+
+   /**
+    * Serves a client.
+    *
+    * @param client the client
+    */
+   private void handle(Socket client) {
+      try (Socket socket = client;
+           BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                   StandardCharsets.UTF_8));
+           Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                   StandardCharsets.UTF_8))) {
+         if (!token.equals(in.readLine())) {
+            out.write(UNAUTHORIZED + "\n");
+            return;
+         }
+         // authorized clients may wait between files
+         socket.setSoTimeout(0);
+         for (String path = in.readLine(); path != null; path = in.readLine()) {
+            if (path.isEmpty())
+               continue;
+            File file = new File(path);
+            URI format = file.isFile() ? Formatizer.guessFormat(file) : null;
+            out.write(path + "\t" + (format != null ? format.toString()
+                    : file.isFile() ? Formatizer.GENERIC_UNKNOWN.toString() : NO_FILE) + "\n");
+            // answer early, the client may be waiting for each file in turn
+            if (!in.ready())
+               out.flush();
+         }
+      } catch (IOException e) {
+         LOGGER.debug("lost client: {}", e.getMessage());
+      }
+   }
+
+
+   /**
+    * Stops accepting clients and removes the state file.
+    *
+    * @throws IOException if the socket cannot be closed
+    */
+   @Override
+   public void close() throws IOException {
+      Properties state = readState(stateFile);
+      if (state != null && token.equals(state.getProperty("token")))
+         stateFile.delete();
+      workers.shutdown();
+      server.close();
+   }
+}
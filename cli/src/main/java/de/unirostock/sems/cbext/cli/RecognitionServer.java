@@ -0,0 +1,580 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.cli;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.unirostock.sems.cbext.Formatizer;
+import de.unirostock.sems.cbext.Iconizer;
+import de.unirostock.sems.cbext.RecognitionResult;
+import de.unirostock.sems.cbext.RecognitionSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * An HTTP service around the {@link Formatizer} and the {@link Iconizer},
+ * so several applications can share one warm instance instead of each
+ * embedding all recognizers. It uses the HTTP server of the JDK and offers
+ * <dl>
+ * <dt><code>POST /recognize?name=NAME</code></dt>
+ * <dd>recognises the uploaded request body; the optional name provides the
+ * file extension. The body is streamed to a temporary file, at most
+ * {@link #MAX_UPLOAD} bytes.</dd>
+ * <dt><code>POST /recognize/batch</code></dt>
+ * <dd>recognises files on the server: the body lists paths, one per line,
+ * relative to the root directory of the service.</dd>
+ * <dt><code>GET /icon/FORMAT</code></dt>
+ * <dd>sends the icon of the URL encoded format, with an ETag and a
+ * Cache-Control header.</dd>
+ * </dl>
+ * Recognitions answer JSON objects with <code>format</code> and
+ * <code>icon</code>.
+ * <p>
+ * Requests are handled by a fixed number of worker threads. If more than a
+ * given number of requests are waiting for a worker, further requests get
+ * a quick <code>503 Service Unavailable</code>. Responses always have a
+ * known length, so clients can keep their connections alive; the idle
+ * timeout is the JDK's (<code>sun.net.httpserver.idleInterval</code>).
+ */
+public class RecognitionServer implements Closeable {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(RecognitionServer.class);
+
+   /** the port used if none is given. */
+   public static final int DEFAULT_PORT = 8080;
+
+   /** the largest upload we recognise, in bytes. */
+   public static final long MAX_UPLOAD = 256L * 1024 * 1024;
+
+   /** the largest list of paths we accept, in bytes. */
+   public static final int MAX_BATCH = 1024 * 1024;
+
+   /** how long clients may cache icons, in seconds. */
+   public static final int ICON_MAX_AGE = 24 * 60 * 60;
+
+   /** marks exchanges that arrived while all workers and queue slots were taken. */
+   private static final ThreadLocal<Boolean> OVERLOADED = new ThreadLocal<Boolean>();
+
+   /** frees the slot of the exchange being served, see {@link #sendResponseHeaders}. */
+   private static final ThreadLocal<Runnable> RELEASE = new ThreadLocal<Runnable>();
+
+   /** the server. */
+   private final HttpServer server;
+
+   /** the threads handling requests. */
+   private final ExecutorService workers;
+
+   /** the thread turning away requests when we are overloaded. */
+   private final ExecutorService bouncer;
+
+   /** the number of requests being handled or waiting for a worker. */
+   private final AtomicInteger pending = new AtomicInteger();
+
+   /** the maximum number of pending requests. */
+   private final int limit;
+
+   /** the directory batch paths are resolved against. */
+   private final Path root;
+
+   /** the icons sent so far, by icon name. */
+   private final ConcurrentHashMap<String, Icon> icons = new ConcurrentHashMap<String, Icon>();
+
+
+   /**
+    * An icon ready to be sent.
+    */
+   private static class Icon {
+
+      /** the image. */
+      final byte[] bytes;
+
+      /** the entity tag. */
+      final String etag;
+
+
+      /**
+       * Instantiates a new icon.
+       *
+       * @param bytes the image
+       * @param etag the entity tag
+       */
+      Icon(byte[] bytes, String etag) {
+         this.bytes = bytes;
+         this.etag = etag;
+      }
+   }
+
+
+   /**
+    * Handles a request to one of our endpoints.
+    */
+   private interface Endpoint {
+
+      /**
+       * Handles the request and sends the response.
+       *
+       * @param exchange the exchange
+       * @throws IOException if the exchange fails
+       */
+      void handle(HttpExchange exchange) throws IOException;
+   }
+
+
+   /**
+    * Binds the service and warms up the recognizers in the background. Call
+    * {@link #start()} to accept requests.
+    *
+    * @param address the address to listen on
+    * @param threads the number of requests handled concurrently
+    * @param queue the number of requests that may wait for a worker
+    * @param root the directory paths of batch requests are relative to
+    * @throws IOException if the server cannot be bound
+    */
+   public RecognitionServer(InetSocketAddress address, int threads, int queue, File root) throws IOException {
+      this.limit = threads + queue;
+      this.root = root.getCanonicalFile().toPath();
+
+      AtomicInteger count = new AtomicInteger();
+      workers = Executors.newFixedThreadPool(threads, runnable -> {
+         Thread thread = new Thread(runnable, "combineext-http-" + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      });
+      bouncer = Executors.newSingleThreadExecutor(runnable -> {
+         Thread thread = new Thread(runnable, "combineext-http-overload");
+         thread.setDaemon(true);
+         return thread;
+      });
+
+      server = HttpServer.create(address, limit);
+      server.createContext("/recognize", exchange -> serve(exchange, "POST", this::recognize));
+      server.createContext("/recognize/batch", exchange -> serve(exchange, "POST", this::recognizeBatch));
+      server.createContext("/icon/", exchange -> serve(exchange, "GET", this::icon));
+      server.setExecutor(this::dispatch);
+
+      Formatizer.warmUp(workers).exceptionally(e -> {
+         LOGGER.warn("warming up the recognizers failed: {}", e.getMessage());
+         return null;
+      });
+   }
+
+
+   /**
+    * Starts accepting requests.
+    */
+   public void start() {
+      server.start();
+      LOGGER.info("recognition service listening on {}:{}", server.getAddress().getHostString(), getPort());
+   }
+
+
+   /**
+    * Gets the port the service listens on.
+    *
+    * @return the port
+    */
+   public int getPort() {
+      return server.getAddress().getPort();
+   }
+
+
+   /**
+    * Hands an exchange to a worker, or to the bouncer if too many requests
+    * are pending. A worker frees its slot just before the response goes out,
+    * so a client that sends its next request as soon as it has read the
+    * answer always finds the slot free again.
+    *
+    * @param exchange the exchange
+    */
+   private void dispatch(Runnable exchange) {
+      if (pending.incrementAndGet() > limit) {
+         pending.decrementAndGet();
+         bouncer.execute(() -> {
+            OVERLOADED.set(Boolean.TRUE);
+            try {
+               exchange.run();
+            } finally {
+               OVERLOADED.remove();
+            }
+         });
+         return;
+      }
+      workers.execute(() -> {
+         AtomicBoolean released = new AtomicBoolean();
+         Runnable release = () -> {
+            if (released.compareAndSet(false, true))
+               pending.decrementAndGet();
+         };
+         RELEASE.set(release);
+         try {
+            exchange.run();
+         } finally {
+            RELEASE.remove();
+            release.run();
+         }
+      });
+   }
+
+
+   /**
+    * Serves a request: turns it away if we are overloaded or if the method
+    * does not fit, and passes it to the endpoint otherwise.
+    *
+    * @param exchange the exchange
+    * @param method the method of the endpoint
+    * @param endpoint the endpoint
+    */
+   private void serve(HttpExchange exchange, String method, Endpoint endpoint) {
+      try {
+         if (Boolean.TRUE.equals(OVERLOADED.get())) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.getResponseHeaders().set("Connection", "close");
+            sendError(exchange, 503, "too many requests");
+         } else if (!method.equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", method);
+            sendError(exchange, 405, "use " + method);
+         } else
+            endpoint.handle(exchange);
+      } catch (IOException e) {
+         LOGGER.debug("lost client: {}", e.getMessage());
+      } catch (RuntimeException e) {
+         LOGGER.warn("failed to serve {}", exchange.getRequestURI(), e);
+         try {
+            sendError(exchange, 500, e.toString());
+         } catch (IOException | RuntimeException ignored) {
+            // the response has already been started
+         }
+      } finally {
+         exchange.close();
+      }
+   }
+
+
+   /**
+    * Recognises an upload.
+    *
+    * @param exchange the exchange
+    * @throws IOException if the exchange fails
+    */
+   private void recognize(HttpExchange exchange) throws IOException {
+      if (!exchange.getRequestURI().getPath().equals("/recognize")) {
+         sendError(exchange, 404, "not found");
+         return;
+      }
+      String name = getParameter(exchange, "name");
+      String extension = null;
+      if (name != null && name.lastIndexOf('.') >= 0) {
+         extension = name.substring(name.lastIndexOf('.') + 1);
+         if (!extension.matches("[A-Za-z0-9]{1,16}"))
+            extension = null;
+      }
+
+      File upload = File.createTempFile("combineext-upload", extension != null ? "." + extension : null);
+      // the session sniffs the root element while the upload arrives, and parses the
+      // stored upload if the policy asks for more than sniffing
+      RecognitionSession session = new RecognitionSession(extension != null ? name : upload.getName(), null);
+      try {
+         long size = 0;
+         try (InputStream in = exchange.getRequestBody();
+              OutputStream out = Files.newOutputStream(upload.toPath())) {
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+               size += read;
+               if (size > MAX_UPLOAD) {
+                  exchange.getResponseHeaders().set("Connection", "close");
+                  sendError(exchange, 413, "uploads are limited to " + MAX_UPLOAD + " bytes");
+                  return;
+               }
+               out.write(buffer, 0, read);
+               session.feed(ByteBuffer.wrap(buffer, 0, read));
+            }
+         }
+         RecognitionResult result = session.finish(upload);
+         URI format = result != null ? result.getFormat() : null;
+         if (format == null)
+            format = Formatizer.GENERIC_UNKNOWN;
+         send(exchange, 200, Json.object("name", name, "size", size, "format", format,
+                 "icon", Iconizer.formatToIcon(format)));
+      } finally {
+         if (!upload.delete())
+            upload.deleteOnExit();
+      }
+   }
+
+
+   /**
+    * Recognises a list of files on the server.
+    *
+    * @param exchange the exchange
+    * @throws IOException if the exchange fails
+    */
+   private void recognizeBatch(HttpExchange exchange) throws IOException {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (InputStream in = exchange.getRequestBody()) {
+         byte[] buffer = new byte[8192];
+         for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            if (body.size() + read > MAX_BATCH) {
+               exchange.getResponseHeaders().set("Connection", "close");
+               sendError(exchange, 413, "path lists are limited to " + MAX_BATCH + " bytes");
+               return;
+            }
+            body.write(buffer, 0, read);
+         }
+      }
+
+      StringBuilder json = new StringBuilder("[");
+      BufferedReader paths = new BufferedReader(new InputStreamReader(
+              new ByteArrayInputStream(body.toByteArray()), StandardCharsets.UTF_8));
+      for (String path = paths.readLine(); path != null; path = paths.readLine()) {
+         if (path.isEmpty())
+            continue;
+         if (json.length() > 1)
+            json.append(',');
+         Path file = resolve(path);
+         if (file == null)
+            json.append(Json.object("path", path, "format", null, "error", "outside of the root directory"));
+         else if (!Files.isRegularFile(file))
+            json.append(Json.object("path", path, "format", null, "error", "not a file"));
+         else {
+            URI format = Formatizer.guessFormat(file.toFile());
+            if (format == null)
+               format = Formatizer.GENERIC_UNKNOWN;
+            json.append(Json.object("path", path, "format", format, "icon", Iconizer.formatToIcon(format)));
+         }
+      }
+      send(exchange, 200, json.append(']').toString());
+   }
+
+
+   /**
+    * Resolves a path of a batch request against the root directory. Symbolic
+    * links are followed, so a link pointing out of the root directory does
+    * not give access to its target.
+    *
+    * @param path the path
+    * @return the path of the file, or <code>null</code> if it is outside of
+    *         the root directory
+    */
+   private Path resolve(String path) {
+      Path file;
+      try {
+         file = root.resolve(path).normalize();
+      } catch (InvalidPathException e) {
+         return null;
+      }
+      if (!file.startsWith(root))
+         return null;
+      try {
+         file = file.toRealPath();
+      } catch (IOException e) {
+         // does not exist, so it cannot be read either
+         return file;
+      }
+      return file.startsWith(root) ? file : null;
+   }
+
+
+   /**
+    * Sends the icon of a format.
+    *
+    * @param exchange the exchange
+    * @throws IOException if the exchange fails
+    */
+   private void icon(HttpExchange exchange) throws IOException {
+      URI format;
+      try {
+         format = new URI(decode(exchange.getRequestURI().getRawPath().substring("/icon/".length())));
+      } catch (URISyntaxException | IllegalArgumentException e) {
+         sendError(exchange, 400, "not a format: " + e.getMessage());
+         return;
+      }
+
+      Icon icon = icons.get(Iconizer.formatToIcon(format));
+      if (icon == null) {
+         icon = loadIcon(format);
+         if (icon == null) {
+            sendError(exchange, 404, "no icon for " + format);
+            return;
+         }
+         icons.putIfAbsent(Iconizer.formatToIcon(format), icon);
+      }
+
+      exchange.getResponseHeaders().set("ETag", icon.etag);
+      exchange.getResponseHeaders().set("Cache-Control", "public, max-age=" + ICON_MAX_AGE);
+      if (icon.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+         sendResponseHeaders(exchange, 304, -1);
+         return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", "image/png");
+      sendResponseHeaders(exchange, 200, icon.bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+         out.write(icon.bytes);
+      }
+   }
+
+
+   /**
+    * Loads the icon of a format.
+    *
+    * @param format the format
+    * @return the icon, or <code>null</code> if it cannot be read
+    */
+   private static Icon loadIcon(URI format) {
+      try (InputStream in = Iconizer.formatToIconStream(format)) {
+         if (in == null)
+            return null;
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         byte[] buffer = new byte[8192];
+         for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+            bytes.write(buffer, 0, read);
+         byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+         StringBuilder etag = new StringBuilder("\"");
+         for (int i = 0; i < 12; i++)
+            etag.append(String.format("%02x", digest[i] & 0xff));
+         return new Icon(bytes.toByteArray(), etag.append('"').toString());
+      } catch (IOException | NoSuchAlgorithmException e) {
+         LOGGER.warn("cannot read the icon of {}: {}", format, e.getMessage());
+         return null;
+      }
+   }
+
+
+   /**
+    * Gets a parameter of the query.
+    *
+    * @param exchange the exchange
+    * @param name the name of the parameter
+    * @return the decoded value, or <code>null</code> if it is not given
+    */
+   private static String getParameter(HttpExchange exchange, String name) {
+      String query = exchange.getRequestURI().getRawQuery();
+      if (query == null)
+         return null;
+      for (String parameter : query.split("&")) {
+         int eq = parameter.indexOf('=');
+         if (eq > 0 && decode(parameter.substring(0, eq)).equals(name))
+            return decode(parameter.substring(eq + 1));
+      }
+      return null;
+   }
+
+
+   /**
+    * Decodes a URL encoded string.
+    *
+    * @param encoded the encoded string
+    * @return the decoded string
+    */
+   private static String decode(String encoded) {
+      try {
+         return URLDecoder.decode(encoded, "UTF-8");
+      } catch (UnsupportedEncodingException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+
+   /**
+    * Sends a JSON error.
+    *
+    * @param exchange the exchange
+    * @param status the status
+    * @param message the message
+    * @throws IOException if the exchange fails
+    */
+   private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+      send(exchange, status, Json.object("error", message));
+   }
+
+
+   /**
+    * Sends a JSON response.
+    *
+    * @param exchange the exchange
+    * @param status the status
+    * @param json the response
+    * @throws IOException if the exchange fails
+    */
+   private static void send(HttpExchange exchange, int status, String json) throws IOException {
+      byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      sendResponseHeaders(exchange, status, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+         out.write(bytes);
+      }
+   }
+
+
+   /**
+    * Starts the response. Frees the slot of the exchange first: once the
+    * client has the headers it may send its next request.
+    *
+    * @param exchange the exchange
+    * @param status the status
+    * @param length the length of the body, or -1 if there is none
+    * @throws IOException if the exchange fails
+    */
+   private static void sendResponseHeaders(HttpExchange exchange, int status, long length) throws IOException {
+      Runnable release = RELEASE.get();
+      if (release != null)
+         release.run();
+      exchange.sendResponseHeaders(status, length);
+   }
+
+
+   /**
+    * Stops the service, letting running requests finish for a second.
+    */
+   @Override
+   public void close() {
+      server.stop(1);
+      workers.shutdown();
+      bouncer.shutdown();
+   }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.cli.Main;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the command line interface.
+ */
+public class TestCli {
+
+   /** what the CLI printed. */
+   private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+   /** what the CLI complained about. */
+   private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+
+   /**
+    * Runs the CLI.
+    *
+    * @param fallback the JVM fallback
+    * @param args the arguments
+    * @return the exit status
+    * @throws UnsupportedEncodingException never
+    */
+   private int run(String fallback, String... args) throws UnsupportedEncodingException {
+      return Main.run(args, new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"), fallback);
+   }
+
+
+   /**
+    * Test the output for some files.
+    *
+    * @throws IOException if the test files cannot be read
+    */
+   @Test
+   public void testFormats() throws IOException {
+      assertEquals(0, run(null, "-i", "test/BIOMD0000000624.xml", "test/some.xml"));
+      String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+      assertEquals(2, lines.length);
+      String[] sbml = lines[0].split("\t");
+      assertEquals("test/BIOMD0000000624.xml", sbml[0]);
+      assertTrue("expected SBML, got " + sbml[1], sbml[1].contains("sbml"));
+      assertEquals(3, sbml.length);
+      assertTrue(lines[1].startsWith("test/some.xml\t"));
+
+      assertEquals(1, run(null, "test/no-such-file"));
+      assertTrue(new String(err.toByteArray(), StandardCharsets.UTF_8).contains("test/no-such-file"));
+      assertEquals(2, run(null, "--no-such-option"));
+   }
+
+
+   /**
+    * Test scanning a directory.
+    *
+    * @throws IOException if the test files cannot be read
+    */
+   @Test
+   public void testScan() throws IOException {
+      long expected;
+      try (Stream<Path> files = Files.walk(Paths.get("test"))) {
+         expected = files.filter(Files::isRegularFile).count();
+      }
+      assertEquals(0, run(null, "--scan", "-j", "3", "test"));
+      String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+      assertEquals(expected, lines.length);
+      String sbml = null;
+      for (String line : lines) {
+         assertTrue(line, line.startsWith("{\"file\":") && line.endsWith("}"));
+         if (line.startsWith("{\"file\":\"" + Paths.get("test", "BIOMD0000000624.xml") + "\""))
+            sbml = line;
+      }
+      assertNotNull("expected a line for the SBML file", sbml);
+      assertTrue(sbml, sbml.contains("\"format\":\"" + Formatizer.guessFormat(new File("test/BIOMD0000000624.xml")) + "\""));
+      assertTrue(sbml, sbml.contains("\"recognizer\":\"de.unirostock.sems.cbext.recognizer.SbmlRecognizer\""));
+      assertTrue(new String(err.toByteArray(), StandardCharsets.UTF_8).contains(expected + " files"));
+
+      assertEquals(2, run(null, "--scan", "-j", "0", "test"));
+   }
+
+   /**
+    * Test that generic XML files are passed to the fallback.
+    *
+    * @throws IOException if the test files cannot be read
+    */
+   @Test
+   public void testFallback() throws IOException {
+      File script = File.createTempFile("combineext-fallback", ".sh");
+      try {
+         Files.write(script.toPath(), ("#!/bin/sh\nfor f in \"$@\"; do printf '%s\\thttps://example.org/refined\\n' \"$f\"; done\n")
+                 .getBytes(StandardCharsets.UTF_8));
+         assertTrue(script.setExecutable(true));
+
+         assertEquals(0, run(script.getAbsolutePath(), "test/some.xml", "test/BIOMD0000000624.xml"));
+         String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+         assertEquals("test/some.xml\thttps://example.org/refined", lines[0]);
+         assertFalse("SBML is not generic", lines[1].contains("refined"));
+      } finally {
+         script.delete();
+      }
+   }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.cli.RecognitionClient;
+import de.unirostock.sems.cbext.cli.RecognitionDaemon;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the recognition daemon and its client.
+ */
+public class TestDaemon {
+
+   /** the state file of the daemon. */
+   private File stateFile;
+
+   /** the daemon. */
+   private RecognitionDaemon daemon;
+
+
+   /**
+    * Start a daemon.
+    *
+    * @throws IOException if the daemon cannot be started
+    */
+   @Before
+   public void setUp() throws IOException {
+      stateFile = File.createTempFile("combineext-daemon", ".properties");
+      daemon = new RecognitionDaemon(0, stateFile, 2);
+      Thread server = new Thread(daemon::serve);
+      server.setDaemon(true);
+      server.start();
+   }
+
+
+   /**
+    * Stop the daemon.
+    *
+    * @throws IOException if the daemon cannot be stopped
+    */
+   @After
+   public void tearDown() throws IOException {
+      daemon.close();
+      stateFile.delete();
+   }
+
+
+   /**
+    * Test that the daemon answers like the formatizer.
+    *
+    * @throws IOException if the daemon fails
+    */
+   @Test
+   public void testRecognize() throws IOException {
+      List<File> files = new ArrayList<File>();
+      for (String name : new String[] {"BIOMD0000000624.xml", "some.xml", "plain.text", "no-such-file"})
+         files.add(new File("test", name));
+      // many files, so client and daemon have to talk at the same time
+      for (int i = 0; i < 2000; i++)
+         files.add(new File("test/some.xml"));
+
+      List<URI> formats = RecognitionClient.recognize(files, stateFile);
+      assertNotNull(formats);
+      assertEquals(files.size(), formats.size());
+      for (int i = 0; i < 3; i++)
+         assertEquals(Formatizer.guessFormat(files.get(i)), formats.get(i));
+      assertNull("expected nothing for a missing file", formats.get(3));
+   }
+
+
+   /**
+    * Test that clients need the token.
+    *
+    * @throws IOException if the daemon cannot be reached
+    */
+   @Test
+   public void testToken() throws IOException {
+      try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+         OutputStream out = socket.getOutputStream();
+         out.write("guessed\ntest/some.xml\n".getBytes(StandardCharsets.UTF_8));
+         socket.shutdownOutput();
+         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+         assertEquals(RecognitionDaemon.UNAUTHORIZED, in.readLine());
+         assertNull(in.readLine());
+      }
+   }
+
+
+   /**
+    * Test that clients which do not send their token are dropped, so they
+    * cannot keep the daemon from serving others.
+    *
+    * @throws IOException if the daemon cannot be reached
+    */
+   @Test
+   public void testIdleClient() throws IOException {
+      daemon.setTokenTimeout(300);
+      // as many idle clients as the daemon has threads
+      try (Socket first = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+           Socket second = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+         File file = new File("test/some.xml");
+         List<URI> formats = RecognitionClient.recognize(Arrays.asList(file), stateFile);
+         assertNotNull(formats);
+         assertEquals(Formatizer.guessFormat(file), formats.get(0));
+         assertEquals("expected the idle client to be dropped", -1, first.getInputStream().read());
+      }
+   }
+
+
+   /**
+    * Test that the client notices when there is no daemon.
+    *
+    * @throws IOException if the daemon cannot be stopped
+    */
+   @Test
+   public void testNoDaemon() throws IOException {
+      daemon.close();
+      assertFalse("state file should be removed", stateFile.exists());
+      assertNull(RecognitionClient.recognize(Arrays.asList(new File("test/some.xml")), stateFile));
+   }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.cli.RecognitionServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the HTTP recognition service.
+ */
+public class TestHttpServer {
+
+   /** the service. */
+   private RecognitionServer server;
+
+
+   /**
+    * Start a service with a single worker and no queue.
+    *
+    * @throws IOException if the service cannot be started
+    */
+   @Before
+   public void setUp() throws IOException {
+      server = new RecognitionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 0,
+              new File("test"));
+      server.start();
+   }
+
+
+   /**
+    * Stop the service.
+    */
+   @After
+   public void tearDown() {
+      server.close();
+   }
+
+
+   /**
+    * Opens a connection to the service.
+    *
+    * @param path the path and query
+    * @return the connection
+    * @throws IOException if the connection cannot be opened
+    */
+   private HttpURLConnection open(String path) throws IOException {
+      return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+   }
+
+
+   /**
+    * Posts a body.
+    *
+    * @param path the path and query
+    * @param body the body
+    * @return the response
+    * @throws IOException if the request fails
+    */
+   private String post(String path, byte[] body) throws IOException {
+      HttpURLConnection connection = open(path);
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      try (OutputStream out = connection.getOutputStream()) {
+         out.write(body);
+      }
+      assertEquals(200, connection.getResponseCode());
+      return new String(read(connection.getInputStream()), StandardCharsets.UTF_8);
+   }
+
+
+   /**
+    * Reads a stream.
+    *
+    * @param stream the stream
+    * @return the bytes
+    * @throws IOException if the stream cannot be read
+    */
+   private static byte[] read(InputStream stream) throws IOException {
+      try (InputStream in = stream) {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         byte[] buffer = new byte[8192];
+         for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+            bytes.write(buffer, 0, read);
+         return bytes.toByteArray();
+      }
+   }
+
+
+   /**
+    * Test recognising uploads.
+    *
+    * @throws IOException if the service fails
+    */
+   @Test
+   public void testRecognize() throws IOException {
+      for (String name : new String[] {"BIOMD0000000624.xml", "some.xml"}) {
+         File file = new File("test", name);
+         String json = post("/recognize?name=" + name, Files.readAllBytes(file.toPath()));
+         URI format = Formatizer.guessFormat(file);
+         assertTrue(json, json.contains("\"format\":\"" + format + "\""));
+         assertTrue(json, json.contains("\"icon\":\"" + Iconizer.formatToIcon(format) + "\""));
+      }
+   }
+
+
+   /**
+    * Test recognising files on the server.
+    *
+    * @throws IOException if the service fails
+    */
+   @Test
+   public void testBatch() throws IOException {
+      String json = post("/recognize/batch",
+              "BIOMD0000000624.xml\n../pom.xml\nno-such-file\n".getBytes(StandardCharsets.UTF_8));
+      assertTrue(json, json.startsWith("[{\"path\":\"BIOMD0000000624.xml\",\"format\":\""
+              + Formatizer.guessFormat(new File("test/BIOMD0000000624.xml")) + "\""));
+      assertTrue(json, json.contains("{\"path\":\"../pom.xml\",\"format\":null,\"error\":\"outside"));
+      assertTrue(json, json.contains("{\"path\":\"no-such-file\",\"format\":null,\"error\":\"not a file\"}"));
+   }
+
+
+   /**
+    * Test that symbolic links do not lead out of the root directory.
+    *
+    * @throws IOException if the service fails
+    */
+   @Test
+   public void testBatchSymlink() throws IOException {
+      Path link = Paths.get("test", "combineext-outside.xml");
+      try {
+         Files.createSymbolicLink(link, Paths.get("pom.xml").toAbsolutePath());
+      } catch (UnsupportedOperationException | IOException e) {
+         // the file system has no symbolic links
+         return;
+      }
+      try {
+         String json = post("/recognize/batch", "combineext-outside.xml\n".getBytes(StandardCharsets.UTF_8));
+         assertTrue(json, json.contains("{\"path\":\"combineext-outside.xml\",\"format\":null,\"error\":\"outside"));
+      } finally {
+         Files.delete(link);
+      }
+   }
+
+
+   /**
+    * Test sending icons and their entity tags.
+    *
+    * @throws IOException if the service fails
+    */
+   @Test
+   public void testIcon() throws IOException {
+      URI format = Formatizer.guessFormat(new File("test/BIOMD0000000624.xml"));
+      String path = "/icon/" + URLEncoder.encode(format.toString(), "UTF-8");
+
+      HttpURLConnection connection = open(path);
+      assertEquals(200, connection.getResponseCode());
+      assertEquals("image/png", connection.getContentType());
+      assertTrue(connection.getHeaderField("Cache-Control").contains("max-age"));
+      String etag = connection.getHeaderField("ETag");
+      assertNotNull(etag);
+      assertArrayEquals(read(Iconizer.formatToIconStream(format)), read(connection.getInputStream()));
+
+      connection = open(path);
+      connection.setRequestProperty("If-None-Match", etag);
+      assertEquals(304, connection.getResponseCode());
+
+      connection = open(path);
+      connection.setRequestMethod("POST");
+      assertEquals(405, connection.getResponseCode());
+   }
+
+
+   /**
+    * Test that requests are turned away while the only worker is busy.
+    *
+    * @throws IOException if the service fails
+    * @throws InterruptedException if interrupted
+    */
+   @Test
+   public void testOverload() throws IOException, InterruptedException {
+      try (Socket slow = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+         // an upload that does not come, keeping the worker busy
+         slow.getOutputStream().write(("POST /recognize HTTP/1.1\r\nHost: localhost\r\n"
+                 + "Content-Length: 1000\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+         slow.getOutputStream().flush();
+         Thread.sleep(200);
+
+         HttpURLConnection connection = open("/recognize/batch");
+         connection.setRequestMethod("POST");
+         connection.setDoOutput(true);
+         connection.getOutputStream().close();
+         assertEquals(503, connection.getResponseCode());
+         assertNotNull(connection.getHeaderField("Retry-After"));
+      }
+   }
+}
@@ -0,0 +1,1262 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.io.DirectorySpliterator;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Consumer;
+
+
+/**
+ * Recognizes many files in two stages, so reading and parsing do not get in
+ * each other's way.
+ *
+ * A small number of I/O threads read the files: files below the
+ * {@link #setLoadThreshold(long) load threshold} are
+ * {@link RecognitionSource#load(File) loaded} completely, of larger ones
+ * MIME type, header and XML root are fetched. A pool sized for the
+ * processors then runs the recognizers on what was read. Both stages are
+ * connected by bounded queues: if the recognizers fall behind, the readers
+ * wait, and if the readers fall behind, so does the caller feeding files.
+ * How busy each stage was is reported by {@link #getReadStage()} and
+ * {@link #getRecognizeStage()}. On storage with high latency, files may be
+ * read {@link #setAsynchronousReads(int) asynchronously} instead. Rather than
+ * fixing the number of threads of both stages, the batch recognizer may
+ * {@link #setAdaptiveSizing(int, int) find them itself}, which helps if the
+ * same code recognizes local and remote files. Batches known in advance may
+ * be {@link #recognizeLargestFirst(Collection, Consumer) scheduled by cost},
+ * so they do not end with a single large file.
+ *
+ * A batch recognizer runs one batch at a time.
+ */
+public class BatchRecognizer {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(BatchRecognizer.class);
+
+   /** files below this size are loaded completely by default. */
+   public static final long DEFAULT_LOAD_THRESHOLD = RecognitionSource.MAP_THRESHOLD;
+
+   /** tells the readers that there are no more files. */
+   private static final Path NO_MORE_FILES = Paths.get("");
+
+   /** tells the recognizers that there are no more sources. */
+   private static final RecognitionSource NO_MORE_SOURCES = new RecognitionSource(new File(""),
+           ByteBuffer.allocate(0));
+
+   /** the time between adjustments of adaptive sizing by default, in milliseconds. */
+   public static final long DEFAULT_TUNING_INTERVAL = 500;
+
+   /** the number of threads reading files, or to start with if adaptive. */
+   private int readers;
+
+   /** the number of threads running recognizers, or to start with if adaptive. */
+   private int recognizers;
+
+   /** the largest number of threads reading files if adaptive, 0 if fixed. */
+   private volatile int maxReaders;
+
+   /** the largest number of threads running recognizers if adaptive, 0 if fixed. */
+   private volatile int maxRecognizers;
+
+   /** the time between adjustments of adaptive sizing, in milliseconds. */
+   private volatile long tuningInterval = DEFAULT_TUNING_INTERVAL;
+
+   /** the time recognizers spent waiting for and parsing files, by recognizer. */
+   private final Map<String, Timing> timings = new ConcurrentHashMap<String, Timing>();
+
+   /** the recognizer that last identified a file, by file extension. */
+   private final Map<String, String> recognizerByExtension = new ConcurrentHashMap<String, String>();
+
+   /** the estimated cost of the files of the running batch that are not done. */
+   private final DoubleAdder remainingCost = new DoubleAdder();
+
+   /** the estimated cost of the files of the running batch that are done. */
+   private final DoubleAdder doneCost = new DoubleAdder();
+
+   /** when the running batch started, 0 if it is not scheduled by cost. */
+   private volatile long scheduledSince;
+
+   /** the capacity of the queues in front of each stage. */
+   private final int queueSize;
+
+   /** files below this size are loaded completely. */
+   private volatile long loadThreshold = DEFAULT_LOAD_THRESHOLD;
+
+   /** the number of asynchronous reads in flight, 0 to read on threads. */
+   private volatile int asynchronousReads;
+
+   /** the reading stage. */
+   private final Stage reading = new Stage("read");
+
+   /** the recognizing stage. */
+   private final Stage recognizing = new Stage("recognize");
+
+
+   /**
+    * A stage of the pipeline, counting how much work it did.
+    */
+   public static class Stage {
+
+      /** the name of the stage. */
+      private final String name;
+
+      /** the number of threads of the stage. */
+      private volatile int threads;
+
+      /** the queue in front of the stage. */
+      private volatile BlockingQueue<?> queue;
+
+      /** the number of files done. */
+      private final AtomicLong items = new AtomicLong();
+
+      /** the time spent working, summed over all threads, in nanoseconds. */
+      private final AtomicLong busy = new AtomicLong();
+
+      /** when the batch started, in nanoseconds. */
+      private volatile long started;
+
+      /** when the batch ended, 0 while running. */
+      private volatile long stopped;
+
+
+      /**
+       * Instantiates a new stage.
+       *
+       * @param name the name
+       */
+      Stage(String name) {
+         this.name = name;
+      }
+
+
+      /**
+       * Starts a new batch.
+       *
+       * @param threads the number of threads
+       * @param queue the queue in front of the stage
+       */
+      void start(int threads, BlockingQueue<?> queue) {
+         this.threads = threads;
+         this.queue = queue;
+         items.set(0);
+         busy.set(0);
+         stopped = 0;
+         started = System.nanoTime();
+      }
+
+
+      /**
+       * Changes the number of threads while the batch is running.
+       *
+       * @param threads the number of threads
+       */
+      void resize(int threads) {
+         this.threads = threads;
+      }
+
+
+      /**
+       * Records a file that was done.
+       *
+       * @param nanos the time it took
+       */
+      void record(long nanos) {
+         busy.addAndGet(nanos);
+         items.incrementAndGet();
+      }
+
+
+      /**
+       * Ends the batch.
+       */
+      void stop() {
+         stopped = System.nanoTime();
+      }
+
+
+      /**
+       * Gets the name of the stage.
+       *
+       * @return the name
+       */
+      public String getName() {
+         return name;
+      }
+
+
+      /**
+       * Gets the number of threads of the stage, or the number of reads in
+       * flight when reading asynchronously. With adaptive sizing, this is the
+       * current number.
+       *
+       * @return the number of threads
+       */
+      public int getThreads() {
+         return threads;
+      }
+
+
+      /**
+       * Gets the number of files the stage is done with.
+       *
+       * @return the number of files
+       */
+      public long getItems() {
+         return items.get();
+      }
+
+
+      /**
+       * Gets the number of files waiting for the stage.
+       *
+       * @return the number of files
+       */
+      public int getQueued() {
+         BlockingQueue<?> waiting = queue;
+         return waiting != null ? waiting.size() : 0;
+      }
+
+
+      /**
+       * Gets the time the threads of the stage spent working.
+       *
+       * @return the time in nanoseconds, summed over all threads
+       */
+      public long getBusyNanos() {
+         return busy.get();
+      }
+
+
+      /**
+       * Gets the utilization of the stage: the share of time its threads
+       * spent working rather than waiting for the other stage.
+       *
+       * @return the utilization between 0 and 1
+       */
+      public double getUtilization() {
+         long end = stopped != 0 ? stopped : System.nanoTime();
+         long elapsed = end - started;
+         if (started == 0 || elapsed <= 0 || threads == 0)
+            return 0;
+         return Math.min(1, busy.get() / ((double) elapsed * threads));
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see java.lang.Object#toString()
+       */
+      @Override
+      public String toString() {
+         return String.format(Locale.ROOT, "%s: %d files, %d threads, %.0f%% busy", name, getItems(),
+                 threads, 100 * getUtilization());
+      }
+   }
+
+
+   /**
+    * The time a recognizer spent waiting for the file system and parsing.
+    */
+   private static final class Timing {
+
+      /** the time spent waiting for the file system, in nanoseconds. */
+      final AtomicLong waiting = new AtomicLong();
+
+      /** the time spent parsing, in nanoseconds. */
+      final AtomicLong parsing = new AtomicLong();
+
+      /** the number of bytes of the files recognized. */
+      final AtomicLong bytes = new AtomicLong();
+
+
+      /**
+       * Gets the ratio of waiting to parsing.
+       *
+       * @return the ratio, 0 if nothing was parsed
+       */
+      double getRatio() {
+         long cpu = parsing.get();
+         return cpu > 0 ? waiting.get() / (double) cpu : 0;
+      }
+
+
+      /**
+       * Gets the time it takes to recognize a byte.
+       *
+       * @return the time in nanoseconds, 0 if nothing was recognized
+       */
+      double getNanosPerByte() {
+         long size = bytes.get();
+         return size > 0 ? (waiting.get() + parsing.get()) / (double) size : 0;
+      }
+   }
+
+
+   /**
+    * A semaphore whose number of permits can be changed while it is used:
+    * the number of threads of a stage that may work at once.
+    */
+   private static final class Limit extends Semaphore {
+
+      private static final long serialVersionUID = 1L;
+
+      /** the number of permits. */
+      private int size;
+
+
+      /**
+       * Instantiates a new limit.
+       *
+       * @param size the number of permits
+       */
+      Limit(int size) {
+         super(size);
+         this.size = size;
+      }
+
+
+      /**
+       * Changes the number of permits. Permits that are taken are not
+       * revoked, fewer are just given out until they are back.
+       *
+       * @param newSize the number of permits
+       */
+      synchronized void resize(int newSize) {
+         if (newSize > size)
+            release(newSize - size);
+         else if (newSize < size)
+            reducePermits(size - newSize);
+         size = newSize;
+      }
+
+
+      /**
+       * Gets the number of permits.
+       *
+       * @return the number of permits
+       */
+      synchronized int getSize() {
+         return size;
+      }
+   }
+
+
+   /**
+    * Adjusts the number of threads of both stages in turns, climbing towards
+    * the highest throughput of recognized files. Only one stage moves per
+    * interval, and the throughput of the interval after a move is credited
+    * to the stage that made it.
+    */
+   private final class Tuner implements Runnable {
+
+      /** the number of threads reading, or of reads in flight. */
+      private final Limit readLimit;
+
+      /** the number of threads recognizing. */
+      private final Limit recognizeLimit;
+
+      /** climbs the number of readers. */
+      private final HillClimber readClimber;
+
+      /** climbs the number of recognizers. */
+      private final HillClimber recognizeClimber;
+
+      /** the files recognized at the last adjustment. */
+      private long lastItems;
+
+      /** the time of the last adjustment, in nanoseconds. */
+      private long lastTime = System.nanoTime();
+
+      /** the throughput before the last move. */
+      private double lastThroughput;
+
+      /** the climber that made the last move, null if none yet. */
+      private HillClimber moved;
+
+
+      /**
+       * Instantiates a new tuner.
+       *
+       * @param readLimit the limit of the reading stage
+       * @param maxReads its largest size
+       * @param recognizeLimit the limit of the recognizing stage
+       * @param maxRecognitions its largest size
+       */
+      Tuner(Limit readLimit, int maxReads, Limit recognizeLimit, int maxRecognitions) {
+         this.readLimit = readLimit;
+         this.recognizeLimit = recognizeLimit;
+         this.readClimber = new HillClimber(1, maxReads, readLimit.getSize());
+         this.recognizeClimber = new HillClimber(1, maxRecognitions, recognizeLimit.getSize());
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see java.lang.Runnable#run()
+       */
+      @Override
+      public void run() {
+         long now = System.nanoTime();
+         long items = recognizing.getItems();
+         double throughput = (items - lastItems) * 1e9 / Math.max(1, now - lastTime);
+         lastItems = items;
+         lastTime = now;
+         if (moved != null)
+            moved.credit(lastThroughput, throughput);
+         if (moved != readClimber) {
+            readLimit.resize(readClimber.move());
+            reading.resize(readLimit.getSize());
+            moved = readClimber;
+         } else {
+            recognizeLimit.resize(recognizeClimber.move());
+            recognizing.resize(recognizeLimit.getSize());
+            moved = recognizeClimber;
+         }
+         lastThroughput = throughput;
+         LOGGER.debug("{} files/s, now {} readers and {} recognizers", (long) throughput, readLimit.getSize(),
+                 recognizeLimit.getSize());
+      }
+   }
+
+
+   /**
+    * Instantiates a new batch recognizer with four readers, a recognizer per
+    * processor, and queues holding two files per recognizer.
+    */
+   public BatchRecognizer() {
+      this(4, Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime().availableProcessors());
+   }
+
+
+   /**
+    * Instantiates a new batch recognizer.
+    *
+    * @param readers the number of threads reading files
+    * @param recognizers the number of threads running recognizers
+    * @param queueSize the number of files waiting in front of each stage
+    */
+   public BatchRecognizer(int readers, int recognizers, int queueSize) {
+      if (readers <= 0 || recognizers <= 0 || queueSize <= 0)
+         throw new IllegalArgumentException("Threads and queue size must be positive.");
+      this.readers = readers;
+      this.recognizers = recognizers;
+      this.queueSize = queueSize;
+   }
+
+
+   /**
+    * Sets the size below which files are loaded completely by the readers.
+    *
+    * @param bytes the threshold in bytes, 0 to only prefetch headers
+    */
+   public void setLoadThreshold(long bytes) {
+      loadThreshold = bytes;
+   }
+
+
+   /**
+    * Gets the size below which files are loaded completely by the readers.
+    *
+    * @return the threshold in bytes
+    */
+   public long getLoadThreshold() {
+      return loadThreshold;
+   }
+
+
+   /**
+    * Reads files through {@link AsynchronousFileChannel}s instead of reader
+    * threads. Many reads can then be in flight at once, which pays off on
+    * storage with high latency, such as network file systems. Small files
+    * are read completely, of larger ones just the header.
+    *
+    * How reads are carried out depends on the platform: Windows overlaps
+    * them in the kernel, other platforms run them on a pool of as many
+    * threads as reads may be in flight, which are virtual threads on Java 21
+    * (see {@link RecognitionExecutors}).
+    *
+    * @param reads the number of reads in flight, 0 to read on threads
+    */
+   public void setAsynchronousReads(int reads) {
+      if (reads < 0)
+         throw new IllegalArgumentException("The number of reads must not be negative.");
+      asynchronousReads = reads;
+   }
+
+
+   /**
+    * Gets the number of asynchronous reads in flight.
+    *
+    * @return the number of reads, 0 if reading on threads
+    * @see #setAsynchronousReads(int)
+    */
+   public int getAsynchronousReads() {
+      return asynchronousReads;
+   }
+
+
+   /**
+    * Lets the batch recognizer find the number of threads of both stages
+    * itself. While a batch runs, the numbers are adjusted every
+    * {@link #setTuningInterval(long) interval}, in turns, climbing towards
+    * the highest throughput. Every batch starts with the numbers the last
+    * one ended with; the recognizers start with as many threads as the
+    * {@link #getBlockingRatio() blocking ratio} suggests, i.e. more if they
+    * mostly wait for the file system.
+    *
+    * @param maxReaders the largest number of threads reading files, or of
+    *           asynchronous reads in flight
+    * @param maxRecognizers the largest number of threads running
+    *           recognizers
+    */
+   public void setAdaptiveSizing(int maxReaders, int maxRecognizers) {
+      if (maxReaders <= 0 || maxRecognizers <= 0)
+         throw new IllegalArgumentException("The largest number of threads must be positive.");
+      this.maxReaders = maxReaders;
+      this.maxRecognizers = maxRecognizers;
+   }
+
+
+   /**
+    * Keeps the number of threads of both stages fixed, which is the
+    * default.
+    */
+   public void setFixedSizing() {
+      maxReaders = 0;
+      maxRecognizers = 0;
+   }
+
+
+   /**
+    * Checks whether the number of threads is adjusted while batches run.
+    *
+    * @return true, if adaptive sizing is enabled
+    * @see #setAdaptiveSizing(int, int)
+    */
+   public boolean isAdaptiveSizing() {
+      return maxReaders > 0;
+   }
+
+
+   /**
+    * Sets the time between adjustments of adaptive sizing. It should be
+    * long enough for a couple of files to be recognized.
+    *
+    * @param millis the time in milliseconds
+    */
+   public void setTuningInterval(long millis) {
+      if (millis <= 0)
+         throw new IllegalArgumentException("The interval must be positive.");
+      tuningInterval = millis;
+   }
+
+
+   /**
+    * Gets the ratio of the time the recognizers waited for the file system
+    * to the time they spent parsing, over all batches so far. Files loaded
+    * by the readers do not make recognizers wait; large files read by the
+    * recognizers themselves, e.g. from network file systems, do.
+    *
+    * @return the ratio, 0 if nothing was recognized yet
+    */
+   public double getBlockingRatio() {
+      return getTotalTiming().getRatio();
+   }
+
+
+   /**
+    * Gets the blocking ratios, see {@link #getBlockingRatio()}, of the
+    * recognizers that identified files. Files that no recognizer identified
+    * are listed as <code>unrecognized</code>.
+    *
+    * @return the ratios by the simple class name of the recognizer
+    */
+   public Map<String, Double> getBlockingRatios() {
+      Map<String, Double> ratios = new TreeMap<String, Double>();
+      for (Map.Entry<String, Timing> entry : timings.entrySet())
+         ratios.put(entry.getKey(), entry.getValue().getRatio());
+      return ratios;
+   }
+
+
+   /**
+    * Gets the reading stage of the current or last batch.
+    *
+    * @return the stage
+    */
+   public Stage getReadStage() {
+      return reading;
+   }
+
+
+   /**
+    * Gets the recognizing stage of the current or last batch.
+    *
+    * @return the stage
+    */
+   public Stage getRecognizeStage() {
+      return recognizing;
+   }
+
+
+   /**
+    * Recognizes all files below a directory, which is walked lazily.
+    *
+    * @param root the directory
+    * @param results receives the results, see
+    *           {@link #recognize(Iterator, Consumer)}
+    * @throws InterruptedException if interrupted while feeding files
+    */
+   public void recognize(Path root, Consumer<RecognitionResult> results) throws InterruptedException {
+      try (DirectorySpliterator files = new DirectorySpliterator(root)) {
+         recognize(Spliterators.iterator(files), results);
+      }
+   }
+
+
+   /**
+    * Recognizes files, the most expensive first, and waits until all are
+    * done. The cost of a file is estimated from its size and the time the
+    * recognizer that is expected to identify it took per byte so far, see
+    * {@link #getBlockingRatios()}. Thus, large files start first and small
+    * ones fill the gaps, instead of one large file keeping the batch going
+    * long after everything else is done. While the batch runs,
+    * {@link #getRemainingMillis()} estimates how long it will take.
+    *
+    * @param files the files
+    * @param results receives the results, see
+    *           {@link #recognize(Iterator, Consumer)}
+    * @throws InterruptedException if interrupted while feeding files
+    */
+   public synchronized void recognizeLargestFirst(Collection<Path> files, Consumer<RecognitionResult> results)
+           throws InterruptedException {
+      double nanosPerByte = getTotalTiming().getNanosPerByte();
+      Map<File, Double> costs = new HashMap<File, Double>();
+      for (Path path : files)
+         costs.put(path.toFile(), estimateCost(path.toFile(), nanosPerByte));
+      List<Path> ordered = new ArrayList<Path>(files);
+      ordered.sort(Comparator.comparing((Path path) -> costs.get(path.toFile())).reversed());
+
+      remainingCost.reset();
+      doneCost.reset();
+      for (Path path : ordered)
+         remainingCost.add(costs.get(path.toFile()));
+      scheduledSince = System.nanoTime();
+      try {
+         recognize(ordered.iterator(), result -> {
+            Double cost = costs.get(result.getFile());
+            if (cost != null) {
+               remainingCost.add(-cost);
+               doneCost.add(cost);
+            }
+            results.accept(result);
+         });
+      } finally {
+         scheduledSince = 0;
+      }
+   }
+
+
+   /**
+    * Estimates the time until the running batch is done, if it was started
+    * by {@link #recognizeLargestFirst(Collection, Consumer)}: the time so
+    * far, scaled by the estimated cost of the files to go over the cost of
+    * the files done.
+    *
+    * @return the time in milliseconds, or -1 if no such batch is running or
+    *         no file is done yet
+    */
+   public long getRemainingMillis() {
+      long since = scheduledSince;
+      double done = doneCost.sum();
+      if (since == 0 || done <= 0)
+         return -1;
+      double remaining = Math.max(0, remainingCost.sum());
+      return (long) ((System.nanoTime() - since) / 1e6 * remaining / done);
+   }
+
+
+   /**
+    * Recognizes files and waits until all are done. The results are passed
+    * to the consumer as they come, concurrently from the threads of both
+    * stages; files that cannot be read get a result with a null format. If
+    * a recognizer or the consumer fails, no further files are read and the
+    * exception is thrown once the files already read are done.
+    *
+    * @param files the files
+    * @param results receives the results
+    * @throws InterruptedException if interrupted while feeding files
+    */
+   public synchronized void recognize(Iterator<Path> files, Consumer<RecognitionResult> results)
+           throws InterruptedException {
+      boolean asynchronous = asynchronousReads > 0;
+      boolean adaptive = isAdaptiveSizing();
+      int startReads = asynchronous ? asynchronousReads : readers;
+      int startRecognitions = recognizers;
+      if (adaptive) {
+         startReads = Math.min(startReads, maxReaders);
+         double ratio = getBlockingRatio();
+         if (ratio > 0)
+            startRecognitions = (int) Math.round(Runtime.getRuntime().availableProcessors() * (1 + ratio));
+         startRecognitions = Math.min(startRecognitions, maxRecognizers);
+      }
+      int maxReads = adaptive ? maxReaders : startReads;
+      int maxRecognitions = adaptive ? maxRecognizers : startRecognitions;
+      Limit readLimit = new Limit(startReads);
+      Limit recognizeLimit = new Limit(startRecognitions);
+
+      BlockingQueue<Path> paths = new ArrayBlockingQueue<Path>(queueSize);
+      BlockingQueue<RecognitionSource> sources = new ArrayBlockingQueue<RecognitionSource>(
+              asynchronous ? maxReads : queueSize);
+      AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+      AtomicBoolean abandoned = new AtomicBoolean();
+      reading.start(startReads, asynchronous ? null : paths);
+      recognizing.start(startRecognitions, sources);
+
+      ExecutorService readPool = RecognitionExecutors.newExecutor(maxReads,
+              asynchronous ? "combineext-aio" : "combineext-read");
+      ExecutorService recognizePool = RecognitionExecutors.newExecutor(maxRecognitions, "combineext-recognize");
+      ScheduledExecutorService tuner = null;
+      List<Future<?>> recognitions = new ArrayList<Future<?>>();
+      try {
+         Semaphore inFlight = asynchronous ? readLimit : null;
+         for (int i = 0; i < maxRecognitions; i++)
+            recognitions.add(recognizePool.submit(() -> recognize(sources, results, failure, recognizeLimit,
+                    inFlight)));
+         if (adaptive) {
+            tuner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+               Thread thread = new Thread(runnable, "combineext-tuner");
+               thread.setDaemon(true);
+               return thread;
+            });
+            long interval = tuningInterval;
+            tuner.scheduleAtFixedRate(new Tuner(readLimit, maxReads, recognizeLimit, maxRecognitions), interval,
+                    interval, TimeUnit.MILLISECONDS);
+         }
+
+         if (asynchronous) {
+            while (failure.get() == null && files.hasNext()) {
+               readLimit.acquire();
+               new AsynchronousRead(files.next().toFile(), readLimit, sources, results, failure, abandoned)
+                       .start(readPool);
+            }
+            if (tuner != null) {
+               // a running adjustment must not resize the limit while it is drained
+               tuner.shutdownNow();
+               tuner.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            // every read gives its permit back once its file is recognized
+            readLimit.acquire(readLimit.getSize());
+         } else {
+            List<Future<?>> readTasks = new ArrayList<Future<?>>();
+            for (int i = 0; i < maxReads; i++)
+               readTasks.add(readPool.submit(() -> read(paths, sources, results, failure, readLimit)));
+            while (failure.get() == null && files.hasNext())
+               paths.put(files.next());
+            for (int i = 0; i < maxReads; i++)
+               paths.put(NO_MORE_FILES);
+            await(readTasks);
+         }
+         for (int i = 0; i < maxRecognitions; i++)
+            sources.put(NO_MORE_SOURCES);
+         await(recognitions);
+      } finally {
+         if (tuner != null)
+            tuner.shutdownNow();
+         readPool.shutdownNow();
+         recognizePool.shutdownNow();
+         synchronized (sources) {
+            abandoned.set(true);
+            for (RecognitionSource source : sources)
+               close(source);
+         }
+         reading.stop();
+         recognizing.stop();
+      }
+      if (adaptive) {
+         // the next batch starts where this one ended
+         if (asynchronous)
+            asynchronousReads = readLimit.getSize();
+         else
+            readers = readLimit.getSize();
+         recognizers = recognizeLimit.getSize();
+      }
+      if (failure.get() != null)
+         throw failure.get();
+   }
+
+
+   /**
+    * Waits for the threads of a stage.
+    *
+    * @param stage the futures of the stage's threads
+    * @throws InterruptedException if interrupted while waiting
+    */
+   private static void await(List<Future<?>> stage) throws InterruptedException {
+      for (Future<?> future : stage) {
+         try {
+            future.get();
+         } catch (ExecutionException e) {
+            // the stages record their failures instead of throwing, so this is a bug
+            throw new IllegalStateException(e.getCause());
+         }
+      }
+   }
+
+
+   /**
+    * Reads files until there are no more.
+    *
+    * @param paths the files to read
+    * @param sources receives what was read
+    * @param results receives the results of files that cannot be read
+    * @param failure the first failure of any stage
+    * @param limit the number of threads that may read at once
+    */
+   private void read(BlockingQueue<Path> paths, BlockingQueue<RecognitionSource> sources,
+           Consumer<RecognitionResult> results, AtomicReference<RuntimeException> failure, Limit limit) {
+      try {
+         while (true) {
+            limit.acquire();
+            try {
+               Path path = paths.take();
+               if (path == NO_MORE_FILES)
+                  return;
+               if (failure.get() != null)
+                  continue;
+               long start = System.nanoTime();
+               RecognitionSource source = load(path.toFile());
+               reading.record(System.nanoTime() - start);
+               if (source != null)
+                  sources.put(source);
+               else
+                  deliver(new RecognitionResult(null, 0, null, path.toFile()), results, failure);
+            } catch (InterruptedException e) {
+               throw e;
+            } catch (Throwable e) {
+               // a dead reader would leave the feeder waiting for a free slot
+               fail(failure, e);
+            } finally {
+               limit.release();
+            }
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+
+   /**
+    * Reads a file: loads it if it is small, fetches MIME type, header and
+    * XML root otherwise.
+    *
+    * @param file the file
+    * @return the source, or null if the file cannot be read
+    */
+   private RecognitionSource load(File file) {
+      RecognitionSource source = null;
+      try {
+         source = file.length() < loadThreshold ? RecognitionSource.load(file) : RecognitionSource.open(file);
+         if (source.getMimeType() != null) {
+            source.getHeader();
+            source.getXmlRoot();
+         }
+         return source;
+      } catch (IOException e) {
+         LOGGER.debug("cannot read file {}: {}", file.getName(), e.getMessage());
+         close(source);
+         return null;
+      }
+   }
+
+
+   /**
+    * Recognizes sources until there are no more.
+    *
+    * @param sources the sources
+    * @param results receives the results
+    * @param failure the first failure of any stage
+    * @param limit the number of threads that may recognize at once
+    * @param inFlight the permits of asynchronous reads, null if reading on
+    *           threads
+    */
+   private void recognize(BlockingQueue<RecognitionSource> sources, Consumer<RecognitionResult> results,
+           AtomicReference<RuntimeException> failure, Limit limit, Semaphore inFlight) {
+      try {
+         while (true) {
+            limit.acquire();
+            RecognitionSource source = null;
+            try {
+               source = sources.take();
+               if (source == NO_MORE_SOURCES)
+                  return;
+               if (failure.get() != null)
+                  continue;
+               long start = System.nanoTime();
+               long waited = source.getReadNanos();
+               // parse on this thread, so the limit bounds the parsers
+               RecognitionResult result = Formatizer.recognize(source, false);
+               long nanos = System.nanoTime() - start;
+               recognizing.record(nanos);
+               time(result, source, source.getReadNanos() - waited, nanos);
+               deliver(result != null ? result : new RecognitionResult(null, 0, null, source.getFile()), results,
+                       failure);
+            } catch (InterruptedException e) {
+               throw e;
+            } catch (Throwable e) {
+               // also errors like StackOverflowError, a dead recognizer would block the readers
+               fail(failure, e);
+            } finally {
+               limit.release();
+               if (source != null && source != NO_MORE_SOURCES) {
+                  close(source);
+                  if (inFlight != null)
+                     inFlight.release();
+               }
+            }
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+
+   /**
+    * Records the time a recognition took.
+    *
+    * @param result the result, or null
+    * @param source the source that was recognized
+    * @param waiting the time spent waiting for the file system
+    * @param total the time the recognition took
+    */
+   private void time(RecognitionResult result, RecognitionSource source, long waiting, long total) {
+      FormatRecognizer recognizer = result != null ? result.getRecognizer() : null;
+      String name = recognizer != null ? recognizer.getClass().getSimpleName() : "unrecognized";
+      Timing timing = timings.computeIfAbsent(name, key -> new Timing());
+      timing.waiting.addAndGet(waiting);
+      timing.parsing.addAndGet(Math.max(0, total - waiting));
+      timing.bytes.addAndGet(source.getSize());
+      recognizerByExtension.put(source.getExtension().toLowerCase(Locale.ROOT), name);
+   }
+
+
+   /**
+    * Sums up the timings of all recognizers.
+    *
+    * @return the total timing
+    */
+   private Timing getTotalTiming() {
+      Timing total = new Timing();
+      for (Timing timing : timings.values()) {
+         total.waiting.addAndGet(timing.waiting.get());
+         total.parsing.addAndGet(timing.parsing.get());
+         total.bytes.addAndGet(timing.bytes.get());
+      }
+      return total;
+   }
+
+
+   /**
+    * Estimates the cost of recognizing a file: its size times the time per
+    * byte of the recognizer that last identified a file with the same
+    * extension, or of all recognizers if there is none. Without any
+    * timings yet, the cost is just the size.
+    *
+    * @param file the file
+    * @param fallback the time per byte of all recognizers
+    * @return the estimated cost
+    */
+   private double estimateCost(File file, double fallback) {
+      double nanosPerByte = fallback;
+      String extension = FilenameUtils.getExtension(file.getName()).toLowerCase(Locale.ROOT);
+      String recognizer = recognizerByExtension.get(extension);
+      Timing timing = recognizer != null ? timings.get(recognizer) : null;
+      if (timing != null && timing.getNanosPerByte() > 0)
+         nanosPerByte = timing.getNanosPerByte();
+      // even empty files take some time
+      return (file.length() + 1) * (nanosPerByte > 0 ? nanosPerByte : 1);
+   }
+
+
+   /**
+    * Passes a result to the consumer, recording its failure.
+    *
+    * @param result the result
+    * @param results the consumer
+    * @param failure the first failure of any stage
+    */
+   private static void deliver(RecognitionResult result, Consumer<RecognitionResult> results,
+           AtomicReference<RuntimeException> failure) {
+      try {
+         results.accept(result);
+      } catch (Throwable e) {
+         fail(failure, e);
+      }
+   }
+
+
+   /**
+    * Records a failure of a stage, unless an earlier one was recorded.
+    * Throwables other than runtime exceptions are wrapped, so that
+    * {@link #recognize (Iterator, Consumer)} can throw them.
+    *
+    * @param failure the first failure of any stage
+    * @param e the failure
+    */
+   private static void fail(AtomicReference<RuntimeException> failure, Throwable e) {
+      failure.compareAndSet(null, e instanceof RuntimeException ? (RuntimeException) e
+              : new IllegalStateException("recognition failed: " + e, e));
+   }
+
+
+   /**
+    * An asynchronous read of a file: of the whole file if it is below the
+    * load threshold, of the header otherwise. Files that are memory-mapped
+    * serve their header from the mapping, so they are just opened. Once done,
+    * MIME type and XML root are fetched in the completion handler, like
+    * {@link BatchRecognizer#load (File)} does, and the source is queued for
+    * the recognizers, which give the permit back.
+    */
+   private final class AsynchronousRead implements CompletionHandler<Integer, ByteBuffer> {
+
+      /** the file. */
+      private final File file;
+
+      /** the permits of reads in flight. */
+      private final Semaphore inFlight;
+
+      /** receives what was read. */
+      private final BlockingQueue<RecognitionSource> sources;
+
+      /** receives the result if the file cannot be read. */
+      private final Consumer<RecognitionResult> results;
+
+      /** the first failure of any stage. */
+      private final AtomicReference<RuntimeException> failure;
+
+      /** set once the batch ended, so sources are not queued anymore. */
+      private final AtomicBoolean abandoned;
+
+      /** the channel, null until opened. */
+      private AsynchronousFileChannel channel;
+
+      /** whether the whole file is read. */
+      private boolean whole;
+
+      /** when the read started, in nanoseconds. */
+      private long started;
+
+
+      /**
+       * Instantiates a new read.
+       *
+       * @param file the file
+       * @param inFlight the permits of reads in flight, one is held
+       * @param sources receives what was read
+       * @param results receives the result if the file cannot be read
+       * @param failure the first failure of any stage
+       * @param abandoned set once the batch ended
+       */
+      AsynchronousRead(File file, Semaphore inFlight, BlockingQueue<RecognitionSource> sources,
+              Consumer<RecognitionResult> results, AtomicReference<RuntimeException> failure,
+              AtomicBoolean abandoned) {
+         this.file = file;
+         this.inFlight = inFlight;
+         this.sources = sources;
+         this.results = results;
+         this.failure = failure;
+         this.abandoned = abandoned;
+      }
+
+
+      /**
+       * Opens the file and starts reading.
+       *
+       * @param pool the pool running reads and completion handlers
+       */
+      void start(ExecutorService pool) {
+         started = System.nanoTime();
+         ByteBuffer buffer = null;
+         try {
+            long length = file.length();
+            if (length >= loadThreshold && length >= RecognitionSource.MAP_THRESHOLD) {
+               // the header would be served from the mapping anyway
+               pool.execute(() -> finish(null));
+               return;
+            }
+            channel = AsynchronousFileChannel.open(file.toPath(), Collections.singleton(StandardOpenOption.READ),
+                    pool);
+            long size = channel.size();
+            whole = size < loadThreshold && size <= Integer.MAX_VALUE;
+            buffer = ByteBuffer.allocate((int) (whole ? size : Math.min(size, RecognitionSource.DEFAULT_HEADER_SIZE)));
+            channel.read(buffer, 0, buffer, this);
+         } catch (IOException | RuntimeException e) {
+            failed(e, buffer);
+         }
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see java.nio.channels.CompletionHandler#completed(java.lang.Object, java.lang.Object)
+       */
+      @Override
+      public void completed(Integer read, ByteBuffer buffer) {
+         if (read >= 0 && buffer.hasRemaining()) {
+            try {
+               channel.read(buffer, buffer.position(), buffer, this);
+            } catch (Throwable e) {
+               failed(e, buffer);
+            }
+            return;
+         }
+         closeChannel();
+         buffer.flip();
+         finish(buffer);
+      }
+
+
+      /**
+       * Creates the source of what was read, fetches its MIME type and XML
+       * root, and queues it for the recognizers.
+       *
+       * @param buffer the file or its header, null if nothing was read
+       */
+      private void finish(ByteBuffer buffer) {
+         RecognitionSource source = null;
+         try {
+            if (whole) {
+               source = new RecognitionSource(file, buffer);
+            } else {
+               source = RecognitionSource.open(file);
+               if (buffer != null)
+                  source.setHeader(buffer);
+            }
+            // blocking I/O belongs here, not to the recognizers
+            if (source.getMimeType() != null) {
+               source.getHeader();
+               source.getXmlRoot();
+            }
+         } catch (IOException e) {
+            close(source);
+            failed(e, buffer);
+            return;
+         } catch (Throwable e) {
+            close(source);
+            fail(failure, e);
+            failed(e, buffer);
+            return;
+         }
+         reading.record(System.nanoTime() - started);
+         synchronized (sources) {
+            if (!abandoned.get()) {
+               sources.add(source);
+               return;
+            }
+         }
+         close(source);
+         inFlight.release();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see java.nio.channels.CompletionHandler#failed(java.lang.Throwable, java.lang.Object)
+       */
+      @Override
+      public void failed(Throwable e, ByteBuffer buffer) {
+         closeChannel();
+         LOGGER.debug("cannot read file {}: {}", file.getName(), e.getMessage());
+         deliver(new RecognitionResult(null, 0, null, file), results, failure);
+         inFlight.release();
+      }
+
+
+      /**
+       * Closes the channel quietly.
+       */
+      private void closeChannel() {
+         if (channel == null)
+            return;
+         try {
+            channel.close();
+         } catch (IOException e) {
+            LOGGER.debug("cannot close {}: {}", file.getName(), e.getMessage());
+         }
+      }
+   }
+
+
+   /**
+    * Closes a source quietly.
+    *
+    * @param source the source, may be null
+    */
+   private static void close(RecognitionSource source) {
+      if (source == null)
+         return;
+      try {
+         source.close();
+      } catch (IOException e) {
+         LOGGER.debug("cannot close {}: {}", source.getName(), e.getMessage());
+      }
+   }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * The policy used by the {@link Formatizer} unless configured otherwise.
+ *
+ * Files with one of the strict extensions are parsed by every recognizer; by
+ * default these are the {@link Formatizer#WELL_SUPPORT_FORMATS}. Such files
+ * are only sniffed if they are larger than the parse limit or the budget is
+ * used up. Of the remaining files images, audio and video are skipped, all
+ * others are sniffed.
+ */
+public class DefaultRecognitionPolicy extends RecognitionPolicy {
+
+   /** MIME types that never contain a model. */
+   private static final List<String> SKIPPED_MIME_PREFIXES = Arrays.asList("image/", "audio/", "video/");
+
+   /** extensions of files that get a strict parse. */
+   private final Collection<String> strictExtensions;
+
+   /** files larger than this are not parsed. */
+   private final long maxParseSize;
+
+   /** the budget charged for parsing. */
+   private final RecognitionBudget budget;
+
+
+   /**
+    * Instantiates the default policy, which parses files with one of the
+    * {@link Formatizer#WELL_SUPPORT_FORMATS} extensions without any limits.
+    */
+   @SuppressWarnings("deprecation")
+   public DefaultRecognitionPolicy() {
+      this(Formatizer.WELL_SUPPORT_FORMATS, Long.MAX_VALUE, RecognitionBudget.unlimited());
+   }
+
+
+   /**
+    * Instantiates a new policy.
+    *
+    * @param strictExtensions the extensions of files that get a strict parse,
+    *           without the dot; the collection is not copied
+    * @param maxParseSize files larger than this many bytes are only sniffed
+    * @param budget the budget charged for parsing
+    */
+   public DefaultRecognitionPolicy(Collection<String> strictExtensions, long maxParseSize, RecognitionBudget budget) {
+      this.strictExtensions = strictExtensions;
+      this.maxParseSize = maxParseSize;
+      this.budget = budget;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.RecognitionPolicy#decide(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public Tier decide(RecognitionSource source) {
+      if (strictExtensions.contains(source.getExtension())) {
+         if (source.getSize() > maxParseSize || !budget.allows(source.getSize()))
+            return Tier.SNIFF;
+         return Tier.STRICT_PARSE;
+      }
+
+      String mime = source.getMimeType();
+      if (mime != null) {
+         for (String prefix : SKIPPED_MIME_PREFIXES)
+            if (mime.startsWith(prefix))
+               return Tier.SKIP;
+      }
+      return Tier.SNIFF;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.RecognitionPolicy#spent(de.unirostock.sems.cbext.RecognitionSource, de.unirostock.sems.cbext.RecognitionPolicy.Tier, long)
+    */
+   @Override
+   public void spent(RecognitionSource source, Tier tier, long nanos) {
+      if (tier == Tier.QUICK_PARSE || tier == Tier.STRICT_PARSE)
+         budget.charge(source.getSize(), nanos);
+   }
+
+
+   /**
+    * Gets the budget charged for parsing.
+    *
+    * @return the budget
+    */
+   public RecognitionBudget getBudget() {
+      return budget;
+   }
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Peters <martin@freakybytes.net>
+ * - Martin Scharm <martin@binfalse.de>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.sniff.XmlRoot;
+import de.unirostock.sems.cbext.sniff.XmlRootScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+
+
+/**
+ * Instances of the class FormatRecognizer are unable to recognise the format of
+ * files.
+ * <p>
+ * They determine the formats by either
+ * <ul>
+ * <li>parsing the files: {@link #getFormatByParsing (java.io.File,
+ * java.lang.String)} or {@link #getFormatByParsing (RecognitionSource)}</li>
+ * <li>understanding a MIME-type: {@link #getFormatFromMime
+ * (java.lang.String)}</li>
+ * <li>recognising a file extension:
+ * {@link #getFormatFromExtension (java.lang.String)}</li>
+ * </ul>
+ * <p>
+ * If one of the methods fail to determine the format they must return
+ * <code>null</code>.
+ * <p>
+ * The priority determines the order we used to ask different recognizers.
+ * Default recognizers have a priority of 100.
+ * The first recognizer, which returns a valid format, determines the format to
+ * be used.
+ * If you ever need to change the priority of different recognizers you should
+ * resort the recognizers
+ * in the Formatizer class by calling {@link Formatizer#resortRecognizers()}.
+ * <p>
+ * Alternatively, {@link Formatizer#rankFormats (RecognitionSource)} asks every
+ * recognizer for its {@link #getConfidence (RecognitionSource)} and only parses
+ * the most promising candidates, independent of the priorities.
+ *
+ * @author Martin Scharm
+ */
+public abstract class FormatRecognizer {
+   private static Logger LOGGER = LoggerFactory.getLogger(FormatRecognizer.class);
+   /**
+    * identifiers.org base uri.
+    */
+   public static final String IDENTIFIERS_BASE = "https://identifiers.org/combine.specifications/";
+   /**
+    * purl.org base uri.
+    */
+   protected static final String PURL_BASE = "https://purl.org/NET/mediatypes/";
+
+   /**
+    * confidence of a recognizer that cannot tell without parsing the file.
+    */
+   public static final double UNDECIDED = 0.5;
+
+   /**
+    * Builds a URI as `start+end` without caring about an exception. Only use if
+    * you're sure it's not going to fail. If we cannot produce this URI, we're
+    * returning a default.
+    *
+    * @param pre        the start
+    * @param post       the end
+    * @param defaultUri the default URI
+    * @return the URI as pre+post
+    */
+   public static URI buildUri(String pre, String post, URI defaultUri) {
+      try {
+         return new URI(pre + post);
+      } catch (URISyntaxException e) {
+          LOGGER.error("wasn't able to create URI {}/{}", pre, post);
+      }
+      return defaultUri;
+   }
+
+   /**
+    * <p>
+    * Builds a URI as <code>start+end</code> without caring about an exception. Only use if
+    * you're sure it's not going to fail. If we cannot produce this URI, we're
+    * returning <code>null</code>.</p>
+    *
+    * @param pre  the start
+    * @param post the end
+    * @return the URI as start+end
+    */
+   public static URI buildUri(String pre, String post) {
+      return buildUri(pre, post, null);
+   }
+
+   /**
+    * Returns the priority of this format recognizer.
+    * <p>
+    * The higher the priority, the earlier this recognizer gets called.
+    * The first recognizer, which is able to identify a file, determines it's
+    * format.
+    * Priority should not be negative. Default recognizers have a priority around
+    * 100.
+    *
+    * @return an integer &gt; 0
+    */
+   public abstract int getPriority();
+
+   /**
+    * Returns the name of this format recognizer, which identifies it in
+    * statistics and caches. The default implementation returns the name of the
+    * class.
+    *
+    * @return the name
+    */
+   public String getName() {
+      return getClass().getName();
+   }
+
+   /**
+    * Parses the given file and tries to determine the format, such as purl.org
+    * or identifiers.org URI.
+    * <p>
+    * If the recognizer is unable to understand the file it must return
+    * <code>null</code>.
+    *
+    * @param file     Path to the file
+    * @param mimeType MIME type for quick evaluation.
+    * @return A format URI or null.
+    */
+   public abstract URI getFormatByParsing(File file, String mimeType);
+
+   /**
+    * Parses the given source and tries to determine the format.
+    * <p>
+    * The source is shared among all recognizers that look at the same file, so
+    * recognizers should read it through {@link RecognitionSource#newInputStream()}
+    * or {@link RecognitionSource#getHeader()} instead of opening the file again.
+    * The default implementation falls back to
+    * {@link #getFormatByParsing (java.io.File, java.lang.String)}.
+    * <p>
+    * If the recognizer is unable to understand the source it must return
+    * <code>null</code>.
+    *
+    * @param source the file to recognize
+    * @return A format URI or null.
+    */
+   public URI getFormatByParsing(RecognitionSource source) {
+      return getFormatByParsing(source.getFile(), source.getMimeType());
+   }
+
+   /**
+    * Determines the format from the header of the source alone, without
+    * parsing the file. The header usually tells the format only for XML
+    * documents whose root element carries all information, such as level and
+    * version (see {@link RecognitionSource#getXmlRoot()}).
+    * <p>
+    * Recognizers should only return a format here, if parsing the file would
+    * most likely yield the same. The default implementation returns
+    * <code>null</code>.
+    *
+    * @param source the file to recognize
+    * @return A format URI or null.
+    */
+   public URI getFormatBySniffing(RecognitionSource source) {
+      return null;
+   }
+
+   /**
+    * Estimates how likely the source is in a format understood by this
+    * recognizer, without parsing it. The estimate should only use cheap
+    * information, such as the file name or the root element of an XML
+    * document (see {@link RecognitionSource#getXmlRoot()}).
+    * <p>
+    * A confidence of 0 means the recognizer is sure it will not understand the
+    * source, so it will not be asked to parse it. The default implementation
+    * returns {@link #UNDECIDED}.
+    *
+    * @param source the file to recognize
+    * @return the confidence between 0 and 1
+    */
+   public double getConfidence(RecognitionSource source) {
+      return UNDECIDED;
+   }
+
+   /**
+    * Estimates the confidence from the root element of an XML document.
+    * <p>
+    * A file whose root element has a different name gets 0, one that also
+    * declares the expected namespace gets 1. If only the name matches, the
+    * confidence is a little below {@link #UNDECIDED}. If the root element is
+    * unknown, because it is beyond the scanned bytes, we are undecided.
+    *
+    * @param source the file to recognize
+    * @param localName the expected local name of the root element
+    * @param namespacePrefix the start of the expected namespace URI, declared
+    *           on the root element
+    * @return the confidence between 0 and 1
+    */
+   protected static double getRootConfidence(RecognitionSource source, String localName, String namespacePrefix) {
+      XmlRoot root = source.getXmlRoot();
+      if (root == null)
+         return source.getXmlRootResult() == XmlRootScanner.Result.NOT_XML ? 0 : UNDECIDED;
+      if (!root.getLocalName().equals(localName))
+         return 0;
+      return root.declaresNamespace(namespacePrefix) ? 1 : 0.4;
+   }
+
+   /**
+    * Gets a tiny document understood by this recognizer, which is parsed by
+    * {@link Formatizer#warmUp (java.util.concurrent.ExecutorService)} to load
+    * and initialise the libraries of the recognizer before the first real
+    * file arrives. The name of the sample should end with an extension typical
+    * for the format. The default implementation returns <code>null</code>,
+    * meaning there is nothing to warm up.
+    *
+    * @return the URL of the sample, or <code>null</code>
+    */
+   public URL getWarmUpSample() {
+      return null;
+   }
+
+   /**
+    * Tries to map the given mime type to a format.
+    * <p>
+    * If the recognizer is unable to understand the mime type it must return
+    * <code>null</code>.
+    *
+    * @param mime MIME type
+    * @return A format URI or null
+    */
+   public abstract URI getFormatFromMime(String mime);
+
+   /**
+    * Tries to map the given file extension to a format.
+    * <p>
+    * If the recognizer is unable to understand the extension it must return
+    * <code>null</code>.
+    *
+    * @param extension file extension
+    * @return A format URI or null
+    */
+   public abstract URI getFormatFromExtension(String extension);
+
+   /**
+    * Lists the file extensions that are understood by
+    * {@link #getFormatFromExtension (java.lang.String)}.
+    * <p>
+    * The {@link Formatizer} uses this list to build a lookup index, which
+    * answers extension queries without asking every recognizer again.
+    * Extensions that are not listed here still reach the recognizer, just not
+    * through the index.
+    *
+    * @return the known extensions, without the dot
+    */
+   public Collection<String> getKnownExtensions() {
+      return Collections.emptyList();
+   }
+
+}
@@ -0,0 +1,1337 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.cache.NegativeResultCache;
+import de.unirostock.sems.cbext.io.DirectorySpliterator;
+import de.unirostock.sems.cbext.recognizer.*;
+import de.unirostock.sems.cbext.sniff.ExtensionIndex;
+import de.unirostock.sems.cbext.sniff.Extensions;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * The Class Formatizer to generate format URIs for certain files.
+ *
+ * This class hosts a bunch of format recognizers (see {@link FormatRecognizer})
+ * which can recognize files and provide format URIs.
+ * By default, we can recognize SED-ML, BioPax, CellML, SBML, and SBOL.
+ * You can extend the default list by passing further FormatRecognizers to
+ * {@link #addFormatRecognizer (de.unirostock.sems.cbext.FormatRecognizer)}.
+ *
+ * To retrieve the format of a certain file you might
+ * <ul>
+ * <li>pass the file to {@link #guessFormat (java.io.File)}</li>
+ * <li>pass its mime type to {@link #getFormatFromMime (java.lang.String)}</li>
+ * <li>pass its extension to {@link #getFormatFromExtension (java.lang.String)}</li>
+ * </ul>
+ * The result will be a link to, e.g., purl.org or identifiers.org.
+ *
+ * Large files are parsed speculatively: all recognizers start at the same
+ * time on a shared pool (see {@link #setExecutor (ExecutorService)}), but the
+ * answer of a recognizer only counts once every recognizer of higher priority
+ * has given up. Thus, the result is the same as parsing one after the other.
+ *
+ * Instead of asking the recognizers in order of their priority, you may also
+ * {@link #rankFormats (RecognitionSource)}: every recognizer estimates its
+ * confidence without parsing, and only the most promising candidates parse
+ * the file.
+ *
+ * @author Martin Scharm
+ * @author Tung Nguyen
+ */
+public class Formatizer {
+   private static final Logger LOGGER = LoggerFactory.getLogger(Formatizer.class);
+
+   /** list of registered format recognizers. */
+   private static final List<FormatRecognizer> recognizerList = new ArrayList<>();
+
+   /** extensions of compressed files, which we do not try to parse. */
+   private static final Set<String> COMPRESSED_EXT = new HashSet<>(Arrays.asList("zip", "rar", "tgz", "tar", "bz2", "gz"));
+
+   /** index of the formats for all known extensions, rebuilt when the recognizers change. */
+   private static volatile ExtensionIndex<URI> extensionIndex;
+
+   /** files of at least this size are parsed by all recognizers concurrently, by default. */
+   public static final long DEFAULT_PARALLEL_THRESHOLD = RecognitionSource.MAP_THRESHOLD;
+
+   /** files of at least this size are parsed by all recognizers concurrently. */
+   private static volatile long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+   /** number of candidates parsed by {@link #rankFormats (RecognitionSource)}, by default. */
+   public static final int DEFAULT_CANDIDATES = 2;
+
+   /** statistics for adaptive ordering, null if disabled. */
+   private static volatile RecognizerStatistics statistics;
+
+   /** remembers failed parses, null if disabled. */
+   private static volatile NegativeResultCache negativeCache;
+
+   /** the pool running speculative recognitions, created on first use. */
+   private static ExecutorService executor;
+
+   /** the pool running asynchronous recognitions without a pool of their own, created on first use. */
+   private static ExecutorService asyncExecutor;
+   public static final String PURL_ORG_PREFIX = "https://purl.org/NET/mediatypes/";
+
+   /**
+    * Extensions of files that get parsed by the {@link DefaultRecognitionPolicy}.
+    *
+    * @deprecated install a {@link RecognitionPolicy} using
+    *             {@link #setPolicy (RecognitionPolicy)} instead
+    */
+   @Deprecated
+   public static final ArrayList<String> WELL_SUPPORT_FORMATS = new ArrayList<String>() {{
+      add("sbml");
+      add("sed-ml");
+      add("sedml");
+      add("sbgn");
+      add("omex");
+      add("cellml");
+      add("owl");
+      add("xml");
+   }};
+
+   static {
+      String defaultUri = Formatizer.PURL_ORG_PREFIX + "application/x.unknown";
+      try {
+         GENERIC_UNKNOWN = new URI(defaultUri);
+      } catch (URISyntaxException e) {
+         e.printStackTrace();
+         LOGGER.error("when generating generic default uri {}, there has been an error {}", defaultUri, e.getMessage());
+      }
+
+      // add default recognizers
+      addDefaultRecognizers();
+   }
+
+   /** decides how much effort is spent on a file. */
+   private static volatile RecognitionPolicy policy = new DefaultRecognitionPolicy();
+
+   /** The generic unknown format URI. */
+   public static URI GENERIC_UNKNOWN;
+
+
+   /**
+    * Adds another recognizer to the formatizer.
+    *
+    * @param recognizer
+    *          the recognizer that considers more formats
+    */
+   public static void addFormatRecognizer(FormatRecognizer recognizer) {
+      if (recognizer == null)
+         throw new IllegalArgumentException(
+                 "The formatizer is not allowed to be null.");
+
+      recognizerList.add(recognizer);
+      resortRecognizers();
+   }
+
+
+   /**
+    * Add all default recognizers to the list of recognizers.
+    *
+    * The core library knows SBML and a default recognizer, the modules
+    * CombineExt-sedml, -biopax, -cellml, -sbgn and -sbol add recognizers for
+    * SED-ML, BioPax, CellML, SBGN and SBOL as soon as they are on the class
+    * path.
+    * <p>
+    * The recognizers are found through the {@link RecognizerDescriptor}s
+    * registered with the {@link ServiceLoader}, and are only loaded once a
+    * file needs them (see {@link LazyRecognizer}). The default recognizer is
+    * always added last, so the specific recognizers win for extensions they
+    * share. If no descriptor can be found, e.g. because the service files were
+    * stripped from the class path, the core recognizers are created right
+    * away.
+    */
+   public static void addDefaultRecognizers() {
+      int found = 0;
+      RecognizerDescriptor fallback = null;
+      try {
+         for (RecognizerDescriptor descriptor : ServiceLoader.load(RecognizerDescriptor.class,
+                 Formatizer.class.getClassLoader())) {
+            if (descriptor instanceof DefaultRecognizer.Descriptor)
+               fallback = descriptor;
+            else
+               recognizerList.add(new LazyRecognizer(descriptor));
+            found++;
+         }
+      } catch (ServiceConfigurationError e) {
+         LOGGER.error("cannot load recognizer descriptors: {}", e.getMessage());
+      }
+      if (found > 0) {
+         if (fallback != null)
+            recognizerList.add(new LazyRecognizer(fallback));
+         resortRecognizers();
+         return;
+      }
+
+      recognizerList.add(new SbmlRecognizer());
+      recognizerList.add(new DefaultRecognizer());
+      resortRecognizers();
+   }
+
+
+   /**
+    * Remove all recognizers that we know so far.
+    */
+   public static void removeRecognizers() {
+      recognizerList.clear();
+      extensionIndex = null;
+   }
+
+
+   /**
+    * Resort known format recognizers.
+    *
+    * Must be called if the priorities of recognizers are modified.
+    */
+   public static void resortRecognizers() {
+      recognizerList.sort(new RecognizerComparator());
+      extensionIndex = null;
+   }
+
+
+   /**
+    * Guess format given a file.
+    *
+    * @param file
+    *          the file
+    * @return the format
+    */
+   public static URI guessFormat(File file) {
+      if (file == null || !file.isFile())
+         return null;
+
+      try (RecognitionSource source = RecognitionSource.open(file)) {
+         return guessFormatFromSource(source);
+      } catch (IOException e) {
+         LOGGER.debug("cannot read file {}: {}", file.getName(), e.getMessage());
+         return null;
+      }
+   }
+
+   /**
+    * Guess format given a recognition source.
+    *
+    * All recognizers share the source, so the file is opened only once no
+    * matter how many recognizers need to look into it. The method is not an
+    * overload of {@link #guessFormat (File)}, so <code>guessFormat(null)</code>
+    * stays unambiguous. How deep the
+    * recognizers look is decided by the {@link #getPolicy() policy}.
+    *
+    * @param source
+    *          the source
+    * @return the format
+    * @see #recognize (RecognitionSource)
+    */
+   public static URI guessFormatFromSource(RecognitionSource source) {
+      RecognitionResult result = recognize(source);
+      return result != null ? result.getFormat() : null;
+   }
+
+   /**
+    * Recognizes the format of a source just like
+    * {@link #guessFormatFromSource (RecognitionSource)}, but also tells which
+    * recognizer identified the format. The confidence of the result is 1 if a
+    * recognizer identified the format, and 0 if the format was derived from
+    * the file name or MIME type.
+    *
+    * @param source
+    *          the source
+    * @return the result, or null if the source is null or its MIME type cannot
+    *         be determined
+    */
+   public static RecognitionResult recognize(RecognitionSource source) {
+      return recognize(source, true);
+   }
+
+
+   /**
+    * Recognizes the format of a source just like
+    * {@link #recognize (RecognitionSource)}, but optionally parses large
+    * files on the calling thread only. Callers that bound their own
+    * parallelism, like the {@link BatchRecognizer}, must not fan out onto
+    * the {@link #getExecutor() shared pool}.
+    *
+    * @param source
+    *          the source
+    * @param speculative
+    *          whether large files may be parsed speculatively
+    * @return the result, or null if the source is null or its MIME type cannot
+    *         be determined
+    */
+   static RecognitionResult recognize(RecognitionSource source, boolean speculative) {
+      if (source == null)
+         return null;
+
+      String mime = source.getMimeType();
+      if (mime == null) {
+          LOGGER.debug("cannot guess the format of file {}", source.getName());
+         return null;
+      }
+      String extension = source.getExtension();
+      if (COMPRESSED_EXT.contains(extension)) {
+         try {
+            return new RecognitionResult(new URI(Formatizer.PURL_ORG_PREFIX + mime), 0, null, source.getFile());
+         } catch (URISyntaxException e) {
+            LOGGER.debug("An error happened when trying to create an URI");
+         }
+      }
+
+      RecognitionPolicy.Tier tier = policy.decide(source);
+      long start = System.nanoTime();
+      RecognitionResult result = null;
+      switch (tier) {
+         case STRICT_PARSE:
+            result = guessFormatByParsing(new ArrayList<>(recognizerList), source, speculative);
+            break;
+         case QUICK_PARSE:
+            result = guessFormatBySniffing(source);
+            if (result == null) {
+               List<FormatRecognizer> candidates = new ArrayList<>();
+               for (FormatRecognizer recognizer : recognizerList)
+                  if (recognizer.getConfidence(source) > 0)
+                     candidates.add(recognizer);
+               result = guessFormatByParsing(candidates, source, speculative);
+            }
+            break;
+         case SNIFF:
+            result = guessFormatBySniffing(source);
+            break;
+         default:
+            // do not look into the file
+            break;
+      }
+      policy.spent(source, tier, System.nanoTime() - start);
+
+      if (source.isCancelled()) {
+         LOGGER.debug("recognition of {} was cancelled", source.getName());
+         return null;
+      }
+      if (result != null) {
+         // found a format, do nothing
+          LOGGER.debug("found {}", result.getFormat());
+      } else {
+         // ok, parsing failed. let's still try to guess a format using file extensions or mimes.
+         URI fallback = guessFormatUsingFileMimeOrExtension(source.getFile(), mime);
+         result = fallback != null ? new RecognitionResult(fallback, 0, null, source.getFile()) : null;
+      }
+       return result;
+   }
+
+   /**
+    * Recognizes all files below a directory, lazily: files are found while
+    * the stream is consumed, so the file list is never held in memory. The
+    * stream is sequential; call {@link Stream#parallel()} to recognize
+    * several files at once, as the directory tree is split into subtrees
+    * that fork-join workers can steal. Symbolic links are not followed.
+    *
+    * Every file gets a result; its format is null if the file cannot be
+    * read. Close the stream if it is not consumed completely, so all
+    * directories are closed.
+    *
+    * @param root
+    *          the directory, or a single file
+    * @return the results, in no particular order when parallel
+    * @see DirectorySpliterator
+    */
+   public static Stream<RecognitionResult> recognizeAll(Path root) {
+      DirectorySpliterator files = new DirectorySpliterator(root);
+      return StreamSupport.stream(files, false).onClose(files::close).map(Formatizer::recognizeFile);
+   }
+
+   /**
+    * Recognizes a file for {@link #recognizeAll (Path)}.
+    *
+    * @param path
+    *          the file
+    * @return the result, with a null format if the file cannot be read
+    */
+   private static RecognitionResult recognizeFile(Path path) {
+      File file = path.toFile();
+      try (RecognitionSource source = RecognitionSource.open(file)) {
+         RecognitionResult result = recognize(source);
+         if (result != null)
+            return result;
+      } catch (IOException e) {
+         LOGGER.debug("cannot read file {}: {}", file.getName(), e.getMessage());
+      }
+      return new RecognitionResult(null, 0, null, file);
+   }
+
+   /**
+    * Guesses the format of a file on the given executor, so the caller's
+    * thread never blocks on I/O or parsing. Cancelling the returned future
+    * cancels the {@link RecognitionSource}: the running recognizer fails on
+    * its next read and no further recognizers are asked.
+    *
+    * Do not pass the pool of {@link #setExecutor (ExecutorService)}, as the
+    * speculative parsing of large files waits for that pool.
+    *
+    * @param file
+    *          the file
+    * @param executor
+    *          the executor doing the work
+    * @return the future format, null if the file cannot be read, just like
+    *         {@link #guessFormat (File)}
+    */
+   public static CompletableFuture<URI> guessFormatAsync(File file, Executor executor) {
+      return supplyAsync(file, null, null, executor, result -> result != null ? result.getFormat() : null);
+   }
+
+   /**
+    * Guesses the format of a file asynchronously on a shared pool, which
+    * uses virtual threads on Java 21 and later (see
+    * {@link RecognitionExecutors}).
+    *
+    * @param file
+    *          the file
+    * @return the future format, null if the file cannot be read
+    * @see #guessFormatAsync (File, Executor)
+    */
+   public static CompletableFuture<URI> guessFormatAsync(File file) {
+      return guessFormatAsync(file, getAsyncExecutor());
+   }
+
+   /**
+    * Recognizes a file on the given executor, just like
+    * {@link #guessFormatAsync (File, Executor)}, but also tells which
+    * recognizer identified the format.
+    *
+    * @param file
+    *          the file
+    * @param executor
+    *          the executor doing the work
+    * @return the future result, null if the file cannot be read
+    * @see #recognize (RecognitionSource)
+    */
+   public static CompletableFuture<RecognitionResult> recognizeAsync(File file, Executor executor) {
+      return supplyAsync(file, null, null, executor, result -> result);
+   }
+
+   /**
+    * Recognizes a file asynchronously on a shared pool, which uses virtual
+    * threads on Java 21 and later (see {@link RecognitionExecutors}).
+    *
+    * @param file
+    *          the file
+    * @return the future result, null if the file cannot be read
+    * @see #recognizeAsync (File, Executor)
+    */
+   public static CompletableFuture<RecognitionResult> recognizeAsync(File file) {
+      return recognizeAsync(file, getAsyncExecutor());
+   }
+
+   /**
+    * Guesses the format of a stream on the given executor. The stream is
+    * copied to a temporary file, as the recognizers need to read it several
+    * times, and closed. Cancelling the returned future stops the copying or
+    * the recognition.
+    *
+    * @param stream
+    *          the stream
+    * @param name
+    *          the name of the file, providing its extension, or null
+    * @param executor
+    *          the executor doing the work
+    * @return the future format, null if the stream cannot be read
+    * @see #guessFormatAsync (File, Executor)
+    */
+   public static CompletableFuture<URI> guessFormatAsync(InputStream stream, String name, Executor executor) {
+      if (stream == null)
+         throw new IllegalArgumentException("The stream is not allowed to be null.");
+      return supplyAsync(null, stream, name, executor, result -> result != null ? result.getFormat() : null);
+   }
+
+   /**
+    * Recognizes a stream on the given executor, just like
+    * {@link #guessFormatAsync (InputStream, String, Executor)}, but also
+    * tells which recognizer identified the format. The file of the result
+    * is the temporary copy, which is deleted by then.
+    *
+    * @param stream
+    *          the stream
+    * @param name
+    *          the name of the file, providing its extension, or null
+    * @param executor
+    *          the executor doing the work
+    * @return the future result, null if the stream cannot be read
+    */
+   public static CompletableFuture<RecognitionResult> recognizeAsync(InputStream stream, String name,
+           Executor executor) {
+      if (stream == null)
+         throw new IllegalArgumentException("The stream is not allowed to be null.");
+      return supplyAsync(null, stream, name, executor, result -> result);
+   }
+
+   /**
+    * Recognizes a file or a stream on an executor, cancelling the source if
+    * the future is cancelled.
+    *
+    * @param file
+    *          the file, or null if a stream is given
+    * @param stream
+    *          the stream, or null if a file is given
+    * @param name
+    *          the name of the stream, or null
+    * @param executor
+    *          the executor doing the work
+    * @param answer
+    *          turns the result, which is null if the input cannot be read,
+    *          into the answer
+    * @return the future answer
+    */
+   private static <T> CompletableFuture<T> supplyAsync(File file, InputStream stream, String name,
+           Executor executor, Function<RecognitionResult, T> answer) {
+      if (executor == null)
+         throw new IllegalArgumentException("The executor is not allowed to be null.");
+      CompletableFuture<T> future = new CompletableFuture<>();
+      AtomicReference<RecognitionSource> running = new AtomicReference<>();
+      future.whenComplete((value, e) -> {
+         RecognitionSource source = running.get();
+         if (future.isCancelled() && source != null)
+            source.cancel();
+      });
+
+      Runnable task = () -> {
+         File input = file;
+         try {
+            if (stream != null)
+               input = copyToTemporaryFile(stream, name, future);
+            if (future.isDone())
+               return;
+            if (input == null || !input.isFile()) {
+               future.complete(answer.apply(null));
+               return;
+            }
+            try (RecognitionSource source = RecognitionSource.open(input)) {
+               running.set(source);
+               if (future.isCancelled())
+                  source.cancel();
+               future.complete(answer.apply(recognize(source)));
+            }
+         } catch (IOException e) {
+            if (!future.isDone())
+               LOGGER.debug("cannot read {}: {}", input != null ? input.getName() : name, e.getMessage());
+            future.complete(answer.apply(null));
+         } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+         } finally {
+            if (stream != null && input != null && !input.delete())
+               input.deleteOnExit();
+         }
+      };
+      try {
+         executor.execute(task);
+      } catch (RejectedExecutionException e) {
+         future.completeExceptionally(e);
+      }
+      return future;
+   }
+
+   /**
+    * Copies a stream to a temporary file and closes the stream. Gives up
+    * when the future is cancelled.
+    *
+    * @param stream
+    *          the stream
+    * @param name
+    *          the name of the stream, providing the extension, or null
+    * @param future
+    *          the future waiting for the recognition
+    * @return the temporary file
+    * @throws IOException
+    *           if the stream cannot be copied
+    */
+   private static File copyToTemporaryFile(InputStream stream, String name, CompletableFuture<?> future)
+           throws IOException {
+      String extension = name != null ? FilenameUtils.getExtension(name) : null;
+      File copy = File.createTempFile("combineext-stream", extension != null && !extension.isEmpty()
+              ? "." + extension : null);
+      try (InputStream in = stream; OutputStream out = Files.newOutputStream(copy.toPath())) {
+         byte[] buffer = new byte[8192];
+         for (int read = in.read(buffer); read >= 0 && !future.isDone(); read = in.read(buffer))
+            out.write(buffer, 0, read);
+      } catch (IOException e) {
+         copy.delete();
+         throw e;
+      }
+      return copy;
+   }
+
+   /**
+    * Asks the recognizers to sniff the source, in order of their priority.
+    *
+    * @param source
+    *          the source
+    * @return the result, or null if no recognizer can tell from the header
+    */
+   static RecognitionResult guessFormatBySniffing(RecognitionSource source) {
+      return guessFormatBySniffing(source, true);
+   }
+
+
+   /**
+    * Asks the recognizers to sniff the source, in order of their priority.
+    * Without loading, recognizers that were not {@link LazyRecognizer created}
+    * yet are not asked: sniffing gives up at the first of them that may
+    * understand the source, so a result is the same as with loading.
+    *
+    * @param source
+    *          the source
+    * @param load
+    *          whether recognizers may be created
+    * @return the result, or null if no recognizer can tell from the header
+    */
+   static RecognitionResult guessFormatBySniffing(RecognitionSource source, boolean load) {
+      for (FormatRecognizer recognizer : recognizerList) {
+         if (source.isCancelled())
+            return null;
+         if (!load && recognizer instanceof LazyRecognizer && !((LazyRecognizer) recognizer).isMaterialized()) {
+            if (((LazyRecognizer) recognizer).mayUnderstand(source))
+               return null;
+            continue;
+         }
+         URI format = recognizer.getFormatBySniffing(source);
+         if (format != null)
+            return new RecognitionResult(format, 1, unwrap(recognizer), source.getFile());
+      }
+      return null;
+   }
+
+
+   /**
+    * Lets the recognizers parse the source. Unless disabled, large files are
+    * parsed speculatively, see {@link #guessFormatSpeculatively (List,
+    * RecognitionSource, RecognizerStatistics, String)}. If adaptive ordering
+    * is enabled, recognizers of equal priority are asked in the order that is
+    * expected to find the format fastest.
+    *
+    * @param recognizers
+    *          the recognizers, sorted by priority
+    * @param source
+    *          the source
+    * @param speculative
+    *          whether large files may be parsed speculatively
+    * @return the result of the first recognizer that understands the source
+    */
+   private static RecognitionResult guessFormatByParsing(List<FormatRecognizer> recognizers, RecognitionSource source,
+           boolean speculative) {
+      RecognizerStatistics stats = statistics;
+      String bucket = null;
+      if (stats != null) {
+         bucket = RecognizerStatistics.bucket(source);
+         recognizers = stats.order(bucket, recognizers);
+      }
+
+      if (speculative && source.getSize() >= parallelThreshold && recognizers.size() > 1)
+         return guessFormatSpeculatively(recognizers, source, stats, bucket);
+      for (FormatRecognizer recognizer : recognizers) {
+         if (source.isCancelled())
+            return null;
+         URI format = parse(recognizer, source, stats, bucket, null);
+         if (format != null)
+            return new RecognitionResult(format, 1, unwrap(recognizer), source.getFile());
+      }
+      return null;
+   }
+
+
+   /**
+    * Lets a recognizer parse the source, recording the outcome if adaptive
+    * ordering is enabled. Recognizers that are known to fail on the contents
+    * are skipped, if the negative result cache is enabled.
+    *
+    * @param recognizer
+    *          the recognizer
+    * @param source
+    *          the source
+    * @param stats
+    *          the statistics to update, or null
+    * @param bucket
+    *          the bucket of the source
+    * @param abandoned
+    *          the flag of a speculative parse, or null; once it is set, the
+    *          outcome is not recorded
+    * @return the format or null
+    */
+   private static URI parse(FormatRecognizer recognizer, RecognitionSource source, RecognizerStatistics stats,
+           String bucket, AtomicBoolean abandoned) {
+      NegativeResultCache cache = negativeCache;
+      try {
+         if (cache != null && cache.isKnownFailure(recognizer, source))
+            return null;
+      } catch (IOException e) {
+         LOGGER.debug("cannot hash file {}: {}", source.getName(), e.getMessage());
+         cache = null;
+      }
+
+      if (isGivenUp(source, abandoned))
+         return null;
+
+      URI format;
+      if (stats == null) {
+         format = RecognitionExecutors.parse(() -> recognizer.getFormatByParsing(source));
+      } else {
+         long start = System.nanoTime();
+         format = RecognitionExecutors.parse(() -> recognizer.getFormatByParsing(source));
+         if (!isGivenUp(source, abandoned))
+            stats.record(bucket, recognizer, format != null, System.nanoTime() - start);
+      }
+
+      // a cancelled or abandoned recognizer did not really fail
+      if (format == null && cache != null && !isGivenUp(source, abandoned)) {
+         try {
+            cache.recordFailure(recognizer, source);
+         } catch (IOException e) {
+            LOGGER.debug("cannot hash file {}: {}", source.getName(), e.getMessage());
+         }
+      }
+      return format;
+   }
+
+
+   /**
+    * Checks whether the recognition of a source was cancelled, or a
+    * speculative parse of it abandoned.
+    *
+    * @param source
+    *          the source
+    * @param abandoned
+    *          the flag of a speculative parse, or null
+    * @return true, if the outcome of parsing does not count
+    */
+   private static boolean isGivenUp(RecognitionSource source, AtomicBoolean abandoned) {
+      return source.isCancelled() || (abandoned != null && abandoned.get());
+   }
+
+
+   /**
+    * Ranks the formats of a source by the confidence of the recognizers,
+    * parsing the {@link #DEFAULT_CANDIDATES} most promising candidates.
+    *
+    * @param source
+    *          the source
+    * @return the recognized formats, most confident first
+    * @see #rankFormats (RecognitionSource, int)
+    */
+   public static List<RecognitionResult> rankFormats(RecognitionSource source) {
+      return rankFormats(source, DEFAULT_CANDIDATES);
+   }
+
+
+   /**
+    * Ranks the formats of a source by the confidence of the recognizers.
+    *
+    * First, all recognizers estimate their confidence concurrently (see
+    * {@link FormatRecognizer#getConfidence (RecognitionSource)}). Then, the
+    * given number of most confident recognizers parse the source, again
+    * concurrently. Recognizers of equal confidence are ordered by priority.
+    * As every recognizer is judged by its own answer, the result does not
+    * depend on the order the recognizers run in, and files that might be
+    * understood by several recognizers, such as RDF documents, end up with the
+    * recognizer that is most sure about them.
+    *
+    * If no candidate recognizes the source, the list contains the format
+    * derived from the file name or MIME type with a confidence of 0 and no
+    * recognizer. Other than {@link #guessFormatFromSource (RecognitionSource)} this
+    * method parses files of every extension.
+    *
+    * @param source
+    *          the source
+    * @param candidates
+    *          the maximum number of recognizers that parse the source
+    * @return the recognized formats, most confident first; empty if the
+    *         source is null or its MIME type cannot be determined
+    */
+   public static List<RecognitionResult> rankFormats(RecognitionSource source, int candidates) {
+      List<RecognitionResult> results = new ArrayList<>();
+      if (source == null)
+         return results;
+
+      String mime = source.getMimeType();
+      if (mime == null) {
+         LOGGER.debug("cannot rank the formats of file {}", source.getName());
+         return results;
+      }
+
+      URI fallback = null;
+      if (COMPRESSED_EXT.contains(source.getExtension())) {
+         fallback = FormatRecognizer.buildUri(PURL_ORG_PREFIX, mime);
+      } else {
+         List<FormatRecognizer> recognizers = new ArrayList<>(recognizerList);
+         List<Callable<Double>> sniffs = new ArrayList<>(recognizers.size());
+         for (FormatRecognizer recognizer : recognizers)
+            sniffs.add(() -> recognizer.getConfidence(source));
+         List<Double> confidences = runAll(sniffs);
+
+         // stable sort, so equal confidences stay in order of priority
+         List<Integer> ranking = new ArrayList<>();
+         for (int i = 0; i < recognizers.size(); i++)
+            if (confidences.get(i) != null && confidences.get(i) > 0)
+               ranking.add(i);
+         ranking.sort((a, b) -> Double.compare(confidences.get(b), confidences.get(a)));
+         if (ranking.size() > candidates)
+            ranking = ranking.subList(0, Math.max(0, candidates));
+
+         List<Callable<URI>> parses = new ArrayList<>(ranking.size());
+         for (int i : ranking)
+            parses.add(() -> parse(recognizers.get(i), source, null, null, null));
+         List<URI> formats = runAll(parses);
+         for (int i = 0; i < ranking.size(); i++) {
+            if (formats.get(i) != null)
+               results.add(new RecognitionResult(formats.get(i), confidences.get(ranking.get(i)),
+                       unwrap(recognizers.get(ranking.get(i))), source.getFile()));
+         }
+      }
+
+      if (results.isEmpty()) {
+         if (fallback == null)
+            fallback = guessFormatUsingFileMimeOrExtension(source.getFile(), mime);
+         results.add(new RecognitionResult(fallback, 0, null, source.getFile()));
+      }
+      return results;
+   }
+
+
+   /**
+    * Gets the recognizer behind a {@link LazyRecognizer}, so callers see the
+    * recognizer that actually did the work.
+    *
+    * @param recognizer
+    *          the recognizer
+    * @return the actual recognizer
+    */
+   private static FormatRecognizer unwrap(FormatRecognizer recognizer) {
+      if (recognizer instanceof LazyRecognizer)
+         return ((LazyRecognizer) recognizer).getRecognizer();
+      return recognizer;
+   }
+
+
+   /**
+    * Runs the tasks concurrently on the shared pool and waits for all of
+    * them. A task that fails contributes <code>null</code>.
+    *
+    * @param tasks
+    *          the tasks
+    * @return the results of the tasks, in order of the tasks
+    */
+   private static <T> List<T> runAll(List<Callable<T>> tasks) {
+      List<T> results = new ArrayList<>(tasks.size());
+      if (tasks.size() == 1) {
+         // not worth a context switch
+         try {
+            results.add(tasks.get(0).call());
+         } catch (Exception e) {
+            LOGGER.debug("recognizer failed: {}", e.toString());
+            results.add(null);
+         }
+         return results;
+      }
+
+      List<Future<T>> futures;
+      try {
+         futures = getExecutor().invokeAll(tasks);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         futures = Collections.emptyList();
+      }
+      for (Future<T> future : futures) {
+         try {
+            results.add(future.get());
+         } catch (ExecutionException | InterruptedException | CancellationException e) {
+            LOGGER.debug("recognizer failed: {}", e.toString());
+            results.add(null);
+         }
+      }
+      while (results.size() < tasks.size())
+         results.add(null);
+      return results;
+   }
+
+
+   /**
+    * Lets all recognizers parse the source concurrently and returns the
+    * answer of the recognizer with the highest priority, that is the answer
+    * sequential parsing would have produced. We wait for the recognizers in
+    * order of their priority; as soon as one of them recognizes the file, the
+    * remaining ones are cancelled.
+    *
+    * Recognizers that are already running are not interrupted, as an
+    * interrupt would close the channel shared through the source. They are
+    * abandoned instead: their reads of the source fail, their outcome is
+    * neither recorded in the statistics nor in the negative result cache, and
+    * the source keeps its channel and header until they have returned.
+    *
+    * @param recognizers
+    *          the recognizers, sorted by priority
+    * @param source
+    *          the source
+    * @param stats
+    *          the statistics to update, or null
+    * @param bucket
+    *          the bucket of the source
+    * @return the result, or null if no recognizer understood the file
+    */
+   private static RecognitionResult guessFormatSpeculatively(List<FormatRecognizer> recognizers, RecognitionSource source,
+           RecognizerStatistics stats, String bucket) {
+      ExecutorService pool = getExecutor();
+      List<Future<URI>> pending = new ArrayList<>(recognizers.size());
+      List<AtomicBoolean> abandoned = new ArrayList<>(recognizers.size());
+      int next = 0;
+      try {
+         for (FormatRecognizer recognizer : recognizers) {
+            AtomicBoolean flag = new AtomicBoolean();
+            source.retain();
+            try {
+               pending.add(pool.submit(() -> source.runAbandonable(
+                       () -> parse(recognizer, source, stats, bucket, flag), flag)));
+            } catch (RejectedExecutionException e) {
+               releaseQuietly(source);
+               throw e;
+            }
+            abandoned.add(flag);
+         }
+
+         while (next < pending.size() && !source.isCancelled()) {
+            URI format;
+            try {
+               format = pending.get(next++).get();
+            } catch (ExecutionException e) {
+               // the recognizer would have thrown in sequential mode, too
+               if (e.getCause() instanceof RuntimeException)
+                  throw (RuntimeException) e.getCause();
+               if (e.getCause() instanceof Error)
+                  throw (Error) e.getCause();
+               throw new IllegalStateException(e.getCause());
+            }
+            if (format != null)
+               return new RecognitionResult(format, 1, unwrap(recognizers.get(next - 1)), source.getFile());
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } finally {
+         for (int i = next; i < pending.size(); i++) {
+            abandoned.get(i).set(true);
+            // a task that never starts does not release the source itself
+            if (pending.get(i).cancel(false))
+               releaseQuietly(source);
+         }
+      }
+      return null;
+   }
+
+
+   /**
+    * Releases a source for a speculative task.
+    *
+    * @param source
+    *          the source
+    */
+   private static void releaseQuietly(RecognitionSource source) {
+      try {
+         source.release();
+      } catch (IOException e) {
+         LOGGER.debug("cannot close file {}: {}", source.getName(), e.getMessage());
+      }
+   }
+
+
+   /**
+    * Sets the policy deciding how much effort is spent on a file.
+    *
+    * @param newPolicy
+    *          the policy, or null to go back to the
+    *          {@link DefaultRecognitionPolicy}
+    */
+   public static void setPolicy(RecognitionPolicy newPolicy) {
+      policy = newPolicy == null ? new DefaultRecognitionPolicy() : newPolicy;
+   }
+
+
+   /**
+    * Gets the policy deciding how much effort is spent on a file.
+    *
+    * @return the policy
+    */
+   public static RecognitionPolicy getPolicy() {
+      return policy;
+   }
+
+
+   /**
+    * Enables or disables adaptive ordering of recognizers.
+    *
+    * If enabled, the formatizer records how often and how fast each
+    * recognizer recognizes files of a certain extension and MIME type, and
+    * asks recognizers of equal priority in the order that is expected to find
+    * the format fastest. For example, in a corpus of SBML models stored as
+    * <code>.xml</code> the SBML recognizer quickly moves to the front. Explicit
+    * priorities are always respected.
+    *
+    * @param enabled
+    *          true to enable adaptive ordering; disabling drops the statistics
+    * @see #getStatistics()
+    */
+   public static synchronized void setAdaptiveOrdering(boolean enabled) {
+      if (!enabled)
+         statistics = null;
+      else if (statistics == null)
+         statistics = new RecognizerStatistics();
+   }
+
+
+   /**
+    * Gets the statistics used for adaptive ordering. Export them with
+    * {@link RecognizerStatistics#toProperties()} and load them into a new
+    * process with {@link RecognizerStatistics#load (Properties)} to start
+    * warm.
+    *
+    * @return the statistics, or null if adaptive ordering is disabled
+    */
+   public static RecognizerStatistics getStatistics() {
+      return statistics;
+   }
+
+
+   /**
+    * Sets the cache remembering which recognizers failed on which contents.
+    * With a cache, scanning a file again or a duplicate upload skips the
+    * recognizers that failed before and goes straight to the one that matches
+    * or to the fallback by extension and MIME type. Note that the cache needs
+    * the content hash of every parsed file.
+    *
+    * @param cache
+    *          the cache, or null to disable it
+    */
+   public static void setNegativeCache(NegativeResultCache cache) {
+      negativeCache = cache;
+   }
+
+
+   /**
+    * Gets the cache remembering which recognizers failed on which contents.
+    *
+    * @return the cache, or null if disabled
+    */
+   public static NegativeResultCache getNegativeCache() {
+      return negativeCache;
+   }
+
+
+   /**
+    * Sets the size from which on files are parsed by all recognizers
+    * concurrently. Smaller files are parsed by one recognizer after the
+    * other, as the overhead of the pool outweighs the gain.
+    *
+    * @param bytes
+    *          the threshold in bytes, {@link Long#MAX_VALUE} disables
+    *          speculative parsing
+    */
+   public static void setParallelThreshold(long bytes) {
+      parallelThreshold = bytes;
+   }
+
+
+   /**
+    * Gets the size from which on files are parsed by all recognizers
+    * concurrently.
+    *
+    * @return the threshold in bytes
+    */
+   public static long getParallelThreshold() {
+      return parallelThreshold;
+   }
+
+
+   /**
+    * Sets the pool that runs speculative recognitions. The pool is shared by
+    * all concurrent calls to {@link #guessFormatFromSource (RecognitionSource)}; it is
+    * not shut down by the formatizer.
+    *
+    * @param pool
+    *          the pool, or null to go back to the default pool
+    */
+   public static synchronized void setExecutor(ExecutorService pool) {
+      executor = pool;
+   }
+
+
+   /**
+    * Gets the pool that runs speculative recognitions. Unless set using
+    * {@link #setExecutor (ExecutorService)}, this is a pool of daemon threads,
+    * two per processor as recognizers spend part of their time waiting for
+    * the disk; on Java 21 and later, as many virtual threads (see
+    * {@link RecognitionExecutors}).
+    *
+    * @return the pool
+    */
+   public static synchronized ExecutorService getExecutor() {
+      if (executor == null)
+         executor = RecognitionExecutors.newExecutor(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()),
+                 "combineext-recognizer");
+      return executor;
+   }
+
+
+   /**
+    * Gets the pool that runs asynchronous recognitions if the caller does
+    * not give one. It is separate from the {@link #getExecutor() speculative
+    * pool}, which asynchronous recognitions may wait for. On Java 21 and
+    * later, every recognition gets its own virtual thread, so any number of
+    * files may wait for the disk, while their parsing is bounded by the
+    * processors; on Java 8, it is a pool of two threads per processor.
+    *
+    * @return the pool
+    */
+   private static synchronized ExecutorService getAsyncExecutor() {
+      if (asyncExecutor == null)
+         asyncExecutor = RecognitionExecutors.newPerTaskExecutor(
+                 Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), "combineext-async");
+      return asyncExecutor;
+   }
+
+
+   /**
+    * Warms up all registered recognizers in the background.
+    * <p>
+    * The first recognition of a format usually takes much longer than the
+    * following ones: the recognizer's library is loaded, JAXB contexts and
+    * schemas are built, and the JIT has not seen the code yet. To move this
+    * off the first request, every recognizer parses its
+    * {@link FormatRecognizer#getWarmUpSample() sample document} on the pool.
+    * Warm-up does not count for the {@link #getStatistics() statistics} or the
+    * {@link #getNegativeCache() negative cache}.
+    * <p>
+    * The returned future completes when all recognizers are warm, or
+    * exceptionally if one of them failed.
+    *
+    * @param pool
+    *          the pool to run the warm-up on, or <code>null</code> for the
+    *          {@link #getExecutor() shared pool}
+    * @return the future telling when the recognizers are ready
+    */
+   public static CompletableFuture<Void> warmUp(ExecutorService pool) {
+      ExecutorService runner = pool != null ? pool : getExecutor();
+      List<FormatRecognizer> recognizers = new ArrayList<>(recognizerList);
+      CompletableFuture<?>[] tasks = new CompletableFuture<?>[recognizers.size()];
+      for (int i = 0; i < tasks.length; i++) {
+         FormatRecognizer recognizer = recognizers.get(i);
+         tasks[i] = CompletableFuture.runAsync(() -> warmUp(recognizer), runner);
+      }
+      return CompletableFuture.allOf(tasks);
+   }
+
+
+   /**
+    * Warms up a single recognizer by letting it parse its sample.
+    *
+    * @param recognizer
+    *          the recognizer
+    */
+   private static void warmUp(FormatRecognizer recognizer) {
+      URL sample = recognizer.getWarmUpSample();
+      if (sample == null)
+         return;
+
+      String name = sample.getPath();
+      int dot = name.lastIndexOf('.');
+      File file = null;
+      try {
+         file = File.createTempFile("combineext-warmup-",
+                 dot > name.lastIndexOf('/') ? name.substring(dot) : null);
+         try (InputStream in = sample.openStream()) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         }
+         long start = System.nanoTime();
+         try (RecognitionSource source = RecognitionSource.open(file)) {
+            recognizer.getConfidence(source);
+            if (recognizer.getFormatByParsing(source) == null)
+               LOGGER.warn("recognizer {} does not recognize its warm-up sample {}", recognizer.getName(), sample);
+         }
+         LOGGER.debug("warmed up {} in {} ms", recognizer.getName(), (System.nanoTime() - start) / 1000000);
+      } catch (IOException e) {
+         throw new UncheckedIOException("cannot warm up " + recognizer.getName(), e);
+      } finally {
+         if (file != null && !file.delete())
+            file.deleteOnExit();
+      }
+   }
+
+   /**
+    * Gets the format given a mime type.
+    *
+    * @param mime
+    *          a String object denoting the mime type
+    * @return an {@link URI} object as the format
+    */
+   public static URI getFormatFromMime(String mime) {
+      if (mime == null)
+         return GENERIC_UNKNOWN;
+
+      URI format = null;
+      for (FormatRecognizer recognizer : recognizerList) {
+         if ((format = recognizer.getFormatFromMime(mime)) != null)
+            break;
+      }
+
+      if (format != null)
+         return format;
+      else if ("content/unknown" != mime) {
+         return FormatRecognizer.buildUri(PURL_ORG_PREFIX, mime, GENERIC_UNKNOWN);
+      } else {
+         return GENERIC_UNKNOWN;
+      }
+   }
+
+
+   /**
+    * Gets the format given a file extension.
+    *
+    * @param extension
+    *          a String object indicating the file extension
+    * @return the format
+    */
+   public static URI getFormatFromExtension(String extension) {
+      if (extension == null)
+         return GENERIC_UNKNOWN;
+
+      URI format = null;
+      for (FormatRecognizer recognizer : recognizerList) {
+         if ((format = recognizer.getFormatFromExtension(extension)) != null)
+            break;
+      }
+
+      if (format != null)
+         return format;
+      else
+         return GENERIC_UNKNOWN;
+   }
+
+   /**
+    * Gets the format given a file name, using the extension of that name.
+    *
+    * This is equivalent to passing the extension to
+    * {@link #getFormatFromExtension (java.lang.String)}, but extensions known
+    * to the registered recognizers (see
+    * {@link FormatRecognizer#getKnownExtensions()}) are served from an index
+    * without creating any objects.
+    *
+    * @param name
+    *          the file name or path
+    * @return the format, {@link #GENERIC_UNKNOWN} if the name has no extension
+    */
+   public static URI getFormatFromFileName(CharSequence name) {
+      int start = Extensions.extensionStart(name);
+      if (start < 0)
+         return GENERIC_UNKNOWN;
+
+      ExtensionIndex<URI> index = getExtensionIndex();
+      if (index.contains(name, start, name.length()))
+         return index.get(name, start, name.length());
+      return getFormatFromExtension(name.subSequence(start, name.length()).toString());
+   }
+
+
+   /**
+    * Gets the index of all extensions the registered recognizers know about.
+    * The index is built on first use and dropped whenever the list of
+    * recognizers changes.
+    *
+    * @return the extension index
+    */
+   private static ExtensionIndex<URI> getExtensionIndex() {
+      ExtensionIndex<URI> index = extensionIndex;
+      if (index == null) {
+         Map<String, URI> formats = new HashMap<>();
+         for (FormatRecognizer recognizer : recognizerList) {
+            for (String extension : recognizer.getKnownExtensions()) {
+               if (!formats.containsKey(extension))
+                  formats.put(extension, getFormatFromExtension(extension));
+            }
+         }
+         extensionIndex = index = new ExtensionIndex<>(formats);
+      }
+      return index;
+   }
+
+   /**
+    * Comparator for list of Recognizers.
+    */
+   private static class RecognizerComparator
+           implements Comparator<FormatRecognizer> {
+
+      /**
+       * (non-Javadoc)
+       *
+       * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+       */
+      @Override
+      public int compare(FormatRecognizer o1, FormatRecognizer o2) {
+         return o2.getPriority() - o1.getPriority();
+      }
+
+   }
+
+   static URI guessFormatUsingFileMimeOrExtension(final File file, final String mime) {
+      URI format = null;
+      String name = file.getName();
+      int dot = name.lastIndexOf(".");
+      if (dot > 0) {
+         format = getFormatFromFileName(name);
+      }
+      if (null == format || format.equals(GENERIC_UNKNOWN)) {
+         // guessing via the file extension still failed, try to map mime-type
+         format = getFormatFromMime(mime);
+      }
+      return format;
+   }
+}
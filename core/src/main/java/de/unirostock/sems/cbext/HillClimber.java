@@ -0,0 +1,114 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+
+/**
+ * Finds the number of threads giving the highest throughput by trying: after
+ * every move it is given the throughput before and after it. If it got
+ * better, the next move goes the same way; if it got worse, the climber turns
+ * around. If it stayed about the same, the climber tries fewer threads, which
+ * are cheaper. Thus, the number of threads settles around the point where
+ * adding threads stops paying off, and follows it if the workload changes.
+ */
+final class HillClimber {
+
+   /** changes of the throughput below this fraction are taken as noise. */
+   static final double NOISE = 0.05;
+
+   /** the smallest number of threads. */
+   private final int min;
+
+   /** the largest number of threads. */
+   private final int max;
+
+   /** the current number of threads. */
+   private int level;
+
+   /** the direction of the last move, +1 or -1. */
+   private int direction = 1;
+
+
+   /**
+    * Instantiates a new climber.
+    *
+    * @param min the smallest number of threads, at least 1
+    * @param max the largest number of threads
+    * @param start the number of threads to start with
+    */
+   HillClimber(int min, int max, int start) {
+      if (min < 1 || max < min)
+         throw new IllegalArgumentException("Invalid bounds " + min + ".." + max + ".");
+      this.min = min;
+      this.max = max;
+      this.level = clamp(start);
+   }
+
+
+   /**
+    * Gets the current number of threads.
+    *
+    * @return the number of threads
+    */
+   int getLevel() {
+      return level;
+   }
+
+
+   /**
+    * Judges the last move by the throughput measured right before and right
+    * after it, and chooses the direction of the next move.
+    *
+    * @param before the throughput before the last move
+    * @param after the throughput after the last move
+    */
+   void credit(double before, double after) {
+      if (after < before * (1 - NOISE))
+         direction = -direction;
+      else if (after <= before * (1 + NOISE))
+         direction = -1;
+   }
+
+
+   /**
+    * Moves one thread in the current direction, turning around at the
+    * bounds.
+    *
+    * @return the new number of threads
+    */
+   int move() {
+      if (level + direction < min || level + direction > max)
+         direction = -direction;
+      level = clamp(level + direction);
+      return level;
+   }
+
+
+   /**
+    * Keeps a number of threads within the bounds.
+    *
+    * @param threads the number of threads
+    * @return the number within the bounds
+    */
+   private int clamp(int threads) {
+      return Math.max(min, Math.min(max, threads));
+   }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.util.Collection;
+
+
+/**
+ * A recognizer that is registered by its {@link RecognizerDescriptor} and
+ * only creates the actual recognizer once a file needs it.
+ * <p>
+ * Questions the descriptor can answer, such as whether an extension is known
+ * or whether the root element of an XML document is claimed, never load the
+ * recognizer. Everything else is delegated.
+ */
+public class LazyRecognizer extends FormatRecognizer {
+
+   /** the descriptor. */
+   private final RecognizerDescriptor descriptor;
+
+   /** the recognizer, once it is created. */
+   private volatile FormatRecognizer recognizer;
+
+
+   /**
+    * Instantiates a new lazy recognizer.
+    *
+    * @param descriptor the descriptor of the recognizer
+    */
+   public LazyRecognizer(RecognizerDescriptor descriptor) {
+      if (descriptor == null)
+         throw new IllegalArgumentException("The descriptor is not allowed to be null.");
+      this.descriptor = descriptor;
+   }
+
+
+   /**
+    * Gets the descriptor.
+    *
+    * @return the descriptor
+    */
+   public RecognizerDescriptor getDescriptor() {
+      return descriptor;
+   }
+
+
+   /**
+    * Checks whether the actual recognizer has been created.
+    *
+    * @return true, if it has been created
+    */
+   public boolean isMaterialized() {
+      return recognizer != null;
+   }
+
+
+   /**
+    * Gets the actual recognizer, creating it if necessary.
+    *
+    * @return the recognizer
+    */
+   public FormatRecognizer getRecognizer() {
+      FormatRecognizer result = recognizer;
+      if (result == null) {
+         synchronized (this) {
+            result = recognizer;
+            if (result == null) {
+               result = descriptor.createRecognizer();
+               if (result == null)
+                  throw new IllegalStateException("descriptor " + descriptor + " did not create a recognizer");
+               recognizer = result;
+            }
+         }
+      }
+      return result;
+   }
+
+
+   /**
+    * Checks whether the recognizer may understand the source, based on the
+    * root elements claimed by the descriptor.
+    *
+    * @param source the file to recognize
+    * @return false, if the source certainly has a root element not claimed
+    */
+   boolean mayUnderstand(RecognitionSource source) {
+      Collection<String> roots = descriptor.getRootElements();
+      if (roots == null || roots.isEmpty())
+         return true;
+      for (String root : roots) {
+         if (source.mayHaveRoot(root))
+            return true;
+      }
+      return false;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getPriority()
+    */
+   @Override
+   public int getPriority() {
+      return descriptor.getPriority();
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getName()
+    */
+   @Override
+   public String getName() {
+      return descriptor.getName();
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatByParsing(java.io.File,
+    * java.lang.String)
+    */
+   @Override
+   public URI getFormatByParsing(File file, String mimeType) {
+      return getRecognizer().getFormatByParsing(file, mimeType);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatByParsing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatByParsing(RecognitionSource source) {
+      if (!mayUnderstand(source))
+         return null;
+      return getRecognizer().getFormatByParsing(source);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatBySniffing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatBySniffing(RecognitionSource source) {
+      if (!mayUnderstand(source))
+         return null;
+      return getRecognizer().getFormatBySniffing(source);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getConfidence(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public double getConfidence(RecognitionSource source) {
+      if (!mayUnderstand(source))
+         return 0;
+      return getRecognizer().getConfidence(source);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getWarmUpSample()
+    */
+   @Override
+   public URL getWarmUpSample() {
+      return getRecognizer().getWarmUpSample();
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatFromMime(java.lang.String)
+    */
+   @Override
+   public URI getFormatFromMime(String mime) {
+      Collection<String> known = descriptor.getKnownMimeTypes();
+      if (known != null && (mime == null || !known.contains(mime)))
+         return null;
+      return getRecognizer().getFormatFromMime(mime);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatFromExtension(java.lang.String)
+    */
+   @Override
+   public URI getFormatFromExtension(String extension) {
+      Collection<String> known = descriptor.getKnownExtensions();
+      if (known != null && (extension == null || !known.contains(extension)))
+         return null;
+      return getRecognizer().getFormatFromExtension(extension);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getKnownExtensions()
+    */
+   @Override
+   public Collection<String> getKnownExtensions() {
+      Collection<String> known = descriptor.getKnownExtensions();
+      return known != null ? known : getRecognizer().getKnownExtensions();
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString() {
+      return "lazy " + descriptor.getName() + (isMaterialized() ? "" : " (not loaded)");
+   }
+}
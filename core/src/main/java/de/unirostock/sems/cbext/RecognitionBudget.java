@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A budget for parsing a batch of files, limiting the number of bytes parsed
+ * and the time spent on it.
+ *
+ * The {@link DefaultRecognitionPolicy} charges every parsed file to its
+ * budget; once the budget is used up, remaining files are only sniffed. Use
+ * one budget per batch, it can be shared by concurrent recognitions.
+ */
+public class RecognitionBudget {
+
+   /** the maximum number of bytes to parse. */
+   private final long maxBytes;
+
+   /** the maximum time to spend, in nanoseconds. */
+   private final long maxNanos;
+
+   /** the bytes parsed so far. */
+   private final AtomicLong bytes = new AtomicLong();
+
+   /** the time spent so far, in nanoseconds. */
+   private final AtomicLong nanos = new AtomicLong();
+
+
+   /**
+    * Instantiates a new budget.
+    *
+    * @param maxBytes the maximum number of bytes to parse
+    * @param maxNanos the maximum time to spend, in nanoseconds
+    */
+   public RecognitionBudget(long maxBytes, long maxNanos) {
+      this.maxBytes = maxBytes;
+      this.maxNanos = maxNanos;
+   }
+
+
+   /**
+    * Creates a budget without limits.
+    *
+    * @return the budget
+    */
+   public static RecognitionBudget unlimited() {
+      return new RecognitionBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+   }
+
+
+   /**
+    * Checks whether the budget still allows to parse a certain number of
+    * bytes.
+    *
+    * @param size the number of bytes to parse
+    * @return true, if neither bytes nor time are used up
+    */
+   public boolean allows(long size) {
+      return bytes.get() <= maxBytes - size && nanos.get() < maxNanos;
+   }
+
+
+   /**
+    * Charges parsed bytes and time to the budget.
+    *
+    * @param size the number of bytes parsed
+    * @param time the time spent, in nanoseconds
+    */
+   public void charge(long size, long time) {
+      bytes.addAndGet(size);
+      nanos.addAndGet(time);
+   }
+
+
+   /**
+    * Gets the number of bytes parsed so far.
+    *
+    * @return the bytes spent
+    */
+   public long getBytesSpent() {
+      return bytes.get();
+   }
+
+
+   /**
+    * Gets the time spent so far.
+    *
+    * @return the time spent, in nanoseconds
+    */
+   public long getNanosSpent() {
+      return nanos.get();
+   }
+}
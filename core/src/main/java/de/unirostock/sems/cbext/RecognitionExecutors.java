@@ -0,0 +1,131 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+
+/**
+ * Creates the threads that recognize files.
+ *
+ * This is the variant for Java 8, which uses pools of platform threads. The
+ * jar is a multi-release jar: on Java 21 and later, the variant in
+ * <code>src/main/java21</code> is used instead, which runs the tasks in
+ * virtual threads, so recognitions waiting for slow (e.g. network) file
+ * systems cost next to nothing, and additionally bounds the number of
+ * recognizers parsing at the same time.
+ */
+public final class RecognitionExecutors {
+
+   private RecognitionExecutors() {
+      // utility class
+   }
+
+
+   /**
+    * Checks whether recognitions run in virtual threads.
+    *
+    * @return false, Java 8 has no virtual threads
+    */
+   public static boolean hasVirtualThreads() {
+      return false;
+   }
+
+
+   /**
+    * Gets the number of files that should be recognized at once, if the
+    * caller does not know better.
+    *
+    * @return the number of processors
+    */
+   public static int getDefaultConcurrency() {
+      return Runtime.getRuntime().availableProcessors();
+   }
+
+
+   /**
+    * Creates an executor recognizing files: a fixed pool of daemon threads.
+    *
+    * @param threads the number of threads
+    * @param name the prefix of the thread names
+    * @return the executor
+    */
+   public static ExecutorService newExecutor(int threads, String name) {
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newFixedThreadPool(threads, runnable -> {
+         Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+
+   /**
+    * Creates an executor for tasks that mostly wait for the disk. Platform
+    * threads are too expensive to start one per task, so this is the same
+    * fixed pool as {@link #newExecutor (int, String)}.
+    *
+    * @param threads the number of threads
+    * @param name the prefix of the thread names
+    * @return the executor
+    */
+   public static ExecutorService newPerTaskExecutor(int threads, String name) {
+      return newExecutor(threads, name);
+   }
+
+
+   /**
+    * Runs a recognizer's parsing. With platform threads the pools already
+    * bound how many recognizers parse at once, so it just runs.
+    *
+    * @param parsing the parsing
+    * @return the result of the parsing
+    */
+   static <T> T parse(Supplier<T> parsing) {
+      return parsing.get();
+   }
+
+
+   /**
+    * Called before the current thread blocks on the disk. The pools bound
+    * the threads, not the parsers, so there is nothing to give back.
+    *
+    * @return false
+    */
+   static boolean beginBlocking() {
+      return false;
+   }
+
+
+   /**
+    * Called after the current thread has read from the disk.
+    *
+    * @param released ignored
+    * @throws InterruptedIOException never
+    */
+   static void endBlocking(boolean released) throws InterruptedIOException {
+      // nothing was given back
+   }
+}
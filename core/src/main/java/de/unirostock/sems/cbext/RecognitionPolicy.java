@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+
+/**
+ * Decides how much effort the {@link Formatizer} spends on recognizing a file.
+ *
+ * For every file the policy picks one of the {@link Tier}s, from skipping
+ * the contents altogether to a strict parse by every recognizer. The
+ * decision may be based on anything the {@link RecognitionSource} knows
+ * cheaply, such as extension, MIME type and size, and on how much has
+ * already been spent, see {@link #spent (RecognitionSource, Tier, long)}.
+ *
+ * Install a policy using {@link Formatizer#setPolicy (RecognitionPolicy)}.
+ * Policies are shared by concurrent recognitions, so they must be
+ * thread-safe.
+ */
+public abstract class RecognitionPolicy {
+
+   /**
+    * How much effort is spent on a file, in increasing order of cost.
+    */
+   public enum Tier {
+      /** do not look into the file, derive the format from name and MIME type. */
+      SKIP,
+      /** only ask the recognizers to sniff the header, see {@link FormatRecognizer#getFormatBySniffing (RecognitionSource)}. */
+      SNIFF,
+      /** sniff, then let the recognizers parse the file that consider it possible. */
+      QUICK_PARSE,
+      /** let every recognizer parse the file, in order of priority. */
+      STRICT_PARSE
+   }
+
+
+   /**
+    * Decides the tier for a file.
+    *
+    * @param source the file to recognize
+    * @return the tier
+    */
+   public abstract Tier decide(RecognitionSource source);
+
+
+   /**
+    * Reports the effort spent on a file, after it was recognized. Policies
+    * that work with a budget may charge it here. The default implementation
+    * does nothing.
+    *
+    * @param source the file that was recognized
+    * @param tier the tier that was run
+    * @param nanos the time spent on sniffing and parsing, in nanoseconds
+    */
+   public void spent(RecognitionSource source, Tier tier, long nanos) {
+      // nothing to do
+   }
+}
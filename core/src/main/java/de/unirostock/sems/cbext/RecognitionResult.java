@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.io.File;
+import java.net.URI;
+
+
+/**
+ * A format that was recognized for a file, together with the recognizer's
+ * confidence and the recognizer itself.
+ *
+ * Results are produced by {@link Formatizer#rankFormats (RecognitionSource)},
+ * which returns them ordered by confidence.
+ */
+public class RecognitionResult {
+
+   /** the format. */
+   private final URI format;
+
+   /** the confidence between 0 and 1. */
+   private final double confidence;
+
+   /** the recognizer, null if the format was derived from name or MIME type. */
+   private final FormatRecognizer recognizer;
+
+   /** the file, null if not known. */
+   private final File file;
+
+
+   /**
+    * Instantiates a new recognition result.
+    *
+    * @param format the format
+    * @param confidence the confidence between 0 and 1
+    * @param recognizer the recognizer that recognized the format, or
+    *           <code>null</code> if the format was derived from the file name
+    *           or MIME type
+    */
+   public RecognitionResult(URI format, double confidence, FormatRecognizer recognizer) {
+      this(format, confidence, recognizer, null);
+   }
+
+
+   /**
+    * Instantiates a new recognition result for a file.
+    *
+    * @param format the format
+    * @param confidence the confidence between 0 and 1
+    * @param recognizer the recognizer that recognized the format, or
+    *           <code>null</code> if the format was derived from the file name
+    *           or MIME type
+    * @param file the file that was recognized
+    */
+   public RecognitionResult(URI format, double confidence, FormatRecognizer recognizer, File file) {
+      this.format = format;
+      this.confidence = confidence;
+      this.recognizer = recognizer;
+      this.file = file;
+   }
+
+
+   /**
+    * Gets the format.
+    *
+    * @return the format
+    */
+   public URI getFormat() {
+      return format;
+   }
+
+
+   /**
+    * Gets the confidence the recognizer had before parsing the file.
+    *
+    * @return the confidence between 0 and 1
+    */
+   public double getConfidence() {
+      return confidence;
+   }
+
+
+   /**
+    * Gets the recognizer that recognized the format.
+    *
+    * @return the recognizer, or <code>null</code> if the format was derived
+    *         from the file name or MIME type
+    */
+   public FormatRecognizer getRecognizer() {
+      return recognizer;
+   }
+
+
+   /**
+    * Gets the file that was recognized.
+    *
+    * @return the file, or <code>null</code> if not known
+    */
+   public File getFile() {
+      return file;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString() {
+      return format + " (" + confidence + ", "
+              + (recognizer == null ? "fallback" : recognizer.getClass().getSimpleName()) + ")";
+   }
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.sniff.XmlRootScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Recognizes a file while it arrives, e.g. an upload, without waiting for
+ * the end of it.
+ *
+ * The bytes are passed to {@link #feed(ByteBuffer)} chunk by chunk. The
+ * session keeps the first {@link RecognitionSource#ROOT_SCAN_LIMIT} bytes
+ * and looks for the root element with an {@link XmlRootScanner} whenever a
+ * chunk may have completed its start tag. As soon as the root element is
+ * found, the bytes turn out not to be XML, or the limit is reached, the
+ * recognizers {@link FormatRecognizer#getFormatBySniffing (RecognitionSource)
+ * sniff} what was kept. If they agree on a format, the session is decided
+ * right away; further chunks are just counted.
+ *
+ * The early decision is a hint only, e.g. to show a preliminary icon.
+ * {@link #finish(File)} recognizes the stored file as usual, unless the
+ * {@link Formatizer#getPolicy() policy} would only sniff it anyway, so the
+ * final result is the one of {@link Formatizer#recognize(RecognitionSource)}.
+ * Without the stored file, {@link #finish()} keeps the hint, or derives the
+ * format from name and MIME type with a confidence of 0.
+ *
+ * Feeding never blocks on I/O, so sessions may be fed from event loops. In
+ * particular, only recognizers that were already created are asked; call
+ * {@link Formatizer#warmUp (java.util.concurrent.ExecutorService)} to have
+ * all of them ready. A session is meant for a single file and is
+ * thread-safe.
+ */
+public class RecognitionSession {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(RecognitionSession.class);
+
+   /** the MIME type assumed for XML documents without a declared type. */
+   private static final String XML_MIME = "application/xml";
+
+   /** the MIME type assumed for other files without a declared type. */
+   private static final String BINARY_MIME = "application/octet-stream";
+
+   /** the file being recognized, used for its name only. */
+   private final File file;
+
+   /** the declared MIME type, or null. */
+   private final String mimeType;
+
+   /** the first bytes, null once the recognizers sniffed them. */
+   private ByteBuffer kept;
+
+   /** finds the root element in the kept bytes. */
+   private final XmlRootScanner scanner = new XmlRootScanner();
+
+   /** the number of bytes fed. */
+   private long bytesFed;
+
+   /** whether the end of the file was reached. */
+   private boolean finished;
+
+   /** the decision, null while undecided. */
+   private RecognitionResult result;
+
+
+   /**
+    * Starts a session for a file.
+    *
+    * @param name the name of the file, which should carry its extension
+    * @param mimeType the declared MIME type, e.g. the content type of an
+    *           upload, or null to assume XML or binary contents
+    */
+   public RecognitionSession(String name, String mimeType) {
+      if (name == null)
+         throw new IllegalArgumentException("The name is not allowed to be null.");
+      this.file = new File(name);
+      this.mimeType = mimeType;
+      this.kept = ByteBuffer.allocate(1024);
+   }
+
+
+   /**
+    * Feeds the next bytes of the file, from position to limit of the chunk.
+    * The chunk is consumed, i.e. its position is moved to its limit.
+    *
+    * @param chunk the bytes
+    * @return the decision, or null while the session is undecided
+    * @throws IllegalStateException if the session was finished
+    */
+   public synchronized RecognitionResult feed(ByteBuffer chunk) {
+      if (finished)
+         throw new IllegalStateException("The session of " + file.getName() + " is finished.");
+      int length = chunk.remaining();
+      bytesFed += length;
+      if (kept == null) {
+         chunk.position(chunk.limit());
+         return result;
+      }
+
+      boolean mayCompleteTag = bytesFed == length;
+      ByteBuffer keep = chunk.duplicate();
+      keep.limit(keep.position() + (int) Math.min(length, RecognitionSource.ROOT_SCAN_LIMIT - kept.position()));
+      for (int i = keep.position(); i < keep.limit() && !mayCompleteTag; i++)
+         mayCompleteTag = keep.get(i) == '>';
+      keep(keep);
+      chunk.position(chunk.limit());
+
+      boolean full = kept.position() >= RecognitionSource.ROOT_SCAN_LIMIT;
+      if ((mayCompleteTag || full) && (scan() != XmlRootScanner.Result.INCOMPLETE || full)) {
+         // the recognizers will not see more than this
+         sniff();
+         kept = null;
+      }
+      return result;
+   }
+
+
+   /**
+    * Ends the file and decides, if not done yet, by name and MIME type.
+    *
+    * @return the decision, or null if no format can be derived at all
+    */
+   public synchronized RecognitionResult finish() {
+      if (!finished) {
+         finished = true;
+         kept = null;
+         if (result == null) {
+            URI format = Formatizer.guessFormatUsingFileMimeOrExtension(file, getMimeType());
+            result = format != null ? new RecognitionResult(format, 0, null, file) : null;
+         }
+      }
+      return result;
+   }
+
+
+   /**
+    * Ends the file and recognizes it where it was stored. The early decision
+    * is kept only if the policy would not do more than sniffing.
+    *
+    * @param stored the complete file, e.g. a temporary copy of an upload
+    * @return the decision, see {@link Formatizer#recognize(RecognitionSource)}
+    * @throws IOException if the file cannot be read
+    */
+   public synchronized RecognitionResult finish(File stored) throws IOException {
+      if (!finished) {
+         try (RecognitionSource source = RecognitionSource.open(stored)) {
+            if (mimeType != null)
+               source.setMimeType(mimeType);
+            if (result == null
+                    || Formatizer.getPolicy().decide(source).compareTo(RecognitionPolicy.Tier.SNIFF) > 0)
+               result = Formatizer.recognize(source);
+         }
+      }
+      return finish();
+   }
+
+
+   /**
+    * Gets the decision.
+    *
+    * @return the decision, or null while undecided
+    */
+   public synchronized RecognitionResult getResult() {
+      return result;
+   }
+
+
+   /**
+    * Checks whether the session has decided on a format.
+    *
+    * @return true, if the format is known
+    */
+   public synchronized boolean isDecided() {
+      return result != null;
+   }
+
+
+   /**
+    * Gets the number of bytes fed so far.
+    *
+    * @return the number of bytes
+    */
+   public synchronized long getBytesFed() {
+      return bytesFed;
+   }
+
+
+   /**
+    * Appends bytes to the kept ones, growing the buffer as needed.
+    *
+    * @param bytes the bytes
+    */
+   private void keep(ByteBuffer bytes) {
+      if (kept.remaining() < bytes.remaining()) {
+         int capacity = Math.max(kept.position() + bytes.remaining(), 2 * kept.capacity());
+         ByteBuffer grown = ByteBuffer.allocate(Math.min(capacity, RecognitionSource.ROOT_SCAN_LIMIT));
+         kept.flip();
+         grown.put(kept);
+         kept = grown;
+      }
+      kept.put(bytes);
+   }
+
+
+   /**
+    * Lets the recognizers sniff the kept bytes.
+    */
+   private void sniff() {
+      RecognitionSource source = newSource();
+      try {
+         result = Formatizer.guessFormatBySniffing(source, false);
+      } finally {
+         close(source);
+      }
+      if (result != null)
+         LOGGER.debug("recognized {} as {} after {} bytes", file.getName(), result.getFormat(), bytesFed);
+   }
+
+
+   /**
+    * Creates a source serving the kept bytes from memory.
+    *
+    * @return the source
+    */
+   private RecognitionSource newSource() {
+      ByteBuffer bytes = kept.duplicate();
+      bytes.flip();
+      RecognitionSource source = new RecognitionSource(file, bytes);
+      source.setMimeType(getMimeType());
+      return source;
+   }
+
+
+   /**
+    * Scans the kept bytes for the root element.
+    *
+    * @return the result of the scan
+    */
+   private XmlRootScanner.Result scan() {
+      ByteBuffer bytes = kept.duplicate();
+      bytes.flip();
+      return scanner.scan(bytes);
+   }
+
+
+   /**
+    * Closes a source, which returns its header to the pool.
+    *
+    * @param source the source
+    */
+   private static void close(RecognitionSource source) {
+      try {
+         source.close();
+      } catch (IOException e) {
+         // the bytes are in memory, there is nothing that may fail
+      }
+   }
+
+
+   /**
+    * Gets the MIME type of the file: the declared one, or a guess from the
+    * root element.
+    *
+    * @return the MIME type
+    */
+   private String getMimeType() {
+      if (mimeType != null)
+         return mimeType;
+      return scanner.getResult() == XmlRootScanner.Result.FOUND ? XML_MIME : BINARY_MIME;
+   }
+}
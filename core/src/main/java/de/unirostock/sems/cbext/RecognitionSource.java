@@ -0,0 +1,818 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import de.unirostock.sems.cbext.io.BufferPool;
+import de.unirostock.sems.cbext.io.HeaderWindow;
+import de.unirostock.sems.cbext.sniff.Extensions;
+import de.unirostock.sems.cbext.sniff.XmlRoot;
+import de.unirostock.sems.cbext.sniff.XmlRootScanner;
+import net.biomodels.jummp.utils.MimeTypeChecker;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A file that is about to be recognized.
+ *
+ * The source opens the file exactly once and shares that handle with every
+ * stage of the recognition pipeline: the MIME detection, the header sniffing
+ * and all the recognizers asking for the contents. Everything that is derived
+ * from the file (MIME type, header bytes, hash) is computed lazily and only
+ * once, no matter how many recognizers ask for it.
+ *
+ * Streams obtained through {@link #newInputStream()} read through the shared
+ * channel using absolute positions, thus, several streams can be used at the
+ * same time without interfering with each other. Files of at least
+ * {@link #MAP_THRESHOLD} bytes are memory-mapped instead (see
+ * {@link HeaderWindow}), so header and streams are served from the page cache.
+ * Sources created by {@link #load(File)} hold the whole file in memory
+ * instead, so recognizers never wait for the disk.
+ *
+ * Always close the source when you are done with it:
+ *
+ * <pre>
+ * try (RecognitionSource source = RecognitionSource.open (file)) {
+ *    URI format = Formatizer.guessFormatFromSource (source);
+ * }
+ * </pre>
+ */
+public class RecognitionSource implements Closeable {
+
+   /** number of bytes we read for the header. */
+   public static final int DEFAULT_HEADER_SIZE = 8192;
+
+   /** files of at least this size are memory-mapped instead of read. */
+   public static final long MAP_THRESHOLD = 1024 * 1024;
+
+   /** the algorithm used to compute the content hash. */
+   public static final String HASH_ALGORITHM = "SHA-256";
+
+   /** size of the buffer used to compute the hash. */
+   private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+   /** number of bytes we scan at most to find the root element of XML files. */
+   public static final int ROOT_SCAN_LIMIT = 64 * 1024;
+
+   /** pool of direct buffers holding the headers of open sources. */
+   private static final BufferPool HEADER_POOL = new BufferPool(DEFAULT_HEADER_SIZE,
+           Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+   /** the scanners for XML root elements, one per thread as they keep state. */
+   private static final ThreadLocal<XmlRootScanner> SCANNERS = ThreadLocal.withInitial(XmlRootScanner::new);
+
+   /** the flag of the speculative task running in this thread, see {@link #runAbandonable}. */
+   private static final ThreadLocal<AtomicBoolean> ABANDONED = new ThreadLocal<AtomicBoolean>();
+
+   /** the file. */
+   private final File file;
+
+   /** the only channel that is ever opened for this file, null if loaded into memory. */
+   private final FileChannel channel;
+
+   /** the contents of the file, if loaded into memory. */
+   private final ByteBuffer contents;
+
+   /** the size of the file at the time it was opened. */
+   private final long size;
+
+   /** the extension of the file name, if already extracted. */
+   private String extension;
+
+   /** the mime type, if already resolved. */
+   private String mimeType;
+
+   /** true if we already tried to resolve the mime type. */
+   private boolean mimeTypeResolved;
+
+   /** the header, if already read. */
+   private ByteBuffer header;
+
+   /** the pooled buffer holding the header, if any. */
+   private ByteBuffer pooledHeader;
+
+   /** the memory-mapped window, if already mapped. */
+   private HeaderWindow window;
+
+   /** the result of scanning for the XML root element, if already scanned. */
+   private XmlRootScanner.Result rootResult;
+
+   /** the XML root element, if found. */
+   private XmlRoot root;
+
+   /** the content hash, if already computed. */
+   private byte[] hash;
+
+   /** whether recognition was cancelled, see {@link #cancel()}. */
+   private volatile boolean cancelled;
+
+   /** the number of bytes read through the channel or from memory. */
+   private final AtomicLong bytesRead = new AtomicLong();
+
+   /** the time spent waiting for the channel, in nanoseconds. */
+   private final AtomicLong readNanos = new AtomicLong();
+
+   /** the owner and the speculative tasks still using the channel and the header. */
+   private int users = 1;
+
+   /** whether the owner has closed this source. */
+   private boolean closed;
+
+
+   /**
+    * Instantiates a new recognition source.
+    *
+    * @param file the file
+    * @param channel the channel reading the file
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   protected RecognitionSource(File file, FileChannel channel) throws IOException {
+      this.file = file;
+      this.channel = channel;
+      this.contents = null;
+      this.size = channel.size();
+   }
+
+
+   /**
+    * Instantiates a new recognition source of contents held in memory.
+    *
+    * @param file the file the contents belong to
+    * @param contents the contents, from position to limit
+    */
+   protected RecognitionSource(File file, ByteBuffer contents) {
+      this.file = file;
+      this.channel = null;
+      this.contents = contents.slice().asReadOnlyBuffer();
+      this.size = this.contents.remaining();
+   }
+
+
+   /**
+    * Opens a file for recognition.
+    *
+    * @param file the file to recognize
+    * @return the recognition source
+    * @throws IOException if the file cannot be opened
+    */
+   public static RecognitionSource open(File file) throws IOException {
+      if (file == null)
+         throw new IllegalArgumentException("The file is not allowed to be null.");
+      return new RecognitionSource(file,
+              FileChannel.open(file.toPath(), StandardOpenOption.READ));
+   }
+
+
+   /**
+    * Loads a file into memory for recognition. The file is read at once and
+    * closed; header, streams and hash are then served from memory. This
+    * pays off if the file is read on one thread and recognized on another,
+    * see {@link BatchRecognizer}. Only use it for files that fit into memory
+    * comfortably, e.g. below {@link #MAP_THRESHOLD} bytes.
+    *
+    * @param file the file to recognize
+    * @return the recognition source
+    * @throws IOException if the file cannot be read
+    */
+   public static RecognitionSource load(File file) throws IOException {
+      if (file == null)
+         throw new IllegalArgumentException("The file is not allowed to be null.");
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+         long size = channel.size();
+         if (size > Integer.MAX_VALUE)
+            throw new IOException("cannot load " + file.getName() + " into memory, it is too large");
+         ByteBuffer contents = ByteBuffer.allocate((int) size);
+         while (contents.hasRemaining() && channel.read(contents) >= 0)
+            ;
+         contents.flip();
+         return new RecognitionSource(file, contents);
+      }
+   }
+
+
+   /**
+    * Checks whether the contents of this source are held in memory.
+    *
+    * @return true, if created by {@link #load(File)}
+    */
+   public boolean isLoaded() {
+      return contents != null;
+   }
+
+
+   /**
+    * Gets the file.
+    *
+    * @return the file
+    */
+   public File getFile() {
+      return file;
+   }
+
+
+   /**
+    * Gets the name of the file.
+    *
+    * @return the file name
+    */
+   public String getName() {
+      return file.getName();
+   }
+
+
+   /**
+    * Gets the extension of the file name, without the dot.
+    *
+    * @return the extension, or an empty string if the file has no extension
+    */
+   public String getExtension() {
+      if (extension == null)
+         extension = FilenameUtils.getExtension(file.getName());
+      return extension;
+   }
+
+
+   /**
+    * Checks whether the file has a certain extension, ignoring the case.
+    * Other than comparing {@link #getExtension()} this does not need to
+    * extract the extension.
+    *
+    * @param extension the extension without the dot
+    * @return true, if the file name has that extension
+    */
+   public boolean hasExtension(String extension) {
+      return Extensions.hasExtension(file.getPath(), extension);
+   }
+
+
+   /**
+    * Gets the size of the file in bytes.
+    *
+    * @return the size
+    */
+   public long getSize() {
+      return size;
+   }
+
+
+   /**
+    * Gets the MIME type of the file. The MIME type is determined the first
+    * time this method is called and cached afterwards.
+    *
+    * @return the MIME type, or <code>null</code> if it cannot be determined
+    */
+   public synchronized String getMimeType() {
+      if (!mimeTypeResolved) {
+         mimeType = MimeTypeChecker.check(file);
+         mimeTypeResolved = true;
+      }
+      return mimeType;
+   }
+
+
+   /**
+    * Sets the MIME type, e.g. if the caller already knows it from an upload.
+    * This saves the MIME detection.
+    *
+    * @param mimeType the new MIME type
+    */
+   public synchronized void setMimeType(String mimeType) {
+      this.mimeType = mimeType;
+      this.mimeTypeResolved = true;
+   }
+
+
+   /**
+    * Gets the first bytes of the file, at most {@link #DEFAULT_HEADER_SIZE}.
+    * The header is read once, every call returns an independent read-only view
+    * positioned at the beginning of the file. The header lives in a pooled
+    * direct buffer, so views must not be used after the source is closed.
+    *
+    * @return the header
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   public synchronized ByteBuffer getHeader() throws IOException {
+      if (header == null) {
+         int length = (int) Math.min(size, DEFAULT_HEADER_SIZE);
+         if (isMapped()) {
+            ByteBuffer buffer = getHeaderWindow().first();
+            buffer.limit(length);
+            header = buffer.slice();
+         } else {
+            // reuse the buffer of a read that failed, it goes back to the pool on close
+            if (pooledHeader == null)
+               pooledHeader = HEADER_POOL.acquire();
+            ByteBuffer buffer = pooledHeader;
+            buffer.clear();
+            buffer.limit(length);
+            read(buffer, 0);
+            buffer.flip();
+            header = buffer;
+         }
+      }
+      return header.asReadOnlyBuffer();
+   }
+
+
+   /**
+    * Sets the header, if it was read elsewhere already, e.g. asynchronously
+    * by the {@link BatchRecognizer}.
+    *
+    * @param bytes the first bytes of the file, from position to limit, at
+    *           most {@link #DEFAULT_HEADER_SIZE}
+    */
+   synchronized void setHeader(ByteBuffer bytes) {
+      if (header == null && bytes.remaining() == Math.min(size, DEFAULT_HEADER_SIZE))
+         header = bytes.slice();
+   }
+
+
+   /**
+    * Gets a memory-mapped window onto the file, which allows to walk through
+    * the file chunk by chunk without copying it through the heap.
+    *
+    * @return the header window
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   public synchronized HeaderWindow getHeaderWindow() throws IOException {
+      if (channel == null)
+         throw new IOException(file.getName() + " is loaded into memory, it cannot be mapped");
+      if (window == null)
+         window = new HeaderWindow(channel);
+      return window;
+   }
+
+
+   /**
+    * Checks whether this source serves its contents from memory-mapped chunks.
+    *
+    * @return true, if the file is at least {@link #MAP_THRESHOLD} bytes
+    */
+   public boolean isMapped() {
+      return channel != null && size >= MAP_THRESHOLD;
+   }
+
+
+   /**
+    * Gets the root element of the file if it is an XML document. The root
+    * is looked up in the header using the {@link XmlRootScanner}; only if its
+    * start tag is not complete in the header, up to {@link #ROOT_SCAN_LIMIT}
+    * bytes are scanned.
+    *
+    * @return the root element, or <code>null</code> if the file is not XML or
+    *         the root element was not found in time
+    * @see #getXmlRootResult()
+    */
+   public synchronized XmlRoot getXmlRoot() {
+      scanXmlRoot();
+      return root;
+   }
+
+
+   /**
+    * Gets the result of scanning for the root element. Tells whether a
+    * missing root element means that the file is not XML, or just that the
+    * root element could not be found in the scanned bytes.
+    *
+    * @return the scan result
+    */
+   public synchronized XmlRootScanner.Result getXmlRootResult() {
+      scanXmlRoot();
+      return rootResult;
+   }
+
+
+   /**
+    * Checks whether the file may be an XML document with a certain root
+    * element. This is meant for fast rejects: the method only returns false
+    * if the root element is known to be different.
+    *
+    * @param localName the local name of the expected root element
+    * @return false, if the file is definitely not an XML document with that
+    *         root element
+    */
+   public synchronized boolean mayHaveRoot(String localName) {
+      scanXmlRoot();
+      if (root != null)
+         return root.getLocalName().equals(localName);
+      return rootResult != XmlRootScanner.Result.NOT_XML;
+   }
+
+
+   /**
+    * Scans for the root element, unless already done.
+    */
+   private void scanXmlRoot() {
+      if (rootResult != null)
+         return;
+      XmlRootScanner scanner = SCANNERS.get();
+      try {
+         rootResult = scanner.scan(getHeader());
+         if (rootResult == XmlRootScanner.Result.INCOMPLETE && size > DEFAULT_HEADER_SIZE) {
+            ByteBuffer prefix;
+            if (isMapped()) {
+               prefix = getHeaderWindow().first();
+            } else {
+               prefix = ByteBuffer.allocate((int) Math.min(size, ROOT_SCAN_LIMIT));
+               read(prefix, 0);
+               prefix.flip();
+            }
+            rootResult = scanner.scan(prefix);
+         }
+      } catch (IOException e) {
+         // we cannot tell
+         rootResult = XmlRootScanner.Result.INCOMPLETE;
+      }
+      if (rootResult == XmlRootScanner.Result.FOUND)
+         root = scanner.toRoot();
+   }
+
+
+   /**
+    * Gets the hash of the file's contents, computed using
+    * {@link #HASH_ALGORITHM}. The hash is computed the first time this method
+    * is called.
+    *
+    * @return the hash
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   public synchronized byte[] getHash() throws IOException {
+      if (hash == null) {
+         MessageDigest digest;
+         try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+         } catch (NoSuchAlgorithmException e) {
+            throw new IOException("cannot compute hash", e);
+         }
+         ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+         long position = 0;
+         int read;
+         while ((read = read(buffer, position)) > 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += read;
+         }
+         hash = digest.digest();
+      }
+      return hash.clone();
+   }
+
+
+   /**
+    * Gets the number of bytes the recognizers asked for so far, whether read
+    * through the channel or mapped. Mapped chunks count in full, see
+    * {@link HeaderWindow#getBytesRead()}.
+    *
+    * @return the number of bytes
+    */
+   public long getBytesRead() {
+      HeaderWindow mapped;
+      synchronized (this) {
+         mapped = window;
+      }
+      return bytesRead.get() + (mapped != null ? mapped.getBytesRead() : 0);
+   }
+
+
+   /**
+    * Gets the time spent waiting for the file system. Only reads through
+    * the channel count; memory-mapped chunks are faulted in while they are
+    * used, which cannot be told apart from parsing.
+    *
+    * @return the time in nanoseconds
+    */
+   public long getReadNanos() {
+      return readNanos.get();
+   }
+
+
+   /**
+    * Cancels the recognition of this source: from now on, reading the file
+    * fails with an {@link InterruptedIOException}, so recognizers that are
+    * still parsing give up, and the formatizer does not ask any further
+    * recognizers. Other than interrupting the threads this does not close
+    * the channel, which may be shared by several recognizers. The header
+    * stays available if it was read before.
+    */
+   public void cancel() {
+      cancelled = true;
+   }
+
+
+   /**
+    * Checks whether the recognition of this source was cancelled.
+    *
+    * @return true, if cancelled
+    */
+   public boolean isCancelled() {
+      return cancelled;
+   }
+
+
+   /**
+    * Fails if the recognition was cancelled.
+    *
+    * @throws InterruptedIOException if the recognition was cancelled
+    */
+   private void checkCancelled() throws InterruptedIOException {
+      if (cancelled)
+         throw new InterruptedIOException("recognition of " + file.getName() + " was cancelled");
+      AtomicBoolean abandoned = ABANDONED.get();
+      if (abandoned != null && abandoned.get())
+         throw new InterruptedIOException("recognition of " + file.getName() + " was abandoned");
+   }
+
+
+   /**
+    * Registers a speculative task that is going to use this source. The
+    * channel and the header stay open until the task has called
+    * {@link #release()}, even if the source is closed before.
+    */
+   synchronized void retain() {
+      if (users == 0)
+         throw new IllegalStateException(file.getName() + " is closed");
+      users++;
+   }
+
+
+   /**
+    * Runs a speculative task of this source. Once the flag is set, every read
+    * of the task fails, so that it gives up quickly. The source is released
+    * when the task returns, see {@link #retain()}.
+    *
+    * @param task the task
+    * @param abandoned the flag telling the task to give up
+    * @return the result of the task
+    * @throws Exception if the task fails
+    */
+   <T> T runAbandonable(Callable<T> task, AtomicBoolean abandoned) throws Exception {
+      ABANDONED.set(abandoned);
+      try {
+         return task.call();
+      } finally {
+         ABANDONED.remove();
+         release();
+      }
+   }
+
+
+   /**
+    * Releases the source for a speculative task, or for the owner. The last
+    * one to leave closes the channel and returns the header to the pool.
+    *
+    * @throws IOException if the channel cannot be closed
+    */
+   void release() throws IOException {
+      synchronized (this) {
+         if (--users > 0)
+            return;
+         if (pooledHeader != null) {
+            HEADER_POOL.release(pooledHeader);
+            pooledHeader = null;
+            header = null;
+         }
+      }
+      if (channel != null)
+         channel.close();
+   }
+
+
+   /**
+    * Creates a new stream reading the file from the beginning. The stream
+    * shares the underlying channel with all other streams of this source, so
+    * closing the stream does not close the source.
+    *
+    * @return the input stream
+    */
+   public InputStream newInputStream() {
+      if (isMapped()) {
+         try {
+            return new CancellableInputStream(getHeaderWindow().newInputStream());
+         } catch (IOException e) {
+            // cannot map the file, read it the traditional way
+         }
+      }
+      return new ChannelInputStream();
+   }
+
+
+   /**
+    * Fills the buffer with bytes starting at a certain position of the file.
+    *
+    * @param buffer the buffer to fill
+    * @param position the position in the file
+    * @return the number of bytes read
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   protected int read(ByteBuffer buffer, long position) throws IOException {
+      int total = 0;
+      if (contents != null) {
+         checkCancelled();
+         if (position < size) {
+            ByteBuffer slice = contents.duplicate();
+            slice.position((int) position);
+            slice.limit((int) Math.min(size, position + buffer.remaining()));
+            total = slice.remaining();
+            buffer.put(slice);
+         }
+      } else {
+         long start = System.nanoTime();
+         // a parser waiting for the disk does not need a processor
+         boolean released = RecognitionExecutors.beginBlocking();
+         try {
+            while (buffer.hasRemaining()) {
+               checkCancelled();
+               int read = channel.read(buffer, position + total);
+               if (read < 0)
+                  break;
+               total += read;
+            }
+         } finally {
+            readNanos.addAndGet(System.nanoTime() - start);
+            RecognitionExecutors.endBlocking(released);
+         }
+      }
+      bytesRead.addAndGet(total);
+      return total;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.io.Closeable#close()
+    */
+   @Override
+   public void close() throws IOException {
+      synchronized (this) {
+         if (closed)
+            return;
+         closed = true;
+      }
+      release();
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString() {
+      return file.toString();
+   }
+
+
+   /**
+    * Stream giving up once the recognition is cancelled.
+    */
+   private class CancellableInputStream extends FilterInputStream {
+
+      /**
+       * Instantiates a new stream.
+       *
+       * @param in the stream to read
+       */
+      CancellableInputStream(InputStream in) {
+         super(in);
+      }
+
+
+      @Override
+      public int read() throws IOException {
+         checkCancelled();
+         return super.read();
+      }
+
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         checkCancelled();
+         return super.read(b, off, len);
+      }
+   }
+
+
+   /**
+    * Stream reading the shared channel, or the contents in memory, using
+    * absolute positions.
+    */
+   private class ChannelInputStream extends InputStream {
+
+      /** the current position in the file. */
+      private long position;
+
+      /** the position marked using {@link #mark(int)}. */
+      private long mark;
+
+      /** the buffer of single-byte reads from the channel, created on first use. */
+      private ByteBuffer single;
+
+
+      @Override
+      public int read() throws IOException {
+         if (position >= size)
+            return -1;
+         if (contents != null) {
+            checkCancelled();
+            bytesRead.incrementAndGet();
+            return contents.get((int) position++) & 0xff;
+         }
+         if (single == null)
+            single = ByteBuffer.allocate(1);
+         single.clear();
+         if (RecognitionSource.this.read(single, position) <= 0)
+            // the file shrank since it was opened
+            return -1;
+         position++;
+         return single.get(0) & 0xff;
+      }
+
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0)
+            return 0;
+         if (position >= size)
+            return -1;
+         int read = RecognitionSource.this.read(ByteBuffer.wrap(b, off, len), position);
+         if (read <= 0)
+            // the file shrank since it was opened
+            return -1;
+         position += read;
+         return read;
+      }
+
+
+      @Override
+      public long skip(long n) {
+         long skipped = Math.max(0, Math.min(n, size - position));
+         position += skipped;
+         return skipped;
+      }
+
+
+      @Override
+      public int available() {
+         return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size - position));
+      }
+
+
+      @Override
+      public boolean markSupported() {
+         return true;
+      }
+
+
+      @Override
+      public synchronized void mark(int readlimit) {
+         mark = position;
+      }
+
+
+      @Override
+      public synchronized void reset() {
+         position = mark;
+      }
+
+
+      @Override
+      public void close() {
+         // the channel belongs to the source
+      }
+   }
+}
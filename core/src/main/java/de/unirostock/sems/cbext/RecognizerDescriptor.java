@@ -0,0 +1,116 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.util.Collection;
+import java.util.Collections;
+
+
+/**
+ * A lightweight description of a {@link FormatRecognizer}, which allows the
+ * {@link Formatizer} to register a recognizer without loading it.
+ *
+ * Descriptors are discovered through the {@link java.util.ServiceLoader}:
+ * list them in
+ * <code>META-INF/services/de.unirostock.sems.cbext.RecognizerDescriptor</code>.
+ * A descriptor must not touch the classes of the libraries its recognizer
+ * depends on. The recognizer is only created through
+ * {@link #createRecognizer()} once a file actually needs it, see
+ * {@link LazyRecognizer}.
+ *
+ * Everything a descriptor claims must match the behaviour of the recognizer,
+ * as the claims are used to answer questions without asking the recognizer.
+ */
+public abstract class RecognizerDescriptor {
+
+   /**
+    * Gets the name of the recognizer, usually the name of its class. The name
+    * identifies the recognizer in statistics and caches.
+    *
+    * @return the name
+    */
+   public abstract String getName();
+
+
+   /**
+    * Gets the priority of the recognizer, see
+    * {@link FormatRecognizer#getPriority()}.
+    *
+    * @return the priority
+    */
+   public abstract int getPriority();
+
+
+   /**
+    * Gets all extensions the recognizer maps to a format in
+    * {@link FormatRecognizer#getFormatFromExtension (String)}.
+    *
+    * @return the extensions without the dot, or <code>null</code> if they
+    *         are not known in advance
+    */
+   public Collection<String> getKnownExtensions() {
+      return null;
+   }
+
+
+   /**
+    * Gets all MIME types the recognizer maps to a format in
+    * {@link FormatRecognizer#getFormatFromMime (String)}.
+    *
+    * @return the MIME types, or <code>null</code> if they are not known in
+    *         advance
+    */
+   public Collection<String> getKnownMimeTypes() {
+      return null;
+   }
+
+
+   /**
+    * Gets the local names of the XML root elements of the documents the
+    * recognizer understands. If not empty, the recognizer is never asked to
+    * sniff or parse files with another root element.
+    *
+    * @return the root elements, empty if the recognizer does not restrict
+    *         itself to certain XML documents
+    */
+   public Collection<String> getRootElements() {
+      return Collections.emptyList();
+   }
+
+
+   /**
+    * Creates the recognizer. This is where the heavy lifting happens.
+    *
+    * @return the recognizer
+    */
+   public abstract FormatRecognizer createRecognizer();
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString() {
+      return getName();
+   }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Statistics about how often and how fast recognizers recognize files,
+ * used by the {@link Formatizer} to order recognizers adaptively (see
+ * {@link Formatizer#setAdaptiveOrdering (boolean)}).
+ *
+ * Observations are kept per bucket of files with the same extension and MIME
+ * type, and per recognizer class. Within a group of recognizers of equal
+ * priority, recognizers are sorted by their expected cost per hit, i.e. the
+ * mean parse time divided by the hit rate, which minimizes the expected time
+ * until the format is found. Priorities are never violated.
+ *
+ * The statistics can be exported to {@link Properties} and loaded again, so
+ * a new process starts with what earlier processes learned.
+ */
+public class RecognizerStatistics {
+
+   /** the separator of bucket and recognizer in exported keys. */
+   private static final char KEY_SEPARATOR = '#';
+
+   /** observations by bucket and recognizer class. */
+   private final Map<String, Map<String, Observation>> buckets = new ConcurrentHashMap<>();
+
+
+   /**
+    * Gets the bucket of a source, made of its extension and MIME type.
+    *
+    * @param source the source
+    * @return the bucket
+    */
+   public static String bucket(RecognitionSource source) {
+      return source.getExtension().toLowerCase(Locale.ROOT) + "|" + source.getMimeType();
+   }
+
+
+   /**
+    * Records the outcome of a recognizer parsing a file.
+    *
+    * @param bucket the bucket of the file, see {@link #bucket (RecognitionSource)}
+    * @param recognizer the recognizer
+    * @param hit true if the recognizer recognized the file
+    * @param nanos the time it took
+    */
+   public void record(String bucket, FormatRecognizer recognizer, boolean hit, long nanos) {
+      observation(bucket, recognizer.getName()).add(1, hit ? 1 : 0, nanos);
+   }
+
+
+   /**
+    * Orders recognizers by their expected cost per hit in a bucket. Only
+    * recognizers of equal priority are reordered; recognizers without
+    * observations keep their position relative to each other.
+    *
+    * @param bucket the bucket of the file to recognize
+    * @param recognizers the recognizers, sorted by priority
+    * @return the recognizers in the order they should be asked
+    */
+   public List<FormatRecognizer> order(String bucket, List<FormatRecognizer> recognizers) {
+      Map<String, Observation> observations = buckets.get(bucket);
+      List<FormatRecognizer> ordered = new ArrayList<>(recognizers);
+      if (observations == null)
+         return ordered;
+
+      // recognizers we know nothing about are assumed to cost the average
+      long attempts = 0, nanos = 0;
+      for (Observation observation : observations.values()) {
+         synchronized (observation) {
+            attempts += observation.attempts;
+            nanos += observation.nanos;
+         }
+      }
+      double meanCost = attempts == 0 ? 1 : Math.max(1, nanos / (double) attempts);
+
+      double[] costs = new double[ordered.size()];
+      for (int i = 0; i < ordered.size(); i++)
+         costs[i] = expectedCost(observations.get(ordered.get(i).getName()), meanCost);
+
+      // insertion sort within groups of equal priority, stable and fine for a handful of recognizers
+      for (int i = 1; i < ordered.size(); i++) {
+         FormatRecognizer recognizer = ordered.get(i);
+         double cost = costs[i];
+         int j = i;
+         while (j > 0 && ordered.get(j - 1).getPriority() == recognizer.getPriority() && costs[j - 1] > cost) {
+            ordered.set(j, ordered.get(j - 1));
+            costs[j] = costs[j - 1];
+            j--;
+         }
+         ordered.set(j, recognizer);
+         costs[j] = cost;
+      }
+      return ordered;
+   }
+
+
+   /**
+    * Estimates the cost per hit, using Laplace smoothing for the hit rate.
+    */
+   private static double expectedCost(Observation observation, double meanCost) {
+      if (observation == null)
+         return meanCost * 2;
+      synchronized (observation) {
+         double hitRate = (observation.hits + 1) / (double) (observation.attempts + 2);
+         double cost = observation.attempts == 0 ? meanCost : Math.max(1, observation.nanos / (double) observation.attempts);
+         return cost / hitRate;
+      }
+   }
+
+
+   /**
+    * Gets the hit rate of a recognizer in a bucket.
+    *
+    * @param bucket the bucket
+    * @param recognizer the recognizer
+    * @return the share of attempts that recognized the file, or NaN if never
+    *         attempted
+    */
+   public double getHitRate(String bucket, FormatRecognizer recognizer) {
+      Map<String, Observation> observations = buckets.get(bucket);
+      Observation observation = observations == null ? null : observations.get(recognizer.getName());
+      if (observation == null)
+         return Double.NaN;
+      synchronized (observation) {
+         return observation.attempts == 0 ? Double.NaN : observation.hits / (double) observation.attempts;
+      }
+   }
+
+
+   /**
+    * Exports the statistics. Keys are made of bucket and recognizer class,
+    * values of the number of attempts, hits and nanoseconds spent.
+    *
+    * @return the statistics as properties
+    */
+   public Properties toProperties() {
+      Properties properties = new Properties();
+      for (Map.Entry<String, Map<String, Observation>> bucket : buckets.entrySet()) {
+         for (Map.Entry<String, Observation> recognizer : bucket.getValue().entrySet()) {
+            Observation observation = recognizer.getValue();
+            synchronized (observation) {
+               properties.setProperty(bucket.getKey() + KEY_SEPARATOR + recognizer.getKey(),
+                       observation.attempts + "," + observation.hits + "," + observation.nanos);
+            }
+         }
+      }
+      return properties;
+   }
+
+
+   /**
+    * Loads exported statistics, adding them to the current observations.
+    * Malformed entries are ignored.
+    *
+    * @param properties the statistics, as exported by {@link #toProperties()}
+    */
+   public void load(Properties properties) {
+      for (String key : properties.stringPropertyNames()) {
+         int separator = key.lastIndexOf(KEY_SEPARATOR);
+         String[] values = properties.getProperty(key).split(",");
+         if (separator < 0 || values.length != 3)
+            continue;
+         try {
+            observation(key.substring(0, separator), key.substring(separator + 1))
+                    .add(Long.parseLong(values[0].trim()), Long.parseLong(values[1].trim()),
+                            Long.parseLong(values[2].trim()));
+         } catch (NumberFormatException e) {
+            // skip this entry
+         }
+      }
+   }
+
+
+   /**
+    * Forgets everything.
+    */
+   public void clear() {
+      buckets.clear();
+   }
+
+
+   private Observation observation(String bucket, String recognizer) {
+      return buckets.computeIfAbsent(bucket, b -> new ConcurrentHashMap<>())
+              .computeIfAbsent(recognizer, r -> new Observation());
+   }
+
+
+   /**
+    * What we observed about a recognizer in a bucket.
+    */
+   private static class Observation {
+      private long attempts;
+      private long hits;
+      private long nanos;
+
+
+      synchronized void add(long attempts, long hits, long nanos) {
+         this.attempts += attempts;
+         this.hits += hits;
+         this.nanos += nanos;
+      }
+   }
+}
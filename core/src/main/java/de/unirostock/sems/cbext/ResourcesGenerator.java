@@ -0,0 +1,343 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+
+/**
+ * Compiles the format tables shipped as resources into Java classes, so they
+ * don't need to be read and parsed at runtime.
+ * <p>
+ * The generator runs in the <code>generate-sources</code> phase of the build
+ * and writes
+ * <ul>
+ * <li><code>Ext2FormatTable</code> from <code>ext2format.prop</code>, mapping
+ * extensions and MIME types to format URIs, and</li>
+ * <li><code>Format2IconTable</code> from <code>format2icon.prop</code>,
+ * mapping formats to icon names</li>
+ * </ul>
+ * into the package {@value #PACKAGE}. Every table is a minimal perfect hash:
+ * a key's hash code selects a bucket, the bucket's seed selects the slot, and
+ * a single comparison of the key in that slot decides whether the key is
+ * known. The generated classes must not depend on anything but the JDK.
+ * <p>
+ * This class only uses the JDK, as it is compiled and run before the rest of
+ * the sources.
+ *
+ * @author Martin Scharm
+ *
+ */
+public class ResourcesGenerator {
+
+   /** the package of the generated classes. */
+   public static final String PACKAGE = "de.unirostock.sems.cbext.tables";
+
+   /** the maximum number of seeds to try for a single bucket. */
+   private static final int MAX_SEED = 1 << 20;
+
+
+   /**
+    * Generates the tables.
+    *
+    * @param args the directory containing the resources and the directory to
+    *           write the sources to
+    * @throws IOException if a resource cannot be read or a source cannot be
+    *            written
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length != 2) {
+         System.err.println("usage: ResourcesGenerator RESOURCE_DIR SOURCE_DIR");
+         System.exit(1);
+      }
+      File resources = new File(args[0]);
+      File target = new File(args[1], PACKAGE.replace('.', File.separatorChar));
+      if (!target.isDirectory() && !target.mkdirs())
+         throw new IOException("cannot create " + target);
+
+      generate(load(new File(resources, "ext2format.prop")), "Ext2FormatTable", "ext2format.prop", true,
+              new File(target, "Ext2FormatTable.java"));
+      generate(load(new File(resources, "format2icon.prop")), "Format2IconTable", "format2icon.prop", false,
+              new File(target, "Format2IconTable.java"));
+   }
+
+
+   /**
+    * Loads a properties file.
+    *
+    * @param file the file
+    * @return the properties
+    * @throws IOException if the file cannot be read
+    */
+   private static Properties load(File file) throws IOException {
+      Properties properties = new Properties();
+      try (InputStream in = new FileInputStream(file)) {
+         properties.load(in);
+      }
+      return properties;
+   }
+
+
+   /**
+    * The hash function shared by the generator and the generated tables. It is
+    * a bijection for every seed, so keys with distinct hash codes never
+    * collide before masking.
+    *
+    * @param hash the hash code of the key
+    * @param seed the seed
+    * @return the mixed hash
+    */
+   static int mix(int hash, int seed) {
+      int h = (hash ^ seed) * 0x85EBCA6B;
+      return h ^ (h >>> 15);
+   }
+
+
+   /**
+    * Computes the perfect hash of some keys.
+    *
+    * @param keys the keys, with distinct hash codes
+    * @param slots the number of slots, a power of two not smaller than the
+    *           number of keys
+    * @param buckets the number of buckets, a power of two
+    * @return the seed of every bucket, followed by the index of the key in
+    *         every slot (or -1 if the slot is empty)
+    */
+   static int[][] computeHash(List<String> keys, int slots, int buckets) {
+      Set<Integer> hashes = new HashSet<Integer>();
+      List<List<Integer>> members = new ArrayList<List<Integer>>();
+      for (int b = 0; b < buckets; b++)
+         members.add(new ArrayList<Integer>());
+      for (int i = 0; i < keys.size(); i++) {
+         int hash = keys.get(i).hashCode();
+         if (!hashes.add(hash))
+            throw new IllegalStateException("hash code of " + keys.get(i) + " is not unique");
+         members.get(mix(hash, 0) & (buckets - 1)).add(i);
+      }
+
+      // place the largest buckets first, while there is plenty of room
+      Integer[] order = new Integer[buckets];
+      for (int b = 0; b < buckets; b++)
+         order[b] = b;
+      Arrays.sort(order, (a, b) -> members.get(b).size() - members.get(a).size());
+
+      int[] seeds = new int[buckets];
+      int[] table = new int[slots];
+      Arrays.fill(table, -1);
+      int[] taken = new int[0];
+      for (int b : order) {
+         List<Integer> bucket = members.get(b);
+         if (bucket.isEmpty())
+            break;
+         if (taken.length < bucket.size())
+            taken = new int[bucket.size()];
+         int seed = 1;
+         search: for (; seed < MAX_SEED; seed++) {
+            for (int j = 0; j < bucket.size(); j++) {
+               int slot = mix(keys.get(bucket.get(j)).hashCode(), seed) & (slots - 1);
+               if (table[slot] >= 0)
+                  continue search;
+               for (int k = 0; k < j; k++)
+                  if (taken[k] == slot)
+                     continue search;
+               taken[j] = slot;
+            }
+            break;
+         }
+         if (seed == MAX_SEED)
+            throw new IllegalStateException("cannot place bucket " + b);
+         seeds[b] = seed;
+         for (int j = 0; j < bucket.size(); j++)
+            table[taken[j]] = bucket.get(j);
+      }
+      return new int[][] {seeds, table};
+   }
+
+
+   /**
+    * Generates a table.
+    *
+    * @param properties the mapping
+    * @param className the name of the class to generate
+    * @param resource the name of the resource, for the documentation
+    * @param uriValues whether the values are URIs
+    * @param file the file to write
+    * @throws IOException if the file cannot be written
+    */
+   static void generate(Properties properties, String className, String resource, boolean uriValues, File file)
+           throws IOException {
+      List<String> keys = new ArrayList<String>(properties.stringPropertyNames());
+      Collections.sort(keys);
+
+      int slots = Integer.highestOneBit(Math.max(1, keys.size() - 1)) << 1;
+      int buckets = Math.max(1, slots >> 2);
+      int[][] hash = computeHash(keys, slots, buckets);
+
+      try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+              StandardCharsets.UTF_8))) {
+         out.println("/*");
+         out.println(" * Generated by " + ResourcesGenerator.class.getName() + " from " + resource + ".");
+         out.println(" * Do not edit, changes will be lost with the next build.");
+         out.println(" */");
+         out.println("package " + PACKAGE + ";");
+         out.println();
+         if (uriValues)
+            out.println("import java.net.URI;");
+         out.println("import java.util.Arrays;");
+         out.println("import java.util.Collections;");
+         out.println("import java.util.List;");
+         out.println();
+         out.println();
+         out.println("/**");
+         out.println(" * The mapping of <code>" + resource + "</code>, compiled into a perfect hash.");
+         out.println(" */");
+         out.println("public final class " + className + " {");
+         out.println();
+         out.println("   /** the number of slots minus one. */");
+         out.println("   private static final int SLOT_MASK = " + (slots - 1) + ";");
+         out.println();
+         out.println("   /** the number of buckets minus one. */");
+         out.println("   private static final int BUCKET_MASK = " + (buckets - 1) + ";");
+         out.println();
+         out.println("   /** the seed of every bucket. */");
+         out.print("   private static final int[] SEEDS = {");
+         for (int b = 0; b < buckets; b++)
+            out.print((b % 16 == 0 ? "\n           " : " ") + hash[0][b] + (b < buckets - 1 ? "," : ""));
+         out.println("\n   };");
+         out.println();
+         out.println("   /** the key in every slot. */");
+         out.println("   private static final String[] KEYS = new String[" + slots + "];");
+         out.println();
+         String valueType = uriValues ? "URI" : "String";
+         out.println("   /** the value in every slot. */");
+         out.println("   private static final " + valueType + "[] VALUES = new " + valueType + "[" + slots + "];");
+         out.println();
+         out.println("   /** all keys, sorted. */");
+         out.println("   private static final List<String> ALL_KEYS;");
+         out.println();
+         out.println("   static {");
+         for (int slot = 0; slot < slots; slot++) {
+            int index = hash[1][slot];
+            if (index < 0)
+               continue;
+            String key = keys.get(index);
+            String value = properties.getProperty(key);
+            out.println("      KEYS[" + slot + "] = " + literal(key) + ";");
+            if (uriValues) {
+               try {
+                  new URI(value);
+               } catch (URISyntaxException e) {
+                  throw new IllegalStateException("invalid format " + value + " for " + key + " in " + resource, e);
+               }
+               out.println("      VALUES[" + slot + "] = URI.create(" + literal(value) + ");");
+            } else
+               out.println("      VALUES[" + slot + "] = " + literal(value) + ";");
+         }
+         out.println("      ALL_KEYS = Collections.unmodifiableList(Arrays.asList(");
+         for (int i = 0; i < keys.size(); i++)
+            out.println("              " + literal(keys.get(i)) + (i < keys.size() - 1 ? "," : "));"));
+         out.println("   }");
+         out.println();
+         out.println();
+         out.println("   /**");
+         out.println("    * No instances.");
+         out.println("    */");
+         out.println("   private " + className + "() {");
+         out.println("   }");
+         out.println();
+         out.println();
+         out.println("   /**");
+         out.println("    * Looks up a key.");
+         out.println("    *");
+         out.println("    * @param key the key");
+         out.println("    * @return the value, or <code>null</code> if the key is not known");
+         out.println("    */");
+         out.println("   public static " + valueType + " get(String key) {");
+         out.println("      if (key == null)");
+         out.println("         return null;");
+         out.println("      int hash = key.hashCode();");
+         out.println("      int slot = mix(hash, SEEDS[mix(hash, 0) & BUCKET_MASK]) & SLOT_MASK;");
+         out.println("      return key.equals(KEYS[slot]) ? VALUES[slot] : null;");
+         out.println("   }");
+         out.println();
+         out.println();
+         out.println("   /**");
+         out.println("    * Gets all keys.");
+         out.println("    *");
+         out.println("    * @return the keys, sorted");
+         out.println("    */");
+         out.println("   public static List<String> keys() {");
+         out.println("      return ALL_KEYS;");
+         out.println("   }");
+         out.println();
+         out.println();
+         out.println("   /**");
+         out.println("    * Mixes a hash code with a seed, as done by the generator.");
+         out.println("    *");
+         out.println("    * @param hash the hash code");
+         out.println("    * @param seed the seed");
+         out.println("    * @return the mixed hash");
+         out.println("    */");
+         out.println("   private static int mix(int hash, int seed) {");
+         out.println("      int h = (hash ^ seed) * 0x85EBCA6B;");
+         out.println("      return h ^ (h >>> 15);");
+         out.println("   }");
+         out.println("}");
+      }
+   }
+
+
+   /**
+    * Quotes a string as a Java literal.
+    *
+    * @param value the string
+    * @return the literal
+    */
+   private static String literal(String value) {
+      StringBuilder literal = new StringBuilder("\"");
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         if (c == '"' || c == '\\')
+            literal.append('\\').append(c);
+         else if (c < 0x20 || c > 0x7e)
+            literal.append(String.format("\\u%04x", (int) c));
+         else
+            literal.append(c);
+      }
+      return literal.append('"').toString();
+   }
+}
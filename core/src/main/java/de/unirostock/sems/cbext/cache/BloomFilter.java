@@ -0,0 +1,136 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A thread-safe Bloom filter over keys that are already uniformly
+ * distributed, such as content hashes.
+ *
+ * A key is given as two 64 bit halves, from which all bit positions are
+ * derived by double hashing. The filter never forgets a key it has seen,
+ * but may claim to have seen a key it has not, with the configured
+ * false positive probability as long as no more than the expected number
+ * of keys are inserted.
+ */
+public class BloomFilter {
+
+   /** the bits. */
+   private final AtomicLongArray bits;
+
+   /** the number of bits. */
+   private final long bitCount;
+
+   /** the number of bits set per key. */
+   private final int hashCount;
+
+   /** the number of keys inserted. */
+   private final AtomicInteger insertions = new AtomicInteger();
+
+
+   /**
+    * Instantiates a new Bloom filter.
+    *
+    * @param expectedInsertions the number of keys the filter is sized for
+    * @param falsePositiveProbability the false positive probability at that
+    *           number of keys, between 0 and 1
+    */
+   public BloomFilter(int expectedInsertions, double falsePositiveProbability) {
+      if (expectedInsertions <= 0)
+         throw new IllegalArgumentException("The filter must be sized for at least one key.");
+      if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+         throw new IllegalArgumentException("The false positive probability must be between 0 and 1.");
+
+      double ln2 = Math.log(2);
+      long bitsNeeded = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (ln2 * ln2));
+      int words = (int) Math.min(Integer.MAX_VALUE, (bitsNeeded + 63) / 64);
+      this.bits = new AtomicLongArray(words);
+      this.bitCount = words * 64L;
+      this.hashCount = Math.max(1, (int) Math.round(bitCount / (double) expectedInsertions * ln2));
+   }
+
+
+   /**
+    * Adds a key.
+    *
+    * @param h1 the first half of the key
+    * @param h2 the second half of the key
+    */
+   public void put(long h1, long h2) {
+      for (int i = 0; i < hashCount; i++) {
+         long bit = index(h1, h2, i);
+         int word = (int) (bit >>> 6);
+         long mask = 1L << bit;
+         long old;
+         do {
+            old = bits.get(word);
+            if ((old & mask) != 0)
+               break;
+         } while (!bits.compareAndSet(word, old, old | mask));
+      }
+      insertions.incrementAndGet();
+   }
+
+
+   /**
+    * Checks whether a key might have been added.
+    *
+    * @param h1 the first half of the key
+    * @param h2 the second half of the key
+    * @return false if the key was definitely never added
+    */
+   public boolean mightContain(long h1, long h2) {
+      for (int i = 0; i < hashCount; i++) {
+         long bit = index(h1, h2, i);
+         if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+            return false;
+      }
+      return true;
+   }
+
+
+   /**
+    * Gets the number of keys added so far, including duplicates.
+    *
+    * @return the number of insertions
+    */
+   public int getInsertions() {
+      return insertions.get();
+   }
+
+
+   /**
+    * Gets the number of bits set per key.
+    *
+    * @return the number of hash functions
+    */
+   public int getHashCount() {
+      return hashCount;
+   }
+
+
+   private long index(long h1, long h2, int i) {
+      return Math.floorMod(h1 + i * h2, bitCount);
+   }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.cache;
+
+import de.unirostock.sems.cbext.FormatRecognizer;
+import de.unirostock.sems.cbext.RecognitionSource;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Remembers which recognizers failed to recognize which contents, so they
+ * are not asked again when the same file is scanned again or uploaded twice.
+ *
+ * For each recognizer class we keep two Bloom filters keyed by the content
+ * hash of the file (see {@link RecognitionSource#getHash()}) and its
+ * extension, as some recognizers also look at the file name. New failures go
+ * to the current filter; once it holds the configured number of entries it
+ * becomes the previous filter and the former previous one is dropped. Thus,
+ * memory is bounded and a failure is remembered for at least one generation.
+ *
+ * Like every Bloom filter the cache may report a failure that never
+ * happened, and the recognizer is skipped although it would have recognized
+ * the file. Keep the false positive probability low accordingly.
+ */
+public class NegativeResultCache {
+
+   /** the number of failures per recognizer and generation, by default. */
+   public static final int DEFAULT_CAPACITY = 100000;
+
+   /** the false positive probability per generation, by default. */
+   public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.0001;
+
+   /** the number of failures per generation. */
+   private final int capacity;
+
+   /** the false positive probability per generation. */
+   private final double falsePositiveProbability;
+
+   /** the filters by recognizer class. */
+   private final Map<String, Generations> recognizers = new ConcurrentHashMap<>();
+
+
+   /**
+    * Instantiates a new cache using the {@link #DEFAULT_CAPACITY} and
+    * {@link #DEFAULT_FALSE_POSITIVE_PROBABILITY}.
+    */
+   public NegativeResultCache() {
+      this(DEFAULT_CAPACITY, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+   }
+
+
+   /**
+    * Instantiates a new cache.
+    *
+    * @param capacity the number of failures per recognizer and generation
+    * @param falsePositiveProbability the false positive probability of a
+    *           generation at full capacity
+    */
+   public NegativeResultCache(int capacity, double falsePositiveProbability) {
+      // fail early on bad arguments
+      new BloomFilter(1, falsePositiveProbability);
+      if (capacity <= 0)
+         throw new IllegalArgumentException("The capacity must be positive.");
+      this.capacity = capacity;
+      this.falsePositiveProbability = falsePositiveProbability;
+   }
+
+
+   /**
+    * Checks whether a recognizer is known to fail on the source.
+    *
+    * @param recognizer the recognizer
+    * @param source the file to recognize
+    * @return true, if the recognizer (most likely) failed on the same content
+    *         before
+    * @throws IOException if the content hash cannot be computed
+    */
+   public boolean isKnownFailure(FormatRecognizer recognizer, RecognitionSource source) throws IOException {
+      Generations generations = recognizers.get(recognizer.getName());
+      if (generations == null)
+         return false;
+      long[] key = key(source);
+      return generations.mightContain(key[0], key[1]);
+   }
+
+
+   /**
+    * Records that a recognizer failed on the source.
+    *
+    * @param recognizer the recognizer
+    * @param source the file it failed on
+    * @throws IOException if the content hash cannot be computed
+    */
+   public void recordFailure(FormatRecognizer recognizer, RecognitionSource source) throws IOException {
+      long[] key = key(source);
+      recognizers.computeIfAbsent(recognizer.getName(), name -> new Generations()).put(key[0], key[1]);
+   }
+
+
+   /**
+    * Forgets all failures.
+    */
+   public void clear() {
+      recognizers.clear();
+   }
+
+
+   /**
+    * Derives the key of a source from its content hash and extension.
+    */
+   private static long[] key(RecognitionSource source) throws IOException {
+      byte[] hash = source.getHash();
+      long h1 = 0, h2 = 0;
+      for (int i = 0; i < 8; i++) {
+         h1 = (h1 << 8) | (hash[i] & 0xFF);
+         h2 = (h2 << 8) | (hash[8 + i] & 0xFF);
+      }
+      // the same content with another extension is another key
+      h1 ^= source.getExtension().toLowerCase(Locale.ROOT).hashCode() * 0x9E3779B97F4A7C15L;
+      return new long[] { h1, h2 | 1 };
+   }
+
+
+   /**
+    * The current and the previous filter of a recognizer.
+    */
+   private class Generations {
+      private volatile BloomFilter current = new BloomFilter(capacity, falsePositiveProbability);
+      private volatile BloomFilter previous;
+
+
+      boolean mightContain(long h1, long h2) {
+         BloomFilter old = previous;
+         return current.mightContain(h1, h2) || (old != null && old.mightContain(h1, h2));
+      }
+
+
+      void put(long h1, long h2) {
+         BloomFilter filter = current;
+         if (filter.getInsertions() >= capacity) {
+            synchronized (this) {
+               if (current.getInsertions() >= capacity) {
+                  previous = current;
+                  current = new BloomFilter(capacity, falsePositiveProbability);
+               }
+               filter = current;
+            }
+         }
+         filter.put(h1, h2);
+      }
+   }
+}
@@ -20,14 +20,14 @@
  */
 package de.unirostock.sems.cbext.collections;
 
-import de.binfalse.bflog.LOGGER;
 import de.unirostock.sems.cbext.IconCollection;
 import de.unirostock.sems.cbext.Iconizer;
+import de.unirostock.sems.cbext.tables.Format2IconTable;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
 
@@ -71,13 +71,16 @@ public class DefaultIconCollection
       return priority;
    }
 
-   /** The Constant FORMAT2ICON_NAME. */
-   private static final String FORMAT2ICON_NAME = "/format2icon.prop";
-
    /** The Constant ICON_DIR. */
    private static final String ICON_DIR = "/icons/";
 
-   /** The format2 icon. */
+   /**
+    * The format2 icon.
+    *
+    * @deprecated lookups use the {@link Format2IconTable} compiled at build
+    *             time, this is just a copy of it
+    */
+   @Deprecated
    protected Properties format2Icon = new Properties();
 
 
@@ -85,17 +88,8 @@ public class DefaultIconCollection
     * Instantiates a new default icon mapper.
     */
    public DefaultIconCollection() {
-
-      try {
-         InputStream input = DefaultIconCollection.class
-                 .getResourceAsStream(FORMAT2ICON_NAME);
-         format2Icon.load(input);
-         input.close();
-      } catch (IOException e) {
-         LOGGER.error(e, "error reading known formats: ",
-                 DefaultIconCollection.class.getResourceAsStream(FORMAT2ICON_NAME));
-      }
-
+      for (String format : Format2IconTable.keys())
+         format2Icon.setProperty(format, Format2IconTable.get(format));
    }
 
 
@@ -106,7 +100,7 @@ public class DefaultIconCollection
     */
    @Override
    public boolean hasIcon(URI format) {
-      return format2Icon.getProperty(format.toString()) != null;
+      return Format2IconTable.get(format.toString()) != null;
    }
 
 
@@ -147,7 +141,7 @@ public class DefaultIconCollection
     */
    @Override
    public String formatToIconName(URI format) {
-      return format2Icon.getProperty(format.toString(), null);
+      return Format2IconTable.get(format.toString());
    }
 
 
@@ -157,7 +151,7 @@ public class DefaultIconCollection
     * @return set of objects that are actually strings
     */
    public Set<Object> getAvailableFormatIcons() {
-      return format2Icon.keySet();
+      return new HashSet<Object>(Format2IconTable.keys());
    }
 
 }
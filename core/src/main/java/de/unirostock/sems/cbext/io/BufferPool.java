@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A pool of direct byte buffers of a fixed size.
+ *
+ * Acquiring and releasing buffers does not allocate anything on the heap as
+ * long as the pool is able to serve the request, which keeps the sniffing hot
+ * path free of garbage. If the pool runs dry, a fresh buffer is allocated;
+ * buffers that do not fit into the pool anymore are simply dropped.
+ *
+ * The pool is thread-safe.
+ */
+public class BufferPool {
+
+   /** the size of the buffers. */
+   private final int bufferSize;
+
+   /** the pooled buffers, empty slots are <code>null</code>. */
+   private final AtomicReferenceArray<ByteBuffer> slots;
+
+
+   /**
+    * Instantiates a new buffer pool.
+    *
+    * @param bufferSize the size of the buffers
+    * @param capacity the maximum number of buffers kept in the pool
+    */
+   public BufferPool(int bufferSize, int capacity) {
+      if (bufferSize <= 0 || capacity <= 0)
+         throw new IllegalArgumentException("Buffer size and capacity must be positive.");
+      this.bufferSize = bufferSize;
+      this.slots = new AtomicReferenceArray<>(capacity);
+   }
+
+
+   /**
+    * Gets the size of the buffers served by this pool.
+    *
+    * @return the buffer size
+    */
+   public int getBufferSize() {
+      return bufferSize;
+   }
+
+
+   /**
+    * Takes a buffer from the pool. The buffer is cleared, i.e. its position is
+    * 0 and its limit equals its capacity.
+    *
+    * @return a direct buffer of {@link #getBufferSize()} bytes
+    */
+   public ByteBuffer acquire() {
+      for (int i = 0; i < slots.length(); i++) {
+         ByteBuffer buffer = slots.getAndSet(i, null);
+         if (buffer != null) {
+            buffer.clear();
+            return buffer;
+         }
+      }
+      return ByteBuffer.allocateDirect(bufferSize);
+   }
+
+
+   /**
+    * Returns a buffer to the pool. The buffer must not be used afterwards.
+    *
+    * @param buffer the buffer, which should have been acquired from this pool
+    */
+   public void release(ByteBuffer buffer) {
+      if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize)
+         return;
+      for (int i = 0; i < slots.length(); i++) {
+         if (slots.get(i) == null && slots.compareAndSet(i, null, buffer))
+            return;
+      }
+   }
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+
+/**
+ * Walks the regular files below a directory lazily.
+ *
+ * Only the directories that are still to be visited and the listing of the
+ * current directory are kept, never the whole file list, so trees with
+ * millions of files can be streamed. For parallel streams the spliterator
+ * splits off half of the pending subtrees, or, in large flat directories, a
+ * batch of the current listing, so fork-join workers can steal them.
+ *
+ * Symbolic links are not followed, and directories that cannot be read are
+ * skipped. Directories opened by this spliterator and its splits are closed
+ * when they are exhausted, or at the latest by {@link #close()}.
+ */
+public class DirectorySpliterator implements Spliterator<Path>, Closeable {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(DirectorySpliterator.class);
+
+   /** the size of the first batch split off the current listing. */
+   private static final int BATCH = 64;
+
+   /** the largest batch split off the current listing. */
+   private static final int MAX_BATCH = 1 << 16;
+
+   /** files and directories still to visit. */
+   private final Deque<Path> pending;
+
+   /** the directory listings opened by this spliterator and its splits. */
+   private final Set<DirectoryStream<Path>> open;
+
+   /** the listing of the current directory. */
+   private DirectoryStream<Path> listing;
+
+   /** the remaining entries of the current directory. */
+   private Iterator<Path> entries;
+
+   /** the size of the next batch split off the current listing. */
+   private int batch = BATCH;
+
+   /** the estimated number of files left. */
+   private long estimate;
+
+
+   /**
+    * Instantiates a new spliterator walking a directory. If the path is a
+    * regular file, only that file is visited.
+    *
+    * @param root the directory
+    */
+   public DirectorySpliterator(Path root) {
+      this(new ArrayDeque<Path>(), ConcurrentHashMap.<DirectoryStream<Path>>newKeySet(), Long.MAX_VALUE);
+      pending.add(root);
+   }
+
+
+   /**
+    * Instantiates a new spliterator.
+    *
+    * @param pending the files and directories to visit
+    * @param open the listings opened so far
+    * @param estimate the estimated number of files
+    */
+   private DirectorySpliterator(Deque<Path> pending, Set<DirectoryStream<Path>> open, long estimate) {
+      this.pending = pending;
+      this.open = open;
+      this.estimate = estimate;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+    */
+   @Override
+   public boolean tryAdvance(Consumer<? super Path> action) {
+      while (true) {
+         Path next = nextEntry();
+         if (next == null) {
+            closeListing();
+            next = pending.pollFirst();
+            if (next == null)
+               return false;
+            if (Files.isDirectory(next, LinkOption.NOFOLLOW_LINKS)) {
+               openListing(next);
+               continue;
+            }
+         } else if (Files.isDirectory(next, LinkOption.NOFOLLOW_LINKS)) {
+            // depth first, so few directories are pending at any time
+            pending.addFirst(next);
+            continue;
+         }
+         if (Files.isRegularFile(next, LinkOption.NOFOLLOW_LINKS)) {
+            if (estimate > 0 && estimate != Long.MAX_VALUE)
+               estimate--;
+            action.accept(next);
+            return true;
+         }
+      }
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.util.Spliterator#trySplit()
+    */
+   @Override
+   public Spliterator<Path> trySplit() {
+      if (entries == null && pending.size() == 1
+              && Files.isDirectory(pending.peekFirst(), LinkOption.NOFOLLOW_LINKS))
+         // a fresh spliterator: open the root, so there is something to split
+         openListing(pending.pollFirst());
+
+      Deque<Path> split = new ArrayDeque<Path>();
+      long splitEstimate;
+      if (pending.size() > 1 || (!pending.isEmpty() && entries != null)) {
+         // give away the subtrees we would visit last
+         int n = Math.max(1, pending.size() / 2);
+         for (int i = 0; i < n; i++)
+            split.addFirst(pending.pollLast());
+         // we cannot know how large the subtrees are, halve like AbstractSpliterator
+         splitEstimate = estimate >>> 1;
+      } else {
+         // a large flat directory: hand over a batch of its entries
+         while (split.size() < batch) {
+            Path next = nextEntry();
+            if (next == null)
+               break;
+            split.add(next);
+         }
+         if (split.isEmpty())
+            return null;
+         batch = Math.min(MAX_BATCH, batch * 2);
+         splitEstimate = split.size();
+      }
+      estimate = Math.max(0, estimate - splitEstimate);
+      return new DirectorySpliterator(split, open, splitEstimate);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.util.Spliterator#estimateSize()
+    */
+   @Override
+   public long estimateSize() {
+      return estimate;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.util.Spliterator#characteristics()
+    */
+   @Override
+   public int characteristics() {
+      return DISTINCT | NONNULL;
+   }
+
+
+   /**
+    * Gets the next entry of the current directory.
+    *
+    * @return the entry, or <code>null</code> if the directory is exhausted
+    */
+   private Path nextEntry() {
+      try {
+         return entries != null && entries.hasNext() ? entries.next() : null;
+      } catch (DirectoryIteratorException e) {
+         LOGGER.warn("cannot list all of a directory: {}", e.getCause().getMessage());
+         return null;
+      }
+   }
+
+
+   /**
+    * Opens the listing of a directory.
+    *
+    * @param directory the directory
+    */
+   private void openListing(Path directory) {
+      try {
+         listing = Files.newDirectoryStream(directory);
+         open.add(listing);
+         entries = listing.iterator();
+      } catch (IOException e) {
+         LOGGER.warn("cannot list directory {}: {}", directory, e.getMessage());
+      }
+   }
+
+
+   /**
+    * Closes the listing of the current directory.
+    */
+   private void closeListing() {
+      if (listing == null)
+         return;
+      try {
+         listing.close();
+      } catch (IOException e) {
+         LOGGER.debug("cannot close a directory listing: {}", e.getMessage());
+      }
+      open.remove(listing);
+      listing = null;
+      entries = null;
+   }
+
+
+   /**
+    * Closes all directory listings opened by this spliterator and its splits.
+    */
+   @Override
+   public void close() {
+      for (DirectoryStream<Path> stream : open) {
+         try {
+            stream.close();
+         } catch (IOException e) {
+            LOGGER.debug("cannot close a directory listing: {}", e.getMessage());
+         }
+      }
+      open.clear();
+   }
+}
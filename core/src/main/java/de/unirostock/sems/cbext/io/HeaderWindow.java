@@ -0,0 +1,255 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A memory-mapped window onto the beginning of a file.
+ *
+ * The window maps the file chunk by chunk using {@link FileChannel#map}, so
+ * the bytes are read straight from the page cache instead of being copied
+ * through heap buffers. This pays off for large model files, where a
+ * recognizer usually needs only the first few kilobytes to make a decision.
+ *
+ * Chunks are mapped on demand; a recognizer that stops after the first chunk
+ * never touches the rest of the file.
+ */
+public class HeaderWindow {
+
+   /** the default size of a single chunk. */
+   public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+   /** the size of the chunks mapped by streams, which read the whole file. */
+   public static final int STREAM_CHUNK_SIZE = 16 * 1024 * 1024;
+
+   /** the mapped file. */
+   private final FileChannel channel;
+
+   /** the size of the file. */
+   private final long size;
+
+   /** the size of a single chunk. */
+   private final int chunkSize;
+
+   /** the first chunk, which is kept as it is asked for most often. */
+   private ByteBuffer first;
+
+   /** the number of bytes handed out. */
+   private final AtomicLong bytesRead = new AtomicLong();
+
+
+   /**
+    * Instantiates a new window using the {@link #DEFAULT_CHUNK_SIZE}.
+    *
+    * @param channel the channel to map
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   public HeaderWindow(FileChannel channel) throws IOException {
+      this(channel, DEFAULT_CHUNK_SIZE);
+   }
+
+
+   /**
+    * Instantiates a new window.
+    *
+    * @param channel the channel to map
+    * @param chunkSize the size of a single chunk
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   public HeaderWindow(FileChannel channel, int chunkSize) throws IOException {
+      if (chunkSize <= 0)
+         throw new IllegalArgumentException("The chunk size must be positive.");
+      this.channel = channel;
+      this.size = channel.size();
+      this.chunkSize = chunkSize;
+   }
+
+
+   /**
+    * Gets the size of the mapped file.
+    *
+    * @return the size
+    */
+   public long getSize() {
+      return size;
+   }
+
+
+   /**
+    * Gets the size of a single chunk.
+    *
+    * @return the chunk size
+    */
+   public int getChunkSize() {
+      return chunkSize;
+   }
+
+
+   /**
+    * Gets the number of chunks needed to cover the whole file.
+    *
+    * @return the number of chunks
+    */
+   public long getChunkCount() {
+      return (size + chunkSize - 1) / chunkSize;
+   }
+
+
+   /**
+    * Gets the number of bytes handed out so far: every chunk that was
+    * mapped, and what was read through streams. Chunks count in full, as we
+    * cannot tell how much of them is looked at.
+    *
+    * @return the number of bytes
+    */
+   public long getBytesRead() {
+      return bytesRead.get();
+   }
+
+
+   /**
+    * Gets the first chunk of the file. The returned buffer is an independent
+    * read-only view; the mapping is shared.
+    *
+    * @return the first chunk, empty if the file is empty
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   public synchronized ByteBuffer first() throws IOException {
+      if (first == null) {
+         first = map(0, chunkSize);
+         bytesRead.addAndGet(first.limit());
+      }
+      return first.duplicate();
+   }
+
+
+   /**
+    * Gets a chunk of the file.
+    *
+    * @param index the index of the chunk, starting at 0
+    * @return the chunk, or <code>null</code> if the file is not that large
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   public ByteBuffer chunk(long index) throws IOException {
+      if (index == 0)
+         return first();
+      long position = index * chunkSize;
+      if (index < 0 || position >= size)
+         return null;
+      ByteBuffer chunk = map(position, chunkSize);
+      bytesRead.addAndGet(chunk.limit());
+      return chunk;
+   }
+
+
+   /**
+    * Creates a stream reading the file through mapped chunks. As streams
+    * usually read much more than the header, they map chunks of
+    * {@link #STREAM_CHUNK_SIZE} bytes.
+    *
+    * @return the input stream
+    */
+   public InputStream newInputStream() {
+      return new MappedInputStream();
+   }
+
+
+   /**
+    * Maps a chunk starting at the given position.
+    *
+    * @param position the position
+    * @param maxLength the maximum length of the chunk
+    * @return the mapped chunk
+    * @throws IOException Signals that an I/O exception has occurred.
+    */
+   private ByteBuffer map(long position, int maxLength) throws IOException {
+      long length = Math.min(maxLength, size - position);
+      if (length <= 0)
+         return ByteBuffer.allocate(0).asReadOnlyBuffer();
+      return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+   }
+
+
+   /**
+    * Stream walking through the chunks one after the other.
+    */
+   private class MappedInputStream extends InputStream {
+
+      /** the position of the current chunk in the file. */
+      private long offset;
+
+      /** the current chunk. */
+      private ByteBuffer current = ByteBuffer.allocate(0);
+
+
+      /**
+       * Makes sure the current chunk has bytes left.
+       *
+       * @return false if the end of the file is reached
+       * @throws IOException Signals that an I/O exception has occurred.
+       */
+      private boolean advance() throws IOException {
+         while (!current.hasRemaining()) {
+            long next = offset + current.limit();
+            if (next >= size)
+               return false;
+            current = map(next, STREAM_CHUNK_SIZE);
+            offset = next;
+         }
+         return true;
+      }
+
+
+      @Override
+      public int read() throws IOException {
+         if (!advance())
+            return -1;
+         bytesRead.incrementAndGet();
+         return current.get() & 0xff;
+      }
+
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0)
+            return 0;
+         if (!advance())
+            return -1;
+         int n = Math.min(len, current.remaining());
+         current.get(b, off, n);
+         bytesRead.addAndGet(n);
+         return n;
+      }
+
+
+      @Override
+      public int available() {
+         long left = size - (offset + current.position());
+         return (int) Math.max(0, Math.min(Integer.MAX_VALUE, left));
+      }
+   }
+}
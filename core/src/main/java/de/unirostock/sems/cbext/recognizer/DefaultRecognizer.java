@@ -20,15 +20,15 @@
  */
 package de.unirostock.sems.cbext.recognizer;
 
-import de.binfalse.bflog.LOGGER;
 import de.unirostock.sems.cbext.FormatRecognizer;
 import de.unirostock.sems.cbext.Formatizer;
+import de.unirostock.sems.cbext.RecognitionSource;
+import de.unirostock.sems.cbext.RecognizerDescriptor;
+import de.unirostock.sems.cbext.tables.Ext2FormatTable;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
-import java.util.Properties;
+import java.util.Collection;
 
 
 /**
@@ -71,30 +71,26 @@ public class DefaultRecognizer
       return priority;
    }
 
-   /** known formats file. */
-   private static final String EXT2FORMAT_NAME = "/ext2format.prop";
-
-   /** The ext2 format. */
-   private final Properties ext2Format = new Properties();
-
-
    /**
-    * Instantiates a new default extension mapper.
+    * Instantiates a new default extension mapper. The known formats are
+    * compiled into the {@link Ext2FormatTable} at build time.
     */
    public DefaultRecognizer() {
+   }
 
-      try {
-         InputStream input = DefaultRecognizer.class
-                 .getResourceAsStream(EXT2FORMAT_NAME);
-         ext2Format.load(input);
-         input.close();
-      } catch (IOException e) {
-         LOGGER.error(e, "error reading known formats: ",
-                 DefaultRecognizer.class.getResourceAsStream(EXT2FORMAT_NAME));
-      }
 
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getConfidence(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public double getConfidence(RecognitionSource source) {
+      // this recognizer is not able to understand files from parsing it.
+      return 0;
    }
 
+
    /*
     * (non-Javadoc)
     *
@@ -108,11 +104,7 @@ public class DefaultRecognizer
       if (mime == null)
          return null;
 
-      String uriString = ext2Format.getProperty(mime, null);
-      if (uriString != null)
-         return FormatRecognizer.buildUri(uriString, "");
-      else
-         return null;
+      return Ext2FormatTable.get(mime);
    }
 
 
@@ -143,4 +135,56 @@ public class DefaultRecognizer
       return null;
    }
 
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getKnownExtensions()
+    */
+   @Override
+   public Collection<String> getKnownExtensions() {
+      return Ext2FormatTable.keys();
+   }
+
+
+   /**
+    * Describes the {@link DefaultRecognizer}. The recognizer is cheap to
+    * create and answers from the {@link Ext2FormatTable}, so the descriptor
+    * does not claim anything itself.
+    */
+   public static class Descriptor
+      extends RecognizerDescriptor {
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getName()
+       */
+      @Override
+      public String getName() {
+         return DefaultRecognizer.class.getName();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getPriority()
+       */
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#createRecognizer()
+       */
+      @Override
+      public FormatRecognizer createRecognizer() {
+         return new DefaultRecognizer();
+      }
+   }
 }
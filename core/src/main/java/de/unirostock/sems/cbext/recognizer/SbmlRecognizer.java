@@ -22,7 +22,10 @@ package de.unirostock.sems.cbext.recognizer;
 
 import de.unirostock.sems.cbext.FormatRecognizer;
 import de.unirostock.sems.cbext.Formatizer;
-import org.apache.commons.io.FilenameUtils;
+import de.unirostock.sems.cbext.RecognitionSource;
+import de.unirostock.sems.cbext.RecognizerDescriptor;
+import de.unirostock.sems.cbext.sniff.Extensions;
+import de.unirostock.sems.cbext.sniff.XmlRoot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,9 +37,13 @@ import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Objects;
 
@@ -89,13 +96,72 @@ public class SbmlRecognizer extends FormatRecognizer {
     */
    @Override
    public URI getFormatByParsing(File file, String mimeType) {
-       String extension = FilenameUtils.getExtension(file.getName());
-       if (!extension.equalsIgnoreCase("xml")) {
+       if (!Extensions.hasExtension(file.getPath(), "xml")) {
            return null;
        }
+      try (InputStream in = Files.newInputStream(file.toPath())) {
+         return getFormatByParsing(in, file);
+      } catch (IOException e) {
+         LOGGER.info("File {} seems to be an invalid SBML document. Failure reason: {}", file.getAbsolutePath(), e.toString());
+      }
+      return null;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatByParsing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatByParsing(RecognitionSource source) {
+      if (!source.hasExtension("xml")) {
+         return null;
+      }
+      if (source.getXmlRoot() != null) {
+         // the root element tells us everything we need to know
+         return getFormatBySniffing(source);
+      }
+      if (!source.mayHaveRoot("sbml"))
+         return null;
+      return getFormatByParsing(source.newInputStream(), source.getFile());
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatBySniffing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatBySniffing(RecognitionSource source) {
+      if (!source.hasExtension("xml")) {
+         return null;
+      }
+      XmlRoot root = source.getXmlRoot();
+      if (root == null || !root.getLocalName().equals("sbml") || root.getAttributes().isEmpty())
+         return null;
+      return buildUri(IDENTIFIERS_BASE, "sbml.level-" + valueOrEmpty(root.getLevel()) + ".version-"
+              + valueOrEmpty(root.getVersion()));
+   }
+
+
+   private static String valueOrEmpty(String value) {
+      return value == null ? "" : value;
+   }
+
+
+   /**
+    * Determines the SBML level and version from a stream.
+    *
+    * @param in the stream providing the document
+    * @param file the file behind the stream, just for logging
+    * @return the format URI or null
+    */
+   private URI getFormatByParsing(InputStream in, File file) {
       URI result = null;
       try {
-         String[] levelVersion = getSbmlLevelAndVersion(file.getAbsolutePath());
+         String[] levelVersion = getSbmlLevelAndVersion(in);
          if (levelVersion.length == 2 && levelVersion[0] != null && levelVersion[1] != null) {
             result = buildUri(IDENTIFIERS_BASE, "sbml.level-" + levelVersion[0] + ".version-" + levelVersion[1]);
          }
@@ -108,6 +174,20 @@ public class SbmlRecognizer extends FormatRecognizer {
    }
 
 
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getConfidence(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public double getConfidence(RecognitionSource source) {
+      // we only parse .xml files
+      if (!source.hasExtension("xml"))
+         return 0;
+      return getRootConfidence(source, "sbml", "http://www.sbml.org/sbml/");
+   }
+
+
    @Override
    public URI getFormatFromMime(String mime) {
       // we cannot decide from just a mime type
@@ -122,10 +202,26 @@ public class SbmlRecognizer extends FormatRecognizer {
       return null;
    }
 
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getKnownExtensions()
+    */
+   @Override
+   public Collection<String> getKnownExtensions() {
+      return Collections.singletonList("sbml");
+   }
+
    public String[] getSbmlLevelAndVersion(String sbmlFilePath) throws IOException, XMLStreamException {
+        try (InputStream in = Files.newInputStream(Paths.get(sbmlFilePath))) {
+            return getSbmlLevelAndVersion(in);
+        }
+    }
+
+   private String[] getSbmlLevelAndVersion(InputStream in) throws XMLStreamException {
         LOGGER.info("Using StAX library to extract SBML Level and Version instead of using JSBML library.");
         XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-        XMLEventReader reader = xmlInputFactory.createXMLEventReader(Files.newInputStream(Paths.get(sbmlFilePath)));
+        XMLEventReader reader = xmlInputFactory.createXMLEventReader(in);
         String[] strLevelVersion = new String[2];
         while (reader.hasNext()) {
             XMLEvent nextEvent = reader.nextEvent();
@@ -154,4 +250,88 @@ public class SbmlRecognizer extends FormatRecognizer {
         }
         return strLevelVersion;
     }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getWarmUpSample()
+    */
+   @Override
+   public URL getWarmUpSample() {
+      return SbmlRecognizer.class.getResource("/warmup/sample.xml");
+   }
+
+
+   /**
+    * Describes the {@link SbmlRecognizer} without creating it.
+    */
+   public static class Descriptor
+      extends RecognizerDescriptor {
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getName()
+       */
+      @Override
+      public String getName() {
+         return SbmlRecognizer.class.getName();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getPriority()
+       */
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownExtensions()
+       */
+      @Override
+      public Collection<String> getKnownExtensions() {
+         return Collections.singletonList("sbml");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownMimeTypes()
+       */
+      @Override
+      public Collection<String> getKnownMimeTypes() {
+         return Collections.emptyList();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getRootElements()
+       */
+      @Override
+      public Collection<String> getRootElements() {
+         return Collections.singletonList("sbml");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#createRecognizer()
+       */
+      @Override
+      public FormatRecognizer createRecognizer() {
+         return new SbmlRecognizer();
+      }
+   }
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.sniff;
+
+import java.util.Map;
+
+
+/**
+ * An immutable lookup table from file extensions to values.
+ *
+ * In contrast to a {@link java.util.HashMap} the index can be queried with
+ * any region of a {@link CharSequence}, e.g. directly with a file name, so
+ * neither a substring nor a lower-cased copy of the extension has to be
+ * created. Lookups are case-sensitive, just like
+ * {@link de.unirostock.sems.cbext.Formatizer#getFormatFromExtension(String)}.
+ *
+ * @param <V> the type of the values
+ */
+public class ExtensionIndex<V> {
+
+   /** the keys, using open addressing with linear probing. */
+   private final String[] keys;
+
+   /** the values, at the same positions as the keys. */
+   private final Object[] values;
+
+   /** mask to map hashes to slots. */
+   private final int mask;
+
+   /** the number of entries. */
+   private final int size;
+
+
+   /**
+    * Instantiates a new index.
+    *
+    * @param entries the extensions (without dot) and their values
+    */
+   public ExtensionIndex(Map<String, ? extends V> entries) {
+      int capacity = Integer.highestOneBit(Math.max(4, entries.size() * 2 - 1)) << 1;
+      keys = new String[capacity];
+      values = new Object[capacity];
+      mask = capacity - 1;
+      for (Map.Entry<String, ? extends V> entry : entries.entrySet()) {
+         String key = entry.getKey();
+         int slot = hash(key, 0, key.length()) & mask;
+         while (keys[slot] != null)
+            slot = (slot + 1) & mask;
+         keys[slot] = key;
+         values[slot] = entry.getValue();
+      }
+      size = entries.size();
+   }
+
+
+   /**
+    * Gets the number of entries.
+    *
+    * @return the size
+    */
+   public int size() {
+      return size;
+   }
+
+
+   /**
+    * Checks whether the index knows an extension.
+    *
+    * @param chars the sequence containing the extension
+    * @param from the first character of the extension
+    * @param to the position after the last character of the extension
+    * @return true, if the extension is known
+    */
+   public boolean contains(CharSequence chars, int from, int to) {
+      return find(chars, from, to) >= 0;
+   }
+
+
+   /**
+    * Looks up an extension.
+    *
+    * @param chars the sequence containing the extension
+    * @param from the first character of the extension
+    * @param to the position after the last character of the extension
+    * @return the value, or <code>null</code> if the extension is unknown
+    */
+   @SuppressWarnings("unchecked")
+   public V get(CharSequence chars, int from, int to) {
+      int slot = find(chars, from, to);
+      return slot < 0 ? null : (V) values[slot];
+   }
+
+
+   /**
+    * Looks up the extension of a file name.
+    *
+    * @param name the file name or path
+    * @return the value, or <code>null</code> if the name has no known extension
+    */
+   public V getByFileName(CharSequence name) {
+      int start = Extensions.extensionStart(name);
+      return start < 0 ? null : get(name, start, name.length());
+   }
+
+
+   /**
+    * Finds the slot of an extension.
+    *
+    * @param chars the sequence containing the extension
+    * @param from the first character of the extension
+    * @param to the position after the last character of the extension
+    * @return the slot, or -1 if the extension is unknown
+    */
+   private int find(CharSequence chars, int from, int to) {
+      int slot = hash(chars, from, to) & mask;
+      String key;
+      while ((key = keys[slot]) != null) {
+         if (matches(key, chars, from, to))
+            return slot;
+         slot = (slot + 1) & mask;
+      }
+      return -1;
+   }
+
+
+   private static boolean matches(String key, CharSequence chars, int from, int to) {
+      if (key.length() != to - from)
+         return false;
+      for (int i = 0; i < key.length(); i++) {
+         if (key.charAt(i) != chars.charAt(from + i))
+            return false;
+      }
+      return true;
+   }
+
+
+   private static int hash(CharSequence chars, int from, int to) {
+      int h = 0;
+      for (int i = from; i < to; i++)
+         h = 31 * h + chars.charAt(i);
+      // spread the bits, as we only use the lower ones
+      return h ^ (h >>> 16);
+   }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.sniff;
+
+
+/**
+ * Helpers to work with file extensions without creating substrings.
+ *
+ * All methods operate on {@link CharSequence}s and report positions instead
+ * of returning new strings, so they can be used on the hot path without
+ * allocating anything.
+ */
+public final class Extensions {
+
+   private Extensions() {
+      // utility class
+   }
+
+
+   /**
+    * Finds the start of the extension in a file name or path, i.e. the
+    * position right after the last dot that follows the last path separator.
+    * This is the extension as understood by
+    * <code>FilenameUtils.getExtension</code>.
+    *
+    * @param name the file name or path
+    * @return the index of the first character of the extension, or -1 if
+    *         there is no extension
+    */
+   public static int extensionStart(CharSequence name) {
+      if (name == null)
+         return -1;
+      for (int i = name.length() - 1; i >= 0; i--) {
+         char c = name.charAt(i);
+         if (c == '.')
+            return i + 1;
+         if (c == '/' || c == '\\')
+            return -1;
+      }
+      return -1;
+   }
+
+
+   /**
+    * Checks whether the extension of a file name equals the given extension,
+    * ignoring the case of ASCII letters.
+    *
+    * @param name the file name or path
+    * @param extension the extension without the dot
+    * @return true, if the name has that extension
+    */
+   public static boolean hasExtension(CharSequence name, String extension) {
+      int start = extensionStart(name);
+      if (start < 0 || name.length() - start != extension.length())
+         return false;
+      for (int i = 0; i < extension.length(); i++) {
+         if (toLowerAscii(name.charAt(start + i)) != toLowerAscii(extension.charAt(i)))
+            return false;
+      }
+      return true;
+   }
+
+
+   /**
+    * Converts an ASCII letter to lower case, leaves everything else untouched.
+    *
+    * @param c the character
+    * @return the lower case character
+    */
+   static char toLowerAscii(char c) {
+      return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+   }
+}
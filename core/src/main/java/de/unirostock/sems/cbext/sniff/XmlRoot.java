@@ -0,0 +1,199 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.sniff;
+
+import java.util.Collections;
+import java.util.Map;
+
+
+/**
+ * The root element of an XML document as found by the {@link XmlRootScanner}.
+ * Besides name and namespace it carries the attributes and namespace
+ * declarations of the root's start tag, but nothing of the document's body.
+ */
+public class XmlRoot {
+
+   /** the prefix of the element name, empty if there is none. */
+   private final String prefix;
+
+   /** the local name. */
+   private final String localName;
+
+   /** the namespace URI, if declared on the root element. */
+   private final String namespaceUri;
+
+   /** the attributes by qualified name, without namespace declarations. */
+   private final Map<String, String> attributes;
+
+   /** the namespaces declared on the root element, by prefix. */
+   private final Map<String, String> namespaces;
+
+
+   /**
+    * Instantiates a new root element.
+    *
+    * @param prefix the prefix, empty if there is none
+    * @param localName the local name
+    * @param namespaceUri the namespace URI, or <code>null</code>
+    * @param attributes the attributes by qualified name
+    * @param namespaces the declared namespaces by prefix, the default
+    *           namespace has the empty prefix
+    */
+   public XmlRoot(String prefix, String localName, String namespaceUri, Map<String, String> attributes,
+           Map<String, String> namespaces) {
+      this.prefix = prefix;
+      this.localName = localName;
+      this.namespaceUri = namespaceUri;
+      this.attributes = Collections.unmodifiableMap(attributes);
+      this.namespaces = Collections.unmodifiableMap(namespaces);
+   }
+
+
+   /**
+    * Gets the prefix of the element name.
+    *
+    * @return the prefix, empty if there is none
+    */
+   public String getPrefix() {
+      return prefix;
+   }
+
+
+   /**
+    * Gets the local name of the element.
+    *
+    * @return the local name
+    */
+   public String getLocalName() {
+      return localName;
+   }
+
+
+   /**
+    * Gets the namespace URI of the element. Only namespaces declared on the
+    * root element itself are known.
+    *
+    * @return the namespace URI, or <code>null</code> if the element is not in a
+    *         namespace
+    */
+   public String getNamespaceUri() {
+      return namespaceUri;
+   }
+
+
+   /**
+    * Gets the attributes of the element by their qualified names. Namespace
+    * declarations are not included, see {@link #getNamespaces()}.
+    *
+    * @return the attributes
+    */
+   public Map<String, String> getAttributes() {
+      return attributes;
+   }
+
+
+   /**
+    * Gets the namespaces declared on the element by prefix. The default
+    * namespace is stored for the empty prefix.
+    *
+    * @return the namespace declarations
+    */
+   public Map<String, String> getNamespaces() {
+      return namespaces;
+   }
+
+
+   /**
+    * Gets the value of an attribute by its local name, ignoring any prefix.
+    *
+    * @param localName the local name of the attribute
+    * @return the value, or <code>null</code> if there is no such attribute
+    */
+   public String getAttribute(String localName) {
+      String value = attributes.get(localName);
+      if (value != null)
+         return value;
+      for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+         String name = attribute.getKey();
+         int colon = name.indexOf(':');
+         if (colon >= 0 && name.length() - colon - 1 == localName.length() && name.endsWith(localName))
+            return attribute.getValue();
+      }
+      return null;
+   }
+
+
+   /**
+    * Gets the <code>level</code> attribute, as used by SBML and SED-ML.
+    *
+    * @return the level, or <code>null</code>
+    */
+   public String getLevel() {
+      return getAttribute("level");
+   }
+
+
+   /**
+    * Gets the <code>version</code> attribute, as used by SBML and SED-ML.
+    *
+    * @return the version, or <code>null</code>
+    */
+   public String getVersion() {
+      return getAttribute("version");
+   }
+
+
+   /**
+    * Gets the <code>language</code> attribute, as used by SBGN-ML maps.
+    *
+    * @return the language, or <code>null</code>
+    */
+   public String getLanguage() {
+      return getAttribute("language");
+   }
+
+
+   /**
+    * Checks whether the element declares a namespace starting with a certain
+    * string, e.g. to find one of several versions of a vocabulary.
+    *
+    * @param uriPrefix the start of the namespace URI
+    * @return true, if such a namespace is declared
+    */
+   public boolean declaresNamespace(String uriPrefix) {
+      for (String uri : namespaces.values()) {
+         if (uri.startsWith(uriPrefix))
+            return true;
+      }
+      return false;
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString() {
+      return namespaceUri == null ? localName : "{" + namespaceUri + "}" + localName;
+   }
+}
@@ -0,0 +1,661 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext.sniff;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A hand-written scanner that finds the root element of an XML document in
+ * raw bytes.
+ *
+ * The scanner understands byte order marks, UTF-8 and UTF-16 (with or without
+ * BOM), single-byte encodings declared in the XML declaration, processing
+ * instructions, comments and DOCTYPE declarations including an internal
+ * subset. It stops as soon as the start tag of the root element is complete,
+ * so it never looks at the body of a document and never instantiates an XML
+ * parser.
+ *
+ * A scanner keeps its state in reusable arrays, so scanning and querying the
+ * root through {@link #isRoot(String)} or {@link #hasAttribute(String, String)}
+ * does not allocate once the arrays have grown to fit. Use one scanner per
+ * thread; {@link #toRoot()} creates an immutable {@link XmlRoot} that can be
+ * passed around.
+ */
+public class XmlRootScanner {
+
+   /** The outcome of a scan. */
+   public enum Result {
+      /** the start tag of the root element was found. */
+      FOUND,
+      /** the bytes end before the root element is complete. */
+      INCOMPLETE,
+      /** the bytes do not start like an XML document. */
+      NOT_XML
+   }
+
+   /** marks the end of the input. */
+   private static final int EOF = -1;
+
+   /** a character that ends the scan, because the input is not XML. */
+   private static final int INVALID = -2;
+
+   private static final int UTF8 = 0;
+   private static final int UTF16BE = 1;
+   private static final int UTF16LE = 2;
+   private static final int SINGLE_BYTE = 3;
+
+   /** the bytes being scanned. */
+   private ByteBuffer in;
+
+   /** the current position in the bytes. */
+   private int pos;
+
+   /** the end of the bytes. */
+   private int limit;
+
+   /** the detected encoding. */
+   private int encoding;
+
+   /** a low surrogate that still has to be returned. */
+   private int pendingLow = -1;
+
+   /** the decoded characters of the root tag and its attributes. */
+   private char[] chars = new char[256];
+
+   /** the number of decoded characters. */
+   private int length;
+
+   /** the end of the qualified name of the root element in {@link #chars}. */
+   private int nameEnd;
+
+   /** the position of the colon in the qualified name, or -1. */
+   private int colon;
+
+   /** start and end offsets of attribute names and values in {@link #chars}. */
+   private int[] attributes = new int[32];
+
+   /** the number of attributes. */
+   private int attributeCount;
+
+   /** the result of the last scan. */
+   private Result result;
+
+
+   /**
+    * Scans the bytes between position and limit of the buffer for the root
+    * element. The position of the buffer is not modified.
+    *
+    * @param buffer the bytes, usually the header of a file
+    * @return the result of the scan
+    */
+   public Result scan(ByteBuffer buffer) {
+      in = buffer;
+      pos = buffer.position();
+      limit = buffer.limit();
+      pendingLow = -1;
+      length = 0;
+      nameEnd = 0;
+      colon = -1;
+      attributeCount = 0;
+      try {
+         detectEncoding();
+         return result = scanProlog();
+      } finally {
+         in = null;
+      }
+   }
+
+
+   /**
+    * Gets the result of the last scan.
+    *
+    * @return the result, or <code>null</code> if nothing was scanned yet
+    */
+   public Result getResult() {
+      return result;
+   }
+
+
+   /**
+    * Checks whether the last scan found a root element with the given local
+    * name.
+    *
+    * @param localName the local name, i.e. without prefix
+    * @return true, if the root element has that name
+    */
+   public boolean isRoot(String localName) {
+      return result == Result.FOUND && regionEquals(colon + 1, nameEnd, localName);
+   }
+
+
+   /**
+    * Checks whether the root element found by the last scan carries an
+    * attribute with the given local name and value.
+    *
+    * @param localName the local name of the attribute
+    * @param value the expected value
+    * @return true, if the root element has that attribute
+    */
+   public boolean hasAttribute(String localName, String value) {
+      int index = findAttribute(localName);
+      return index >= 0 && regionEquals(attributes[index + 2], attributes[index + 3], value);
+   }
+
+
+   /**
+    * Creates an immutable representation of the root element found by the
+    * last scan.
+    *
+    * @return the root element, or <code>null</code> if the last scan did not
+    *         find one
+    */
+   public XmlRoot toRoot() {
+      if (result != Result.FOUND)
+         return null;
+
+      String prefix = colon < 0 ? "" : new String(chars, 0, colon);
+      String localName = new String(chars, colon + 1, nameEnd - colon - 1);
+      Map<String, String> attrs = new LinkedHashMap<>();
+      Map<String, String> namespaces = new HashMap<>();
+      for (int i = 0; i < attributeCount * 4; i += 4) {
+         String name = new String(chars, attributes[i], attributes[i + 1] - attributes[i]);
+         String value = new String(chars, attributes[i + 2], attributes[i + 3] - attributes[i + 2]);
+         if (name.equals("xmlns"))
+            namespaces.put("", value);
+         else if (name.startsWith("xmlns:"))
+            namespaces.put(name.substring(6), value);
+         else
+            attrs.put(name, value);
+      }
+      return new XmlRoot(prefix, localName, namespaces.get(prefix), attrs, namespaces);
+   }
+
+
+   /**
+    * Finds an attribute by its local name.
+    *
+    * @param localName the local name
+    * @return the index of the attribute in {@link #attributes}, or -1
+    */
+   private int findAttribute(String localName) {
+      if (result != Result.FOUND)
+         return -1;
+      for (int i = 0; i < attributeCount * 4; i += 4) {
+         int start = attributes[i];
+         int end = attributes[i + 1];
+         for (int j = start; j < end; j++) {
+            if (chars[j] == ':') {
+               start = j + 1;
+               break;
+            }
+         }
+         if (regionEquals(start, end, localName) && !regionEquals(attributes[i], end, "xmlns"))
+            return i;
+      }
+      return -1;
+   }
+
+
+   private boolean regionEquals(int start, int end, String expected) {
+      if (end - start != expected.length())
+         return false;
+      for (int i = 0; i < expected.length(); i++) {
+         if (chars[start + i] != expected.charAt(i))
+            return false;
+      }
+      return true;
+   }
+
+
+   /**
+    * Detects the encoding from the BOM or the first bytes and skips the BOM.
+    */
+   private void detectEncoding() {
+      encoding = UTF8;
+      int b0 = byteAt(pos), b1 = byteAt(pos + 1), b2 = byteAt(pos + 2);
+      if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+         pos += 3;
+      } else if (b0 == 0xFE && b1 == 0xFF) {
+         encoding = UTF16BE;
+         pos += 2;
+      } else if (b0 == 0xFF && b1 == 0xFE) {
+         encoding = UTF16LE;
+         pos += 2;
+      } else if (b0 == 0x00 && b1 == '<') {
+         encoding = UTF16BE;
+      } else if (b0 == '<' && b1 == 0x00) {
+         encoding = UTF16LE;
+      }
+   }
+
+
+   private int byteAt(int index) {
+      return index < limit ? in.get(index) & 0xFF : EOF;
+   }
+
+
+   /**
+    * Decodes the next character.
+    *
+    * @return the next UTF-16 code unit, or {@link #EOF}
+    */
+   private int next() {
+      if (pendingLow >= 0) {
+         int c = pendingLow;
+         pendingLow = -1;
+         return c;
+      }
+      if (pos >= limit)
+         return EOF;
+
+      switch (encoding) {
+         case UTF16BE:
+         case UTF16LE:
+            if (pos + 1 >= limit)
+               return EOF;
+            int hi = in.get(pos) & 0xFF, lo = in.get(pos + 1) & 0xFF;
+            pos += 2;
+            return encoding == UTF16BE ? (hi << 8) | lo : (lo << 8) | hi;
+         case SINGLE_BYTE:
+            return in.get(pos++) & 0xFF;
+         default:
+            return nextUtf8();
+      }
+   }
+
+
+   private int nextUtf8() {
+      int b0 = in.get(pos) & 0xFF;
+      if (b0 < 0x80) {
+         pos++;
+         return b0;
+      }
+      int needed;
+      int codePoint;
+      if ((b0 & 0xE0) == 0xC0) {
+         needed = 1;
+         codePoint = b0 & 0x1F;
+      } else if ((b0 & 0xF0) == 0xE0) {
+         needed = 2;
+         codePoint = b0 & 0x0F;
+      } else if ((b0 & 0xF8) == 0xF0) {
+         needed = 3;
+         codePoint = b0 & 0x07;
+      } else {
+         pos++;
+         return 0xFFFD;
+      }
+      if (pos + needed >= limit)
+         return EOF;
+      for (int i = 1; i <= needed; i++) {
+         int b = in.get(pos + i) & 0xFF;
+         if ((b & 0xC0) != 0x80) {
+            pos += i;
+            return 0xFFFD;
+         }
+         codePoint = (codePoint << 6) | (b & 0x3F);
+      }
+      pos += needed + 1;
+      if (codePoint >= 0x10000) {
+         pendingLow = Character.lowSurrogate(codePoint);
+         return Character.highSurrogate(codePoint);
+      }
+      return codePoint;
+   }
+
+
+   private static boolean isWhitespace(int c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+   }
+
+
+   private static boolean isNameStart(int c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':' || c > 0x7F;
+   }
+
+
+   private static boolean isNameChar(int c) {
+      return isNameStart(c) || (c >= '0' && c <= '9') || c == '-' || c == '.';
+   }
+
+
+   /**
+    * Skips everything in front of the root element and reads the root tag.
+    *
+    * @return the result
+    */
+   private Result scanProlog() {
+      boolean first = true;
+      while (true) {
+         int c = next();
+         while (isWhitespace(c))
+            c = next();
+         if (c == EOF)
+            return Result.INCOMPLETE;
+         if (c != '<')
+            return Result.NOT_XML;
+
+         c = next();
+         if (c == EOF)
+            return Result.INCOMPLETE;
+         if (c == '?') {
+            int r = skipProcessingInstruction(first);
+            if (r != 0)
+               return r == EOF ? Result.INCOMPLETE : Result.NOT_XML;
+         } else if (c == '!') {
+            int r = skipDeclaration();
+            if (r != 0)
+               return r == EOF ? Result.INCOMPLETE : Result.NOT_XML;
+         } else if (isNameStart(c)) {
+            return readRoot(c);
+         } else {
+            return Result.NOT_XML;
+         }
+         first = false;
+      }
+   }
+
+
+   /**
+    * Skips a processing instruction. If it is the XML declaration, a declared
+    * single-byte encoding is picked up.
+    *
+    * @param declaration true if this might be the XML declaration
+    * @return 0 on success, {@link #EOF} if the input ended
+    */
+   private int skipProcessingInstruction(boolean declaration) {
+      length = 0;
+      int previous = 0, c;
+      while ((c = next()) != EOF) {
+         if (previous == '?' && c == '>') {
+            if (declaration && regionEquals(0, Math.min(3, length), "xml"))
+               applyDeclaredEncoding();
+            length = 0;
+            return 0;
+         }
+         append(c);
+         previous = c;
+      }
+      return EOF;
+   }
+
+
+   /**
+    * Switches to single-byte decoding if the XML declaration in
+    * {@link #chars} asks for such an encoding. UTF-8 and UTF-16 are detected
+    * from the bytes anyway.
+    */
+   private void applyDeclaredEncoding() {
+      if (encoding != UTF8)
+         return;
+      for (int i = 0; i + 8 <= length; i++) {
+         if (regionEquals(i, i + 8, "encoding")) {
+            int j = i + 8;
+            while (j < length && chars[j] != '"' && chars[j] != '\'')
+               j++;
+            int start = j + 1;
+            int end = start;
+            while (end < length && chars[end] != chars[j])
+               end++;
+            if (startsWithIgnoreCase(start, end, "iso-8859") || startsWithIgnoreCase(start, end, "latin")
+                    || startsWithIgnoreCase(start, end, "windows-125"))
+               encoding = SINGLE_BYTE;
+            return;
+         }
+      }
+   }
+
+
+   private boolean startsWithIgnoreCase(int start, int end, String prefix) {
+      if (end - start < prefix.length())
+         return false;
+      for (int i = 0; i < prefix.length(); i++) {
+         if (Extensions.toLowerAscii(chars[start + i]) != prefix.charAt(i))
+            return false;
+      }
+      return true;
+   }
+
+
+   /**
+    * Skips a comment or a DOCTYPE declaration. The <code>&lt;!</code> is
+    * already consumed.
+    *
+    * @return 0 on success, {@link #EOF} if the input ended, {@link #INVALID}
+    *         if this is something else
+    */
+   private int skipDeclaration() {
+      int c = next();
+      if (c == '-') {
+         c = next();
+         if (c != '-')
+            return c == EOF ? EOF : INVALID;
+         return skipComment();
+      }
+      if (c == 'D')
+         return skipDoctype();
+      return c == EOF ? EOF : INVALID;
+   }
+
+
+   /**
+    * Skips the rest of a comment, up to and including <code>--&gt;</code>.
+    *
+    * @return 0 on success, {@link #EOF} if the input ended
+    */
+   private int skipComment() {
+      int dashes = 0, c;
+      while ((c = next()) != EOF) {
+         if (c == '>' && dashes >= 2)
+            return 0;
+         dashes = c == '-' ? dashes + 1 : 0;
+      }
+      return EOF;
+   }
+
+
+   /**
+    * Skips the rest of a DOCTYPE declaration, including an internal subset
+    * that may contain quoted strings, comments and processing instructions.
+    *
+    * @return 0 on success, {@link #EOF} if the input ended
+    */
+   private int skipDoctype() {
+      int depth = 0, quote = 0, c;
+      while ((c = next()) != EOF) {
+         if (quote != 0) {
+            if (c == quote)
+               quote = 0;
+         } else if (c == '"' || c == '\'') {
+            quote = c;
+         } else if (c == '[') {
+            depth++;
+         } else if (c == ']') {
+            depth--;
+         } else if (c == '>' && depth <= 0) {
+            return 0;
+         } else if (c == '<' && depth > 0) {
+            c = next();
+            if (c == '?') {
+               if (skipProcessingInstruction(false) == EOF)
+                  return EOF;
+            } else if (c == '!') {
+               c = next();
+               if (c == '-') {
+                  c = next();
+                  if (c == '-' && skipComment() == EOF)
+                     return EOF;
+               }
+            }
+            if (c == EOF)
+               return EOF;
+            if (c == '"' || c == '\'')
+               quote = c;
+         }
+      }
+      return EOF;
+   }
+
+
+   /**
+    * Reads the start tag of the root element.
+    *
+    * @param first the first character of the element name
+    * @return the result
+    */
+   private Result readRoot(int first) {
+      length = 0;
+      int c = first;
+      while (isNameChar(c)) {
+         if (c == ':' && colon < 0)
+            colon = length;
+         append(c);
+         c = next();
+      }
+      nameEnd = length;
+
+      while (true) {
+         while (isWhitespace(c))
+            c = next();
+         if (c == EOF)
+            return Result.INCOMPLETE;
+         if (c == '>' || c == '/')
+            return Result.FOUND;
+         if (!isNameStart(c))
+            return Result.NOT_XML;
+
+         // attribute name
+         int nameStart = length;
+         while (isNameChar(c)) {
+            append(c);
+            c = next();
+         }
+         int attrNameEnd = length;
+         while (isWhitespace(c))
+            c = next();
+         if (c == EOF)
+            return Result.INCOMPLETE;
+         if (c != '=')
+            return Result.NOT_XML;
+         c = next();
+         while (isWhitespace(c))
+            c = next();
+         if (c == EOF)
+            return Result.INCOMPLETE;
+         if (c != '"' && c != '\'')
+            return Result.NOT_XML;
+
+         // attribute value
+         int quote = c;
+         int valueStart = length;
+         while ((c = next()) != quote) {
+            if (c == EOF)
+               return Result.INCOMPLETE;
+            if (c == '&') {
+               c = readReference();
+               if (c == EOF)
+                  return Result.INCOMPLETE;
+               if (c < 0)
+                  continue;
+            }
+            append(c);
+         }
+         addAttribute(nameStart, attrNameEnd, valueStart, length);
+         c = next();
+      }
+   }
+
+
+   /**
+    * Reads a character or entity reference. The <code>&amp;</code> is already
+    * consumed. Unknown entities are appended verbatim.
+    *
+    * @return the referenced character, {@link #EOF}, or {@link #INVALID} if
+    *         the reference was appended verbatim
+    */
+   private int readReference() {
+      int start = length;
+      append('&');
+      int c;
+      while ((c = next()) != ';') {
+         if (c == EOF)
+            return EOF;
+         append(c);
+         if (length - start > 10)
+            return INVALID;
+      }
+      int value = -1;
+      if (regionEquals(start + 1, length, "amp"))
+         value = '&';
+      else if (regionEquals(start + 1, length, "lt"))
+         value = '<';
+      else if (regionEquals(start + 1, length, "gt"))
+         value = '>';
+      else if (regionEquals(start + 1, length, "quot"))
+         value = '"';
+      else if (regionEquals(start + 1, length, "apos"))
+         value = '\'';
+      else if (length - start > 2 && chars[start + 1] == '#') {
+         try {
+            boolean hex = chars[start + 2] == 'x';
+            value = Integer.parseInt(new String(chars, start + (hex ? 3 : 2), length - start - (hex ? 3 : 2)),
+                    hex ? 16 : 10);
+         } catch (NumberFormatException e) {
+            value = -1;
+         }
+      }
+      if (value < 0 || value > 0xFFFF) {
+         append(';');
+         return INVALID;
+      }
+      length = start;
+      return value;
+   }
+
+
+   private void append(int c) {
+      if (length == chars.length) {
+         char[] grown = new char[chars.length * 2];
+         System.arraycopy(chars, 0, grown, 0, length);
+         chars = grown;
+      }
+      chars[length++] = (char) c;
+   }
+
+
+   private void addAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+      int index = attributeCount * 4;
+      if (index + 4 > attributes.length) {
+         int[] grown = new int[attributes.length * 2];
+         System.arraycopy(attributes, 0, grown, 0, index);
+         attributes = grown;
+      }
+      attributes[index] = nameStart;
+      attributes[index + 1] = nameEnd;
+      attributes[index + 2] = valueStart;
+      attributes[index + 3] = valueEnd;
+      attributeCount++;
+   }
+}
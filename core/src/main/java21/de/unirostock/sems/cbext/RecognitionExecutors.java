@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2014-2015:
+ * - Martin Scharm <martin@binfalse.de>
+ * - Martin Peters <martin@freakybytes.net>
+ * <p>
+ * This file is part of the CombineExt library.
+ * <p>
+ * CombineExt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * CombineExt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with CombineExt. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.cbext;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+
+/**
+ * Creates the threads that recognize files.
+ *
+ * This is the variant for Java 21 and later, packaged in
+ * <code>META-INF/versions/21</code> of the multi-release jar. Tasks run in
+ * virtual threads, so thousands of recognitions may wait for the disk at
+ * once. Parsing, which keeps a processor busy, is bounded by a semaphore
+ * with one permit per processor. A parser gives its permit back while it
+ * waits for the disk, see {@link #beginBlocking()}.
+ */
+public final class RecognitionExecutors {
+
+   /** how many files per processor are recognized at once by default. */
+   private static final int FILES_PER_PROCESSOR = 16;
+
+   /** the permits to parse. */
+   private static final Semaphore PARSERS = new Semaphore(Runtime.getRuntime().availableProcessors());
+
+   /**
+    * whether the current thread holds a permit to parse: true while parsing,
+    * false while parsing but waiting for the disk, null otherwise.
+    */
+   private static final ThreadLocal<Boolean> HOLDING = new ThreadLocal<Boolean>();
+
+
+   private RecognitionExecutors() {
+      // utility class
+   }
+
+
+   /**
+    * Checks whether recognitions run in virtual threads.
+    *
+    * @return true
+    */
+   public static boolean hasVirtualThreads() {
+      return true;
+   }
+
+
+   /**
+    * Gets the number of files that should be recognized at once, if the
+    * caller does not know better. As parsing is bounded anyway, this is a
+    * multiple of the processors, to keep slow file systems busy.
+    *
+    * @return the number of files
+    */
+   public static int getDefaultConcurrency() {
+      return FILES_PER_PROCESSOR * Runtime.getRuntime().availableProcessors();
+   }
+
+
+   /**
+    * Creates an executor recognizing files: a fixed pool of virtual threads.
+    * Like the pools of platform threads on Java 8, it runs at most
+    * <code>threads</code> tasks at once and queues the others.
+    *
+    * @param threads the number of threads
+    * @param name the prefix of the thread names
+    * @return the executor
+    */
+   public static ExecutorService newExecutor(int threads, String name) {
+      return Executors.newFixedThreadPool(threads, Thread.ofVirtual().name(name + "-", 1).factory());
+   }
+
+
+   /**
+    * Creates an executor running every task in a new virtual thread, for
+    * tasks that mostly wait for the disk. Their parsing is still bounded by
+    * {@link #parse (Supplier)}.
+    *
+    * @param threads ignored, there is no bound
+    * @param name the prefix of the thread names
+    * @return the executor
+    */
+   public static ExecutorService newPerTaskExecutor(int threads, String name) {
+      return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+   }
+
+
+   /**
+    * Runs a recognizer's parsing, once one of the processors is free.
+    *
+    * @param parsing the parsing
+    * @return the result of the parsing
+    * @throws CancellationException if interrupted while waiting; the
+    *         interrupt flag stays set
+    */
+   static <T> T parse(Supplier<T> parsing) {
+      try {
+         PARSERS.acquire();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new CancellationException("interrupted while waiting for a processor");
+      }
+      HOLDING.set(Boolean.TRUE);
+      try {
+         return parsing.get();
+      } finally {
+         if (HOLDING.get() == Boolean.TRUE)
+            PARSERS.release();
+         HOLDING.remove();
+      }
+   }
+
+
+   /**
+    * Gives the permit to parse back before the current thread blocks on the
+    * disk, so another recognizer may use the processor meanwhile.
+    *
+    * @return true, if a permit was given back and must be taken again using
+    *         {@link #endBlocking (boolean)}
+    */
+   static boolean beginBlocking() {
+      if (HOLDING.get() != Boolean.TRUE)
+         return false;
+      HOLDING.set(Boolean.FALSE);
+      PARSERS.release();
+      return true;
+   }
+
+
+   /**
+    * Takes the permit to parse again, after the current thread has read from
+    * the disk.
+    *
+    * @param released whether {@link #beginBlocking()} gave a permit back
+    * @throws InterruptedIOException if interrupted while waiting for a
+    *         processor
+    */
+   static void endBlocking(boolean released) throws InterruptedIOException {
+      if (!released)
+         return;
+      try {
+         PARSERS.acquire();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("interrupted while waiting for a processor");
+      }
+      HOLDING.set(Boolean.TRUE);
+   }
+}
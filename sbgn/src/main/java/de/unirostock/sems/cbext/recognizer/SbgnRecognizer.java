@@ -23,6 +23,8 @@ package de.unirostock.sems.cbext.recognizer;
 import de.binfalse.bflog.LOGGER;
 import de.unirostock.sems.cbext.FormatRecognizer;
 import de.unirostock.sems.cbext.Formatizer;
+import de.unirostock.sems.cbext.RecognitionSource;
+import de.unirostock.sems.cbext.RecognizerDescriptor;
 import org.sbgn.SbgnUtil;
 import org.xml.sax.SAXException;
 
@@ -30,6 +32,9 @@ import javax.xml.bind.JAXBException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
 
 
 /**
@@ -92,6 +97,31 @@ public class SbgnRecognizer
    }
 
 
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatByParsing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatByParsing(RecognitionSource source) {
+      // skip the expensive validation if the root element does not match
+      if (!source.mayHaveRoot("sbgn"))
+         return null;
+      return super.getFormatByParsing(source);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getConfidence(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public double getConfidence(RecognitionSource source) {
+      return getRootConfidence(source, "sbgn", "http://sbgn.org/libsbgn/");
+   }
+
+
    /*
     * (non-Javadoc)
     *
@@ -120,4 +150,98 @@ public class SbgnRecognizer
       return null;
    }
 
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getKnownExtensions()
+    */
+   @Override
+   public Collection<String> getKnownExtensions() {
+      return Collections.singletonList("sbgn");
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getWarmUpSample()
+    */
+   @Override
+   public URL getWarmUpSample() {
+      return SbgnRecognizer.class.getResource("/warmup/sample.sbgn");
+   }
+
+
+   /**
+    * Describes the {@link SbgnRecognizer} without loading the SBGN-ML library.
+    */
+   public static class Descriptor
+      extends RecognizerDescriptor {
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getName()
+       */
+      @Override
+      public String getName() {
+         return SbgnRecognizer.class.getName();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getPriority()
+       */
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownExtensions()
+       */
+      @Override
+      public Collection<String> getKnownExtensions() {
+         return Collections.singletonList("sbgn");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownMimeTypes()
+       */
+      @Override
+      public Collection<String> getKnownMimeTypes() {
+         return Collections.emptyList();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getRootElements()
+       */
+      @Override
+      public Collection<String> getRootElements() {
+         return Collections.singletonList("sbgn");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#createRecognizer()
+       */
+      @Override
+      public FormatRecognizer createRecognizer() {
+         return new SbgnRecognizer();
+      }
+   }
 }
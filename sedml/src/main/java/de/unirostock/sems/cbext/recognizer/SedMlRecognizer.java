@@ -23,6 +23,9 @@ package de.unirostock.sems.cbext.recognizer;
 import de.binfalse.bflog.LOGGER;
 import de.unirostock.sems.cbext.FormatRecognizer;
 import de.unirostock.sems.cbext.Formatizer;
+import de.unirostock.sems.cbext.RecognitionSource;
+import de.unirostock.sems.cbext.RecognizerDescriptor;
+import de.unirostock.sems.cbext.sniff.XmlRoot;
 import org.jlibsedml.Libsedml;
 import org.jlibsedml.SEDMLDocument;
 import org.jlibsedml.SedMLError;
@@ -31,6 +34,9 @@ import org.jlibsedml.XMLException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
 
 
 /**
@@ -105,6 +111,47 @@ public class SedMlRecognizer
    }
 
 
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatByParsing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatByParsing(RecognitionSource source) {
+      // skip the expensive validation if the root element does not match
+      if (!source.mayHaveRoot("sedML"))
+         return null;
+      return super.getFormatByParsing(source);
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getFormatBySniffing(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public URI getFormatBySniffing(RecognitionSource source) {
+      // level and version are attributes of the root element
+      XmlRoot root = source.getXmlRoot();
+      if (root == null || !root.getLocalName().equals("sedML") || root.getLevel() == null
+              || root.getVersion() == null)
+         return null;
+      return buildUri(IDENTIFIERS_BASE, "sed-ml.level-" + root.getLevel() + ".version-" + root.getVersion());
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getConfidence(de.unirostock.sems.cbext.RecognitionSource)
+    */
+   @Override
+   public double getConfidence(RecognitionSource source) {
+      return getRootConfidence(source, "sedML", "http://sed-ml.org/");
+   }
+
+
    /*
     * (non-Javadoc)
     *
@@ -133,4 +180,98 @@ public class SedMlRecognizer
       return null;
    }
 
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getKnownExtensions()
+    */
+   @Override
+   public Collection<String> getKnownExtensions() {
+      return Collections.singletonList("sedml");
+   }
+
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see de.unirostock.sems.cbext.FormatRecognizer#getWarmUpSample()
+    */
+   @Override
+   public URL getWarmUpSample() {
+      return SedMlRecognizer.class.getResource("/warmup/sample.sedml");
+   }
+
+
+   /**
+    * Describes the {@link SedMlRecognizer} without loading the SED-ML library.
+    */
+   public static class Descriptor
+      extends RecognizerDescriptor {
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getName()
+       */
+      @Override
+      public String getName() {
+         return SedMlRecognizer.class.getName();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getPriority()
+       */
+      @Override
+      public int getPriority() {
+         return priority;
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownExtensions()
+       */
+      @Override
+      public Collection<String> getKnownExtensions() {
+         return Collections.singletonList("sedml");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getKnownMimeTypes()
+       */
+      @Override
+      public Collection<String> getKnownMimeTypes() {
+         return Collections.emptyList();
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#getRootElements()
+       */
+      @Override
+      public Collection<String> getRootElements() {
+         return Collections.singletonList("sedML");
+      }
+
+
+      /*
+       * (non-Javadoc)
+       *
+       * @see de.unirostock.sems.cbext.RecognizerDescriptor#createRecognizer()
+       */
+      @Override
+      public FormatRecognizer createRecognizer() {
+         return new SedMlRecognizer();
+      }
+   }
 }